@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An expansion callback which can retrieve multiple pages at once.
+ * 
+ * If the callback passed to the engine implements this interface, the engine
+ * prefetches all templates which are transcluded by a page under a statically
+ * known name before the page is expanded.
+ */
+public interface BatchExpansionCallback
+		extends
+			ExpansionCallback
+{
+	/**
+	 * Retrieves the latest revisions of the given articles.
+	 * 
+	 * @return A map from the requested titles to the retrieved articles.
+	 *         Articles which could not be found can either be omitted or be
+	 *         mapped to null.
+	 */
+	Map<PageTitle, FullPage> retrieveWikitext(
+			ExpansionFrame expansionFrame,
+			Collection<PageTitle> pageTitles);
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sweble.wikitext.engine.config.EngineConfig;
+
+/**
+ * Keeps track of the resources used by an expansion process and enforces the
+ * limits given in the EngineConfig. One instance is shared by all frames of
+ * an expansion process. The budget is thread-safe since frames may be
+ * expanded in parallel.
+ */
+public final class ExpansionBudget
+{
+	public static enum Budget
+	{
+		EXPANSION_DEPTH,
+		TRANSCLUSIONS,
+		PARSER_FUNCTION_CALLS,
+		POST_EXPAND_INCLUDE_SIZE,
+		EXPANSION_TIME
+	}
+
+	// =========================================================================
+
+	private final int maxExpansionDepth;
+
+	private final int maxTransclusions;
+
+	private final int maxParserFunctionCalls;
+
+	private final long maxPostExpandIncludeSize;
+
+	private final long maxExpansionTime;
+
+	/**
+	 * In nanoseconds, as returned by System.nanoTime().
+	 */
+	private final long deadline;
+
+	private final AtomicInteger transclusions = new AtomicInteger();
+
+	private final AtomicInteger parserFunctionCalls = new AtomicInteger();
+
+	private final AtomicLong postExpandIncludeSize = new AtomicLong();
+
+	// =========================================================================
+
+	public ExpansionBudget(EngineConfig config)
+	{
+		this.maxExpansionDepth = config.getMaxExpansionDepth();
+		this.maxTransclusions = config.getMaxTransclusions();
+		this.maxParserFunctionCalls = config.getMaxParserFunctionCalls();
+		this.maxPostExpandIncludeSize = config.getMaxPostExpandIncludeSize();
+		this.maxExpansionTime = config.getMaxExpansionTime();
+
+		this.deadline = (maxExpansionTime > 0) ?
+				System.nanoTime() + maxExpansionTime * 1000000L :
+				0;
+	}
+
+	// =========================================================================
+
+	public int getTransclusions()
+	{
+		return transclusions.get();
+	}
+
+	public int getParserFunctionCalls()
+	{
+		return parserFunctionCalls.get();
+	}
+
+	public long getPostExpandIncludeSize()
+	{
+		return postExpandIncludeSize.get();
+	}
+
+	// =========================================================================
+
+	/**
+	 * @param depth
+	 *            The depth of the frame in which the transcluded page would be
+	 *            expanded.
+	 */
+	public void chargeTransclusion(int depth) throws ExpansionBudgetExceededException
+	{
+		checkDeadline();
+
+		if (maxExpansionDepth > 0 && depth > maxExpansionDepth)
+			throw new ExpansionBudgetExceededException(Budget.EXPANSION_DEPTH, maxExpansionDepth);
+
+		int count = transclusions.incrementAndGet();
+		if (maxTransclusions > 0 && count > maxTransclusions)
+			throw new ExpansionBudgetExceededException(Budget.TRANSCLUSIONS, maxTransclusions);
+	}
+
+	public void chargeParserFunctionCall() throws ExpansionBudgetExceededException
+	{
+		checkDeadline();
+
+		int count = parserFunctionCalls.incrementAndGet();
+		if (maxParserFunctionCalls > 0 && count > maxParserFunctionCalls)
+			throw new ExpansionBudgetExceededException(Budget.PARSER_FUNCTION_CALLS, maxParserFunctionCalls);
+	}
+
+	/**
+	 * Returns true if there is a limit for the post-expand include size. If
+	 * not, included text does not have to be measured.
+	 */
+	public boolean isIncludedTextLimited()
+	{
+		return maxPostExpandIncludeSize > 0;
+	}
+
+	/**
+	 * Adds the amount of text in a result of a transclusion or parser
+	 * function to the post-expand include size.
+	 * 
+	 * @param length
+	 *            The number of characters in the result (see
+	 *            ExpansionFrame.measureIncludedText()).
+	 */
+	public void chargeIncludedText(long length) throws ExpansionBudgetExceededException
+	{
+		if (maxPostExpandIncludeSize <= 0)
+			return;
+
+		long size = postExpandIncludeSize.addAndGet(length);
+		if (size > maxPostExpandIncludeSize)
+			throw new ExpansionBudgetExceededException(Budget.POST_EXPAND_INCLUDE_SIZE, maxPostExpandIncludeSize);
+	}
+
+	private void checkDeadline() throws ExpansionBudgetExceededException
+	{
+		if (maxExpansionTime > 0 && System.nanoTime() - deadline > 0)
+			throw new ExpansionBudgetExceededException(Budget.EXPANSION_TIME, maxExpansionTime);
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import org.sweble.wikitext.engine.ExpansionBudget.Budget;
+
+public class ExpansionBudgetExceededException
+		extends
+			Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	private final Budget budget;
+
+	private final long limit;
+
+	public ExpansionBudgetExceededException(Budget budget, long limit)
+	{
+		super("Expansion budget exceeded: " + budget + " (limit: " + limit + ")");
+		this.budget = budget;
+		this.limit = limit;
+	}
+
+	public Budget getBudget()
+	{
+		return budget;
+	}
+
+	public long getLimit()
+	{
+		return limit;
+	}
+}
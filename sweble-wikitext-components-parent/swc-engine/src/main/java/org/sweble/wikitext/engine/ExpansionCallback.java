@@ -57,7 +57,5 @@ public interface ExpansionCallback
 	 * Retrieves the specified revision of the article.
 	 *
 	String retrieveWikitext(ExpansionFrame expansionFrame, PageId pageId);
-	void cachePreprocessedPage(ExpansionFrame expansionFrame, FullPreprocessedPage page);
-	FullPreprocessedPage retrievePreprocessedPage(ExpansionFrame expansionFrame, PageTitle pageTitle, boolean forInclusion);
 	 */
 }
@@ -35,6 +35,7 @@ import org.sweble.wikitext.parser.nodes.WtTagExtensionBody;
 import org.sweble.wikitext.parser.nodes.WtTemplate;
 import org.sweble.wikitext.parser.nodes.WtTemplateArgument;
 import org.sweble.wikitext.parser.nodes.WtTemplateParameter;
+import org.sweble.wikitext.parser.nodes.WtValue;
 
 public abstract class ExpansionDebugHooks
 {
@@ -160,4 +161,25 @@ public abstract class ExpansionDebugHooks
 	{
 		return result;
 	}
+
+	/**
+	 * Called before the value of a template argument is expanded. Values are
+	 * expanded lazily by the visitor of the calling frame while the called
+	 * template is being expanded.
+	 */
+	public void beforeExpandArgument(
+			ExpansionVisitor expansionVisitor,
+			WtValue value)
+	{
+	}
+
+	/**
+	 * Called after the value of a template argument was expanded, even if the
+	 * expansion failed.
+	 */
+	public void afterExpandArgument(
+			ExpansionVisitor expansionVisitor,
+			WtValue value)
+	{
+	}
 }
@@ -17,17 +17,26 @@
 
 package org.sweble.wikitext.engine;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.sweble.wikitext.engine.cache.TitleKey;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngLogContainer;
 import org.sweble.wikitext.engine.utils.UrlService;
 import org.sweble.wikitext.parser.WtEntityMap;
 import org.sweble.wikitext.parser.nodes.WtNode;
 import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtStringNode;
+import org.sweble.wikitext.parser.nodes.WtTemplate;
 
 import de.fau.cs.osr.ptk.common.Warning;
 
@@ -55,8 +64,81 @@ public class ExpansionFrame
 
 	private final boolean noRedirect;
 
+	private final int depth;
+
+	/**
+	 * Only maintained by the root frame.
+	 */
+	private final ExpansionBudget budget;
+
+	/**
+	 * The frame which maintains the set of active titles for this frame.
+	 * Usually that's the root frame. In parallel expansion mode each task
+	 * maintains its own set.
+	 */
+	private final ExpansionFrame stackRoot;
+
+	/**
+	 * The titles of all frames which are currently being expanded. Only
+	 * maintained by the stack root.
+	 */
+	private Map<PageTitle, Integer> activeTitles;
+
+	/**
+	 * The frame which is currently being expanded. Only maintained by the
+	 * stack root.
+	 */
+	private ExpansionFrame innermostFrame;
+
+	/**
+	 * True if the frames being expanded while this frame is the innermost
+	 * frame are exactly this frame and its ancestors.
+	 */
+	private boolean activeFramesAreAncestors;
+
+	/**
+	 * One set per memoizable transclusion which is currently being expanded,
+	 * innermost transclusion last. Each set receives the titles of the pages
+	 * the respective transclusion depends on. Only maintained by the stack
+	 * root.
+	 */
+	private ArrayList<Set<TitleKey>> dependencies;
+
+	/**
+	 * The sizes of the results charged by chargeIncludedText() and of their
+	 * top-level nodes. Results are spliced into the results of the enclosing
+	 * frames, the sizes save measuring them again there. Only maintained by
+	 * the stack root.
+	 */
+	private IdentityHashMap<WtNode, Long> includedTextSizes;
+
 	private ExpansionVisitor expansionVisitor;
 
+	private boolean isVolatile;
+
+	/**
+	 * Only maintained by the root frame.
+	 */
+	private final AtomicInteger volatileCount;
+
+	/**
+	 * Pages retrieved by prefetchWikitext(). Only maintained by the root
+	 * frame. Pages which do not exist are mapped to null. Access must be
+	 * synchronized on the map.
+	 */
+	private final Map<PageTitle, FullPage> prefetchedPages;
+
+	/**
+	 * Results of existsPage(). Only maintained by the root frame. Access must
+	 * be synchronized on the map.
+	 */
+	private final Map<PageTitle, Boolean> pageExistence;
+
+	/**
+	 * Only maintained by the root frame.
+	 */
+	private final RenderClock renderClock;
+
 	// FIXME: That should have been initialized from a request!
 	//        And only once for the whole expansion process!
 	private UrlService urlService = new UrlService();
@@ -86,6 +168,13 @@ public class ExpansionFrame
 		this.frameLog = frameLog;
 		this.rootFrame = this;
 		this.parentFrame = null;
+		this.stackRoot = this;
+		this.depth = 0;
+		this.budget = new ExpansionBudget(engine.getWikiConfig().getEngineConfig());
+		this.volatileCount = new AtomicInteger();
+		this.prefetchedPages = new HashMap<PageTitle, FullPage>();
+		this.pageExistence = new HashMap<PageTitle, Boolean>();
+		this.renderClock = new RenderClock(engine.getWikiConfig().getRuntimeInfo());
 
 		expansionVisitor = new ExpansionVisitor(
 				this,
@@ -122,6 +211,13 @@ public class ExpansionFrame
 		this.frameLog = frameLog;
 		this.rootFrame = rootFrame;
 		this.parentFrame = parentFrame;
+		this.stackRoot = (parentFrame != null) ? parentFrame.stackRoot : rootFrame.stackRoot;
+		this.depth = (parentFrame != null) ? parentFrame.depth + 1 : 0;
+		this.budget = null;
+		this.volatileCount = null;
+		this.prefetchedPages = null;
+		this.pageExistence = null;
+		this.renderClock = null;
 
 		expansionVisitor = new ExpansionVisitor(
 				this,
@@ -131,6 +227,52 @@ public class ExpansionFrame
 				catchAll);
 	}
 
+	/**
+	 * Creates a frame which takes the place of the given root frame in a task
+	 * of the parallel expansion mode. The frame shares all state of the root
+	 * frame except for its warnings, its log and its set of active titles.
+	 */
+	private ExpansionFrame(
+			ExpansionFrame rootFrame,
+			List<Warning> warnings,
+			EngLogContainer frameLog)
+	{
+		this.engine = rootFrame.engine;
+		this.callback = rootFrame.callback;
+		this.title = rootFrame.title;
+		this.entityMap = rootFrame.entityMap;
+		this.arguments = rootFrame.arguments;
+		this.forInclusion = rootFrame.forInclusion;
+		this.noRedirect = rootFrame.noRedirect;
+		this.warnings = warnings;
+		this.frameLog = frameLog;
+		this.rootFrame = rootFrame;
+		this.parentFrame = null;
+		this.stackRoot = this;
+		this.depth = 0;
+		this.budget = null;
+		this.volatileCount = null;
+		this.prefetchedPages = null;
+		this.pageExistence = null;
+		this.renderClock = null;
+
+		expansionVisitor = new ExpansionVisitor(
+				this,
+				frameLog,
+				engine.getDebugHooks(),
+				engine.isTimingEnabled(),
+				engine.isCatchAll());
+	}
+
+	/**
+	 * Creates a frame for a task of the parallel expansion mode. Must only be
+	 * called on the root frame.
+	 */
+	ExpansionFrame forkRootFrame(List<Warning> warnings, EngLogContainer frameLog)
+	{
+		return new ExpansionFrame(this, warnings, frameLog);
+	}
+
 	// =========================================================================
 
 	public WtEngineImpl getEngine()
@@ -153,6 +295,86 @@ public class ExpansionFrame
 		return title;
 	}
 
+	/**
+	 * The number of frames between this frame and the root frame.
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * The resources used by the expansion process this frame belongs to.
+	 */
+	public ExpansionBudget getBudget()
+	{
+		return rootFrame.budget;
+	}
+
+	/**
+	 * Adds the amount of text in the given result of a transclusion or parser
+	 * function to the post-expand include size of the budget.
+	 */
+	public void chargeIncludedText(WtNode result) throws ExpansionBudgetExceededException
+	{
+		ExpansionBudget budget = getBudget();
+		if (budget.isIncludedTextLimited())
+			budget.chargeIncludedText(measureIncludedText(result));
+	}
+
+	/**
+	 * Counts the characters of text in the given result. Each result is
+	 * charged at every level of the transclusion hierarchy it is included in.
+	 * Nested results which were already measured are not walked again.
+	 */
+	long measureIncludedText(WtNode result)
+	{
+		if (stackRoot.includedTextSizes == null)
+			stackRoot.includedTextSizes = new IdentityHashMap<WtNode, Long>();
+
+		IdentityHashMap<WtNode, Long> sizes = stackRoot.includedTextSizes;
+
+		long size;
+		if (result.isNodeType(WtNode.NT_NODE_LIST))
+		{
+			// Only the children of a list survive splicing into the parent
+			size = 0;
+			for (WtNode c : result)
+			{
+				long childSize = measureText(c, sizes);
+				sizes.put(c, childSize);
+				size += childSize;
+			}
+		}
+		else
+		{
+			size = measureText(result, sizes);
+		}
+
+		sizes.put(result, size);
+		return size;
+	}
+
+	private static long measureText(WtNode n, IdentityHashMap<WtNode, Long> sizes)
+	{
+		Long known = sizes.get(n);
+		if (known != null)
+			return known;
+
+		if (n.isNodeType(WtNode.NT_TEXT))
+			return ((WtStringNode) n).getContent().length();
+
+		long size = 0;
+		for (WtNode c : n)
+			size += measureText(c, sizes);
+		return size;
+	}
+
+	/**
+	 * The arguments passed to this frame. The values of the arguments might
+	 * get expanded only when they are retrieved from the map for the first
+	 * time.
+	 */
 	public Map<String, WtNodeList> getArguments()
 	{
 		return arguments;
@@ -163,6 +385,18 @@ public class ExpansionFrame
 		return forInclusion;
 	}
 
+	/**
+	 * The date and time at which the page of the expansion process this frame
+	 * belongs to is rendered.
+	 */
+	public RenderClock getRenderClock()
+	{
+		return rootFrame.renderClock;
+	}
+
+	/**
+	 * @return The log of this frame or null if the engine does not log.
+	 */
 	public EngLogContainer getFrameLog()
 	{
 		return frameLog;
@@ -210,8 +444,44 @@ public class ExpansionFrame
 
 	// =========================================================================
 
+	/**
+	 * Marks the expansion of this frame as depending on information that is
+	 * not derived from the frame's arguments and the wikitext of the involved
+	 * pages (e.g. the current time, the title of the page that is being
+	 * rendered or the existence of other pages). The results of volatile
+	 * expansions must not be reused in another context.
+	 */
+	public void setVolatile()
+	{
+		isVolatile = true;
+		rootFrame.volatileCount.incrementAndGet();
+	}
+
+	public boolean isVolatile()
+	{
+		return isVolatile;
+	}
+
+	/**
+	 * Returns how often setVolatile() was called on any frame of the
+	 * expansion process this frame belongs to. If the count did not change
+	 * while a transclusion was expanded, the result of the transclusion only
+	 * depends on its arguments and the transcluded wikitext.
+	 */
+	int getVolatileCount()
+	{
+		return rootFrame.volatileCount.get();
+	}
+
+	// =========================================================================
+
 	public WtNode expand(WtNode ppAst) throws ExpansionException
 	{
+		ExpansionFrame outerFrame = stackRoot.innermostFrame;
+		boolean outerAncestors = activeFramesAreAncestors;
+		boolean reentered = (outerFrame == this);
+		if (!reentered)
+			enter();
 		try
 		{
 			return (WtNode) expansionVisitor.go(ppAst);
@@ -220,13 +490,355 @@ public class ExpansionFrame
 		{
 			throw new ExpansionException(e);
 		}
+		finally
+		{
+			if (!reentered)
+				leave(outerFrame, outerAncestors);
+		}
+	}
+
+	/**
+	 * Expands the page this frame was created for. In the parallel expansion
+	 * mode the templates at the top level of the page which is rendered are
+	 * expanded concurrently. Transcluded pages and everything expanded by
+	 * parser functions or as an argument goes through expand().
+	 */
+	WtNode expandPage(WtNode ppAst) throws ExpansionException
+	{
+		ForkJoinPool pool = engine.getParallelExpansionPool();
+		if (pool == null || rootFrame != this)
+			return expand(ppAst);
+
+		ExpansionFrame outerFrame = stackRoot.innermostFrame;
+		boolean outerAncestors = activeFramesAreAncestors;
+		boolean reentered = (outerFrame == this);
+		if (!reentered)
+			enter();
+		try
+		{
+			return expansionVisitor.expandInParallel(ppAst, pool);
+		}
+		catch (Exception e)
+		{
+			throw new ExpansionException(e);
+		}
+		finally
+		{
+			if (!reentered)
+				leave(outerFrame, outerAncestors);
+		}
+	}
+
+	/**
+	 * Expands a top-level template of the page in a task of the parallel
+	 * expansion mode. Must only be called on a frame created by
+	 * forkRootFrame().
+	 */
+	WtNode expandTopLevelTemplate(WtTemplate n, boolean hadNewline) throws ExpansionException
+	{
+		ExpansionFrame outerFrame = stackRoot.innermostFrame;
+		boolean outerAncestors = activeFramesAreAncestors;
+		boolean reentered = (outerFrame == this);
+		if (!reentered)
+			enter();
+		try
+		{
+			return expansionVisitor.expandTemplate(n, hadNewline);
+		}
+		catch (Exception e)
+		{
+			throw new ExpansionException(e);
+		}
+		finally
+		{
+			if (!reentered)
+				leave(outerFrame, outerAncestors);
+		}
+	}
+
+	/**
+	 * Makes this frame the innermost frame. Must not be called if this frame
+	 * already is the innermost frame, a frame which expands more of its own
+	 * content is not expanded again.
+	 */
+	private void enter()
+	{
+		addActiveTitle(title);
+
+		activeFramesAreAncestors = (parentFrame == null) ?
+				(stackRoot.innermostFrame == null) :
+				(stackRoot.innermostFrame == parentFrame) && parentFrame.activeFramesAreAncestors;
+
+		stackRoot.innermostFrame = this;
+	}
+
+	private void leave(ExpansionFrame outerFrame, boolean outerAncestors)
+	{
+		removeActiveTitle(title);
+
+		stackRoot.innermostFrame = outerFrame;
+		activeFramesAreAncestors = outerAncestors;
+	}
+
+	/**
+	 * Makes this frame the innermost frame again while frames it called are
+	 * still being expanded. Template arguments are expanded lazily in the
+	 * frame of the caller while the frame of the callee (and possibly frames
+	 * called by the callee) are active. Suspending the descendants for that
+	 * time lets countActiveTitle() use the set of active titles instead of
+	 * walking the chain of frames.
+	 * 
+	 * Nothing is suspended if this frame already is the innermost frame or
+	 * if the active frames are not the innermost frame and its ancestors.
+	 * 
+	 * @return The frame to pass to resumeDescendants() or null if nothing was
+	 *         suspended.
+	 */
+	ExpansionFrame suspendDescendants()
+	{
+		ExpansionFrame innermost = stackRoot.innermostFrame;
+		if (innermost == null
+				|| innermost == this
+				|| !innermost.activeFramesAreAncestors
+				|| innermost.depth <= depth)
+			return null;
+
+		ExpansionFrame ancestor = innermost;
+		while (ancestor.depth > depth)
+			ancestor = ancestor.parentFrame;
+		if (ancestor != this)
+			return null;
+
+		for (ExpansionFrame f = innermost; f != this; f = f.parentFrame)
+			removeActiveTitle(f.title);
+
+		stackRoot.innermostFrame = this;
+		return innermost;
+	}
+
+	/**
+	 * Undoes suspendDescendants().
+	 * 
+	 * @param innermost
+	 *            The value returned by suspendDescendants().
+	 */
+	void resumeDescendants(ExpansionFrame innermost)
+	{
+		if (innermost == null)
+			return;
+
+		for (ExpansionFrame f = innermost; f != this; f = f.parentFrame)
+			addActiveTitle(f.title);
+
+		stackRoot.innermostFrame = innermost;
+	}
+
+	private void addActiveTitle(PageTitle title)
+	{
+		if (stackRoot.activeTitles == null)
+			stackRoot.activeTitles = new HashMap<PageTitle, Integer>();
+
+		Integer count = stackRoot.activeTitles.get(title);
+		stackRoot.activeTitles.put(title, (count == null) ? 1 : count + 1);
+	}
+
+	private void removeActiveTitle(PageTitle title)
+	{
+		Integer count = stackRoot.activeTitles.get(title);
+		if (count == 1)
+			stackRoot.activeTitles.remove(title);
+		else
+			stackRoot.activeTitles.put(title, count - 1);
+	}
+
+	/**
+	 * Counts how often the given title occurs among the titles of this frame
+	 * and its ancestors.
+	 */
+	public int countActiveTitle(PageTitle title)
+	{
+		/* Usually this frame is the innermost frame and its ancestors are
+		 * exactly the frames being expanded. Template arguments are expanded
+		 * lazily in the frame of the caller while the frame of the callee is
+		 * still active, the callee is suspended for that time (see
+		 * suspendDescendants()). If the active frames cannot be matched with
+		 * the chain of frames, we have to walk the chain.
+		 */
+		if (stackRoot.innermostFrame == this && activeFramesAreAncestors)
+		{
+			Integer count = stackRoot.activeTitles.get(title);
+			return (count == null) ? 0 : count;
+		}
+
+		int count = 0;
+		for (ExpansionFrame f = this; f != null; f = f.getParentFrame())
+		{
+			if (f.getTitle().equals(title))
+				++count;
+		}
+		return count;
 	}
 
 	// =========================================================================
 
+	/**
+	 * Retrieves the latest revision of the article. Returns the prefetched
+	 * article if the article was prefetched during this expansion process.
+	 * 
+	 * @return The requested article or null if no such article could be found.
+	 */
+	public FullPage retrieveWikitext(PageTitle pageTitle)
+	{
+		recordDependency(pageTitle);
+
+		Map<PageTitle, FullPage> prefetched = rootFrame.prefetchedPages;
+		synchronized (prefetched)
+		{
+			if (prefetched.containsKey(pageTitle))
+				return prefetched.get(pageTitle);
+		}
+
+		return callback.retrieveWikitext(this, pageTitle);
+	}
+
+	/**
+	 * Starts recording the titles of all pages that are retrieved until the
+	 * matching call to stopRecordingDependencies(). Recordings nest.
+	 */
+	void startRecordingDependencies()
+	{
+		if (stackRoot.dependencies == null)
+			stackRoot.dependencies = new ArrayList<Set<TitleKey>>();
+		stackRoot.dependencies.add(new HashSet<TitleKey>());
+	}
+
+	/**
+	 * Stops the innermost recording. The recorded titles are also added to
+	 * the enclosing recording, if any.
+	 * 
+	 * @return The titles of all pages retrieved during the recording.
+	 */
+	Set<TitleKey> stopRecordingDependencies()
+	{
+		ArrayList<Set<TitleKey>> stack = stackRoot.dependencies;
+		Set<TitleKey> recorded = stack.remove(stack.size() - 1);
+		if (!stack.isEmpty())
+			stack.get(stack.size() - 1).addAll(recorded);
+		return recorded;
+	}
+
+	/**
+	 * Adds the given title to the innermost recording, if any. Titles are
+	 * recorded by namespace and title only (see TitleKey).
+	 */
+	void recordDependency(PageTitle pageTitle)
+	{
+		ArrayList<Set<TitleKey>> stack = stackRoot.dependencies;
+		if (stack != null && !stack.isEmpty())
+			stack.get(stack.size() - 1).add(new TitleKey(pageTitle));
+	}
+
+	/**
+	 * Adds the given titles to the innermost recording, if any.
+	 */
+	void recordDependencies(Collection<PageTitle> pageTitles)
+	{
+		ArrayList<Set<TitleKey>> stack = stackRoot.dependencies;
+		if (stack != null && !stack.isEmpty())
+		{
+			Set<TitleKey> recording = stack.get(stack.size() - 1);
+			for (PageTitle pageTitle : pageTitles)
+				recording.add(new TitleKey(pageTitle));
+		}
+	}
+
+	/**
+	 * Adds the given recorded titles to the innermost recording, if any.
+	 */
+	void recordDependencyKeys(Collection<TitleKey> titleKeys)
+	{
+		ArrayList<Set<TitleKey>> stack = stackRoot.dependencies;
+		if (stack != null && !stack.isEmpty())
+			stack.get(stack.size() - 1).addAll(titleKeys);
+	}
+
+	/**
+	 * Retrieves the given articles with a single call to the callback if the
+	 * callback supports batch retrieval. Articles which were already
+	 * prefetched during this expansion process are not requested again.
+	 */
+	public void prefetchWikitext(Collection<PageTitle> pageTitles)
+	{
+		if (!(callback instanceof BatchExpansionCallback))
+			return;
+
+		Map<PageTitle, FullPage> prefetched = rootFrame.prefetchedPages;
+
+		List<PageTitle> missing = new ArrayList<PageTitle>(pageTitles.size());
+		synchronized (prefetched)
+		{
+			for (PageTitle title : pageTitles)
+			{
+				if (!prefetched.containsKey(title))
+					missing.add(title);
+			}
+		}
+
+		if (missing.isEmpty())
+			return;
+
+		Map<PageTitle, FullPage> retrieved =
+				((BatchExpansionCallback) callback).retrieveWikitext(this, missing);
+
+		synchronized (prefetched)
+		{
+			for (PageTitle title : missing)
+				prefetched.put(title, retrieved.get(title));
+		}
+	}
+
+	/**
+	 * Determines whether an article or a file with the given title exists. The
+	 * result is remembered for the rest of the expansion process.
+	 */
 	public boolean existsPage(PageTitle pageTitle)
 	{
-		return (callback.retrieveWikitext(this, pageTitle) != null) ||
+		setVolatile();
+
+		Map<PageTitle, Boolean> pageExistence = rootFrame.pageExistence;
+
+		Boolean exists;
+		synchronized (pageExistence)
+		{
+			exists = pageExistence.get(pageTitle);
+		}
+
+		if (exists == null)
+		{
+			exists = queryPageExistence(pageTitle);
+
+			synchronized (pageExistence)
+			{
+				pageExistence.put(pageTitle, exists);
+			}
+		}
+
+		return exists;
+	}
+
+	private boolean queryPageExistence(PageTitle pageTitle)
+	{
+		Map<PageTitle, FullPage> prefetched = rootFrame.prefetchedPages;
+		synchronized (prefetched)
+		{
+			if (prefetched.get(pageTitle) != null)
+				return true;
+		}
+
+		if (callback instanceof PageExistenceCallback)
+			return ((PageExistenceCallback) callback).existsPage(this, pageTitle);
+
+		return (retrieveWikitext(pageTitle) != null) ||
 				(callback.fileUrl(pageTitle, -1, -1) != null);
 	}
 }
@@ -23,10 +23,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.sweble.wikitext.engine.cache.PfnResultCache;
+import org.sweble.wikitext.engine.cache.RedirectCache;
+import org.sweble.wikitext.engine.cache.TitleKey;
+import org.sweble.wikitext.engine.cache.TransclusionMemo;
+import org.sweble.wikitext.engine.cache.TransclusionMemo.MemoizedTransclusion;
 import org.sweble.wikitext.engine.config.Namespace;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngLogContainer;
@@ -60,6 +67,7 @@ import org.sweble.wikitext.parser.parser.LinkTargetException;
 import org.sweble.wikitext.parser.utils.AstTextUtils.PartialConversion;
 import org.sweble.wikitext.parser.utils.StringConversionException;
 
+import de.fau.cs.osr.ptk.common.Warning;
 import de.fau.cs.osr.utils.StopWatch;
 
 public final class ExpansionVisitor
@@ -113,14 +121,28 @@ public final class ExpansionVisitor
 	 * Visit a node which if of no intereset to the expansion process.
 	 * 
 	 * Visits all it's children to see if there is something that has to be
-	 * expanded. If one of the children got expanded the child will be replaced
-	 * by the expanded AST.
+	 * expanded. If one of the children got expanded, a copy of the node is
+	 * returned in which the child is replaced by the expanded AST. The node
+	 * itself is never modified. Subtrees that contain nothing to expand are
+	 * shared between the unexpanded and the expanded AST.
 	 */
 	@Override
 	protected WtNode visitUnspecific(WtNode n)
 	{
-		mapInPlace(n);
-		return n;
+		WtNode result = n;
+		int offset = 0;
+		for (int i = 0; i < n.size(); ++i)
+		{
+			WtNode c = n.get(i);
+			WtNode expanded = (WtNode) dispatch(c);
+			if (expanded != c)
+			{
+				if (result == n)
+					result = copy(n);
+				offset += replaceChild(result, i + offset, expanded);
+			}
+		}
+		return result;
 	}
 
 	@Override
@@ -170,6 +192,192 @@ public final class ExpansionVisitor
 		}
 	}
 
+	// =========================================================================
+	// ==
+	// ==  Parallel expansion
+	// ==
+	// =========================================================================
+
+	/**
+	 * Expands a page like go() but forks the expansion of each template at
+	 * the top level of the page onto the given pool. All other nodes are
+	 * expanded by the calling thread while the tasks are running. The results
+	 * of the tasks and their warnings and logs are merged in document order.
+	 */
+	WtNode expandInParallel(WtNode page, ForkJoinPool pool)
+	{
+		int count = 0;
+		for (WtNode c : page)
+		{
+			if (c.isNodeType(WtNode.NT_TEMPLATE) && !skip(c))
+				++count;
+		}
+
+		if (count < 2)
+			return (WtNode) go(page);
+
+		// Same state as if the page had been visited by resolveAndVisit()
+		hadNewlineGlobal = false;
+
+		WtNode[] results = new WtNode[page.size()];
+
+		TopLevelTemplateTask[] tasks = new TopLevelTemplateTask[page.size()];
+
+		/* The calling thread adds its warnings and log entries directly. Where
+		 * the entries of each node end is remembered to put the entries of
+		 * the tasks in between afterwards.
+		 */
+		List<Warning> warnings = expFrame.getWarnings();
+		int warningsStart = warnings.size();
+		int[] warningsEnd = new int[page.size()];
+
+		int logStart = (frameLog != null) ? frameLog.size() : 0;
+		int[] logEnd = new int[page.size()];
+
+		for (int i = 0; i < page.size(); ++i)
+		{
+			WtNode c = page.get(i);
+			if (c.isNodeType(WtNode.NT_TEMPLATE) && !skip(c))
+			{
+				EngLogContainer taskLog = (frameLog != null) ? nf.logExpansionPass() : null;
+
+				ExpansionFrame taskFrame = expFrame.forkRootFrame(
+						new ArrayList<Warning>(),
+						taskLog);
+
+				TopLevelTemplateTask task = new TopLevelTemplateTask(
+						taskFrame, taskLog, (WtTemplate) c, hadNewlineGlobal);
+
+				pool.execute(task);
+				tasks[i] = task;
+
+				// What visit(WtTemplate) leaves behind (see endedWithNewline())
+				hadNewlineGlobal = false;
+			}
+			else
+			{
+				results[i] = (WtNode) dispatch(c);
+
+				warningsEnd[i] = warnings.size();
+				if (frameLog != null)
+					logEnd[i] = frameLog.size();
+			}
+		}
+
+		List<Warning> orderedWarnings = new ArrayList<Warning>();
+		List<WtNode> orderedLog = new ArrayList<WtNode>();
+
+		int warningsNext = warningsStart;
+		int logNext = logStart;
+		for (int i = 0; i < page.size(); ++i)
+		{
+			TopLevelTemplateTask task = tasks[i];
+			if (task != null)
+			{
+				results[i] = task.join();
+
+				orderedWarnings.addAll(task.frame.getWarnings());
+				if (frameLog != null)
+					orderedLog.addAll(task.log);
+			}
+			else
+			{
+				addRange(orderedWarnings, warnings, warningsNext, warningsEnd[i]);
+				warningsNext = warningsEnd[i];
+
+				if (frameLog != null)
+				{
+					addRange(orderedLog, frameLog, logNext, logEnd[i]);
+					logNext = logEnd[i];
+				}
+			}
+		}
+
+		replaceTail(warnings, warningsStart, orderedWarnings);
+		if (frameLog != null)
+			replaceTail(frameLog, logStart, orderedLog);
+
+		WtNode result = page;
+		int offset = 0;
+		for (int i = 0; i < results.length; ++i)
+		{
+			if (results[i] != page.get(i))
+			{
+				if (result == page)
+					result = copy(page);
+				offset += replaceChild(result, i + offset, results[i]);
+			}
+		}
+
+		return result;
+	}
+
+	private static <T> void addRange(List<T> to, List<? extends T> from, int start, int end)
+	{
+		for (int i = start; i < end; ++i)
+			to.add(from.get(i));
+	}
+
+	private static <T> void replaceTail(List<T> list, int start, List<? extends T> tail)
+	{
+		while (list.size() > start)
+			list.remove(list.size() - 1);
+		list.addAll(tail);
+	}
+
+	/**
+	 * Expands a template at the top level of a page. Called by the tasks of
+	 * the parallel expansion mode.
+	 */
+	WtNode expandTemplate(WtTemplate n, boolean hadNewline)
+	{
+		hadNewlineGlobal = hadNewline;
+		return (WtNode) dispatch(n);
+	}
+
+	private static final class TopLevelTemplateTask
+			extends
+				RecursiveTask<WtNode>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ExpansionFrame frame;
+
+		private final EngLogContainer log;
+
+		private final WtTemplate template;
+
+		private final boolean hadNewline;
+
+		public TopLevelTemplateTask(
+				ExpansionFrame frame,
+				EngLogContainer log,
+				WtTemplate template,
+				boolean hadNewline)
+		{
+			this.frame = frame;
+			this.log = log;
+			this.template = template;
+			this.hadNewline = hadNewline;
+		}
+
+		@Override
+		protected WtNode compute()
+		{
+			// Sessions are confined to a thread, the worker needs its own
+			WtEngineImpl engine = frame.getEngine();
+			WtEngineSession session = engine.beginCall();
+			try
+			{
+				return frame.expandTopLevelTemplate(template, hadNewline);
+			}
+			finally
+			{
+				engine.endCall(session);
+			}
+		}
+	}
+
 	// =========================================================================
 	// ==
 	// ==  Newlines
@@ -323,6 +531,10 @@ public final class ExpansionVisitor
 		FullPage page = getWikitext(title);
 		if (page != null)
 		{
+			RedirectCache redirects = getEngine().getRedirectCache();
+			if (redirects != null)
+				redirects.cache(expFrame.getTitle(), expFrame.isForInclusion(), title);
+
 			/* Since we are redirecting some stuff is passed on from this frame
 			 * to the frame in which the target page is expanded: - The
 			 * forInclusion flag is passed on.
@@ -343,7 +555,8 @@ public final class ExpansionVisitor
 					expFrame.getRootFrame(),
 					expFrame);
 
-			log.setSuccess(true);
+			if (log != null)
+				log.setSuccess(true);
 
 			return mergeLogsAndWarnings(log, processedPage);
 		}
@@ -382,7 +595,11 @@ public final class ExpansionVisitor
 
 		// First: Fully expand name.
 		WtName name = (WtName) dispatch(n.getName());
-		//n.setName(name);
+		if (name != n.getName())
+		{
+			n = (WtTemplate) copy(n);
+			n.setName(name);
+		}
 
 		PartialConversion nameConv = tu.astToTextPartial(name);
 		// DO NOT expand parameters (yet)
@@ -674,17 +891,59 @@ public final class ExpansionVisitor
 			stopWatch.start();
 		}
 
+		if (pfn.isVolatile())
+			expFrame.setVolatile();
+
 		WtNode result = null;
 		try
 		{
-			result = pfn.invoke(n, expFrame, argsValues);
+			expFrame.getBudget().chargeParserFunctionCall();
+
+			PfnResultCache resultCache = getEngine().getPfnResultCache();
+
+			String[] argsText = null;
+			if (resultCache != null && pfn.isPure())
+			{
+				argsValues = expandPurePfnArguments(pfn.getArgMode(), argsValues);
+
+				argsText = pfnArgumentsToText(argsValues);
+				if (argsText != null)
+					result = resultCache.retrieve(pfn.getId(), argsText);
+			}
+
 			if (result == null)
-				throw new NullPointerException("Parser function `" + pfn.getId() + "' returned null value!");
+			{
+				int volatileCount = expFrame.getVolatileCount();
+				int warningCount = expFrame.getWarnings().size();
+
+				result = pfn.invoke(n, expFrame, argsValues);
+				if (result == null)
+					throw new NullPointerException("Parser function `" + pfn.getId() + "' returned null value!");
+
+				if (argsText != null
+						&& result != n
+						&& volatileCount == expFrame.getVolatileCount()
+						&& warningCount == expFrame.getWarnings().size())
+				{
+					resultCache.cache(pfn.getId(), argsText, result);
+				}
+			}
 
 			if (result != n)
+			{
+				expFrame.chargeIncludedText(result);
+
 				result = treatBlockElements(n, result);
+			}
 
-			log.setSuccess(true);
+			if (log != null)
+				log.setSuccess(true);
+		}
+		catch (ExpansionBudgetExceededException e)
+		{
+			result = markError(n, e);
+
+			logBudgetExceeded(e);
 		}
 		catch (Exception e)
 		{
@@ -707,6 +966,67 @@ public final class ExpansionVisitor
 				result;
 	}
 
+	/**
+	 * The result of a pure parser function only depends on the text of its
+	 * expanded arguments. To look up the result of a call, all arguments have
+	 * to be expanded first. Expanding them again inside the parser function
+	 * leaves them unchanged.
+	 */
+	private List<? extends WtNode> expandPurePfnArguments(
+			PfnArgumentMode pfnArgumentMode,
+			List<? extends WtNode> argsValues)
+	{
+		if (pfnArgumentMode != PfnArgumentMode.UNEXPANDED_VALUES)
+			return argsValues;
+
+		ArrayList<WtNode> expanded = new ArrayList<WtNode>(argsValues.size());
+		for (WtNode arg : argsValues)
+			expanded.add((WtNode) dispatch(arg));
+
+		return expanded;
+	}
+
+	/**
+	 * @return The text of the given arguments or null if an argument contains
+	 *         something other than text.
+	 */
+	private String[] pfnArgumentsToText(List<? extends WtNode> argsValues)
+	{
+		String[] argsText = new String[argsValues.size()];
+
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < argsText.length; ++i)
+		{
+			b.setLength(0);
+			if (!appendPfnArgumentText(b, argsValues.get(i)))
+				return null;
+			argsText[i] = b.toString();
+		}
+
+		return argsText;
+	}
+
+	private boolean appendPfnArgumentText(StringBuilder b, WtNode n)
+	{
+		switch (n.getNodeType())
+		{
+			case WtNode.NT_TEXT:
+				b.append(((WtText) n).getContent());
+				return true;
+
+			case WtNode.NT_NODE_LIST:
+				for (WtNode c : n)
+				{
+					if (!appendPfnArgumentText(b, c))
+						return false;
+				}
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
 	/**
 	 * Try to resolve the template as transclusion.
 	 * 
@@ -747,6 +1067,12 @@ public final class ExpansionVisitor
 		{
 			result = transcludePage(n, title, args, log);
 		}
+		catch (ExpansionBudgetExceededException e)
+		{
+			result = markError(n, e);
+
+			logBudgetExceeded(e);
+		}
 		catch (Exception e)
 		{
 			result = markError(n, e);
@@ -781,7 +1107,7 @@ public final class ExpansionVisitor
 			WtTemplate n,
 			String target,
 			List<WtTemplateArgument> args,
-			EngLogTransclusionResolution log) throws EngineException, RecursiveTransclusionException
+			EngLogTransclusionResolution log) throws EngineException, RecursiveTransclusionException, ExpansionBudgetExceededException
 	{
 		Namespace tmplNs = getWikiConfig().getTemplateNamespace();
 
@@ -800,29 +1126,114 @@ public final class ExpansionVisitor
 			return n;
 		}
 
+		RedirectCache redirects = getEngine().getRedirectCache();
+		if (redirects != null && !expFrame.isNoRedirect())
+		{
+			List<PageTitle> hops = new ArrayList<PageTitle>();
+			PageTitle redirectTarget = redirects.resolve(title, true, hops);
+			if (redirectTarget != null)
+			{
+				// The result depends on the redirect pages we skip
+				expFrame.recordDependencies(hops);
+				title = redirectTarget;
+			}
+		}
+
 		checkTransclusionRecursion(title);
 
-		log.setCanonical(title.getDenormalizedFullTitle());
+		expFrame.getBudget().chargeTransclusion(expFrame.getDepth() + 1);
+
+		if (log != null)
+			log.setCanonical(title.getDenormalizedFullTitle());
 
 		FullPage page = getWikitext(title);
 		if (page != null)
 		{
-			// EXPANDS ARGUMENTS!
-			Map<String, WtNodeList> tmplArgs = prepareTransclusionArguments(args, log);
+			// EXPANDS ARGUMENT NAMES! VALUES ARE EXPANDED ON DEMAND!
+			LazyTemplateArguments tmplArgs = prepareTransclusionArguments(args, log);
 
-			EngProcessedPage processedPage = getEngine().preprocessAndExpand(
-					expFrame.getCallback(),
-					page.getId(),
-					page.getText(),
-					true,
-					expFrame.getEntityMap(),
-					tmplArgs,
-					expFrame.getRootFrame(),
-					expFrame);
+			TransclusionMemo memo = getEngine().getTransclusionMemo();
 
-			log.setSuccess(true);
+			/* Entity references in the arguments or in the result refer to the
+			 * entity map of the page being rendered. Such transclusions cannot
+			 * be memoized.
+			 * 
+			 * The fingerprint covers all arguments. To compute it without
+			 * expanding arguments the callee might never access (which would
+			 * file warnings and charge the budget only because a memo is
+			 * set), only transclusions whose argument values are plain text
+			 * are memoized.
+			 */
+			String fingerprint = null;
+			if (memo != null
+					&& expFrame.getEntityMap().isEmpty()
+					&& tmplArgs.isPlainText())
+			{
+				// Expanding plain text has no side effects
+				fingerprint = memo.fingerprint(tmplArgs);
+
+				MemoizedTransclusion memoized = memo.retrieve(page.getId(), fingerprint);
+				if (memoized != null)
+				{
+					if (log != null)
+						log.setSuccess(true);
+
+					expFrame.addWarnings(memoized.getWarnings());
+
+					expFrame.recordDependencyKeys(memoized.getDependencies());
+
+					WtNode tResult = memoized.getResult();
+
+					expFrame.chargeIncludedText(tResult);
+
+					return treatBlockElements(n, tResult);
+				}
+			}
+
+			int volatileCount = expFrame.getVolatileCount();
+
+			Set<TitleKey> dependencies = null;
+			if (fingerprint != null)
+				expFrame.startRecordingDependencies();
+
+			EngProcessedPage processedPage;
+			try
+			{
+				processedPage = getEngine().preprocessAndExpand(
+						expFrame.getCallback(),
+						page.getId(),
+						page.getText(),
+						true,
+						expFrame.getEntityMap(),
+						tmplArgs,
+						expFrame.getRootFrame(),
+						expFrame);
+			}
+			finally
+			{
+				if (fingerprint != null)
+					dependencies = expFrame.stopRecordingDependencies();
+			}
+
+			if (log != null)
+				log.setSuccess(true);
+
+			WtNodeList tResult = mergeLogsAndWarnings(log, processedPage);
 
-			WtNode tResult = mergeLogsAndWarnings(log, processedPage);
+			expFrame.chargeIncludedText(tResult);
+
+			if (fingerprint != null
+					&& volatileCount == expFrame.getVolatileCount()
+					&& expFrame.getEntityMap().isEmpty())
+			{
+				memo.memoize(
+						page.getId(),
+						fingerprint,
+						tResult,
+						processedPage.getWarnings(),
+						dependencies,
+						fingerprint.length() + page.getText().length());
+			}
 
 			return treatBlockElements(n, tResult);
 		}
@@ -836,52 +1247,39 @@ public final class ExpansionVisitor
 
 	/**
 	 * Check if a page transcludes itself more than once (directly or
-	 * indirectly).
+	 * indirectly). A page may be transcluded while two frames of the page
+	 * are active, the transclusion is rejected if there are three.
 	 */
 	private void checkTransclusionRecursion(PageTitle title) throws RecursiveTransclusionException
 	{
-		int count = 0;
-
-		ExpansionFrame f = expFrame;
-		while (f != null)
-		{
-			if (f.getTitle().equals(title))
-			{
-				if (++count > 2)
-					throw new RecursiveTransclusionException(title, count);
-			}
-
-			f = f.getParentFrame();
-		}
+		int count = expFrame.countActiveTitle(title);
+		if (count >= 3)
+			throw new RecursiveTransclusionException(title, count);
 	}
 
 	/**
 	 * Prepares the template argument list for transclusion. This encompasses
-	 * the expansion of name and value of each argument.
+	 * the expansion of the name of each argument. The values are expanded
+	 * lazily when the transcluded page accesses them for the first time (see
+	 * expandTransclusionArgument()).
 	 * 
 	 * Each argument is added to the mapping with its one-based index as key.
 	 * 
 	 * If an argument has a name which can be resolved to a string, the argument
 	 * will additionally be put into the mapping with the resolved name as key.
 	 */
-	private Map<String, WtNodeList> prepareTransclusionArguments(
+	private LazyTemplateArguments prepareTransclusionArguments(
 			List<WtTemplateArgument> args,
 			EngLogTransclusionResolution log)
 	{
-		HashMap<String, WtNodeList> transclArgs = new HashMap<String, WtNodeList>();
+		LazyTemplateArguments transclArgs = new LazyTemplateArguments(this);
 
 		int index = 1;
 		for (WtTemplateArgument arg : args)
 		{
-			// EXPAND VALUE!
-			WtValue value = (WtValue) dispatch(arg.getValue());
-
 			boolean named = false;
 			if (arg.hasName())
 			{
-				// ONLY TRIM NAMED VALUES!
-				value = (WtValue) tu.trim(value);
-
 				// EXPAND NAME!
 				WtName name = (WtName) dispatch(arg.getName());
 
@@ -891,7 +1289,7 @@ public final class ExpansionVisitor
 
 					if (!nameStr.isEmpty())
 					{
-						transclArgs.put(nameStr, nf.toList(value));
+						transclArgs.putUnexpanded(nameStr, arg.getValue(), true);
 						named = true;
 					}
 				}
@@ -908,10 +1306,9 @@ public final class ExpansionVisitor
 			{
 				String id = String.valueOf(index);
 
-				WtNodeList prev = transclArgs.put(id, nf.toList(value));
 				// Automatic indices never overwrite!
-				if (prev != null)
-					transclArgs.put(id, prev);
+				if (!transclArgs.containsKey(id))
+					transclArgs.putUnexpanded(id, arg.getValue(), arg.hasName());
 
 				// Only unnamed arguments increase the index
 				index++;
@@ -921,6 +1318,45 @@ public final class ExpansionVisitor
 		return transclArgs;
 	}
 
+	/**
+	 * Expands the value of a transclusion argument in the frame in which the
+	 * transclusion statement occurred.
+	 * 
+	 * @param named
+	 *            Only the values of named arguments get trimmed.
+	 */
+	WtNodeList expandTransclusionArgument(WtValue value, boolean named)
+	{
+		// The argument is expanded while another frame is being expanded.
+		boolean hadNewline = hadNewlineGlobal;
+
+		if (hooks != null)
+			hooks.beforeExpandArgument(this, value);
+
+		WtValue unexpanded = value;
+		ExpansionFrame suspended = expFrame.suspendDescendants();
+		try
+		{
+			// EXPAND VALUE!
+			value = (WtValue) dispatch(value);
+		}
+		finally
+		{
+			expFrame.resumeDescendants(suspended);
+
+			if (hooks != null)
+				hooks.afterExpandArgument(this, unexpanded);
+		}
+
+		hadNewlineGlobal = hadNewline;
+
+		// ONLY TRIM NAMED VALUES!
+		if (named)
+			value = (WtValue) tu.trim(value);
+
+		return nf.toList(value);
+	}
+
 	// =========================================================================
 	// ==
 	// ==  T e m p l a t e  P a r a m e t e r
@@ -944,6 +1380,11 @@ public final class ExpansionVisitor
 
 		// Fully expand name!
 		WtName name = (WtName) dispatch(n.getName());
+		if (name != n.getName())
+		{
+			n = (WtTemplateParameter) copy(n);
+			n.setName(name);
+		}
 
 		String nameStr = null;
 		try
@@ -1050,7 +1491,8 @@ public final class ExpansionVisitor
 
 		if (value != null)
 		{
-			log.setSuccess(true);
+			if (log != null)
+				log.setSuccess(true);
 
 			//value = treatBlockElements(n, value);
 		}
@@ -1148,11 +1590,15 @@ public final class ExpansionVisitor
 			//throw new AssertionError("Cannot find tag extension: " + name);
 			return null;
 
+		if (te.isVolatile())
+			expFrame.setVolatile();
+
 		HashMap<String, WtNodeList> attrMap = prepareTagExtensionAttributes(attrs);
 
 		WtNode result = te.invoke(expFrame, n, attrMap, wtTagExtensionBody);
 
-		log.setSuccess(true);
+		if (log != null)
+			log.setSuccess(true);
 
 		return result;
 	}
@@ -1263,12 +1709,16 @@ public final class ExpansionVisitor
 			 */
 			throw new AssertionError("Cannot find tag extension: " + name);
 
+		if (mw.isVolatile())
+			expFrame.setVolatile();
+
 		WtNode result = mw.invoke(
 				n,
 				expFrame,
 				Collections.<WtNode> emptyList());
 
-		log.setSuccess(true);
+		if (log != null)
+			log.setSuccess(true);
 
 		return result;
 	}
@@ -1302,7 +1752,13 @@ public final class ExpansionVisitor
 
 	private FullPage getWikitext(PageTitle title)
 	{
-		return expFrame.getCallback().retrieveWikitext(expFrame, title);
+		return expFrame.retrieveWikitext(title);
+	}
+
+	private void logBudgetExceeded(ExpansionBudgetExceededException e)
+	{
+		if (frameLog != null)
+			frameLog.add(nf.logBudgetExceeded(e.getBudget().name(), e.getLimit()));
 	}
 
 	private void logUnhandledException(EngLogContainer log, Exception e)
@@ -1414,6 +1870,31 @@ public final class ExpansionVisitor
 		return result;
 	}
 
+	/**
+	 * Creates a shallow copy of a node. The copy can be modified without
+	 * affecting the original node. The children are shared.
+	 */
+	private static WtNode copy(WtNode n)
+	{
+		WtNode copy = (WtNode) n.cloneWrapException();
+		if (!n.getAttributes().isEmpty())
+			copy.setAttributes(new HashMap<String, Object>(n.getAttributes()));
+		return copy;
+	}
+
+	/**
+	 * Replaces the child at the given index. If a list replaces a child of a
+	 * list, the list can be spliced into the parent list.
+	 * 
+	 * @return The number of children by which the parent grew.
+	 */
+	private static int replaceChild(WtNode parent, int index, WtNode child)
+	{
+		int size = parent.size();
+		parent.set(index, child);
+		return parent.size() - size;
+	}
+
 	/**
 	 * Returns if the expansion of the specified node should be skipped. This
 	 * would for example be the case when we already tried to expand the node
@@ -1433,6 +1914,7 @@ public final class ExpansionVisitor
 	private WtNode markError(WtNode n)
 	{
 		//return new SoftErrorNode(n);
+		n = copy(n);
 		n.setAttribute(SKIP_ATTR_NAME, false);
 		return n;
 	}
@@ -1444,6 +1926,9 @@ public final class ExpansionVisitor
 	private WtNode markError(WtNode n, Exception e)
 	{
 		//return new SoftErrorNode(n, e);
+		// Errors like a recursive transclusion depend on the current frame.
+		expFrame.setVolatile();
+		n = copy(n);
 		n.setAttribute(SKIP_ATTR_NAME, e);
 		return n;
 	}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtValue;
+
+/**
+ * The arguments of a transclusion. The names of the arguments are expanded
+ * when the map is built, the values are only expanded when they are accessed
+ * for the first time. The expanded values are remembered.
+ * 
+ * Iterating over the entries of the map expands all values. The map cannot be
+ * modified and is not thread-safe.
+ */
+final class LazyTemplateArguments
+		extends
+			AbstractMap<String, WtNodeList>
+{
+	private final ExpansionVisitor visitor;
+
+	private final HashMap<String, Argument> arguments =
+			new HashMap<String, Argument>();
+
+	private Set<Map.Entry<String, WtNodeList>> entrySet;
+
+	// =========================================================================
+
+	/**
+	 * @param visitor
+	 *            The visitor of the frame in which the transclusion statement
+	 *            occurred. The values are expanded by this visitor.
+	 */
+	public LazyTemplateArguments(ExpansionVisitor visitor)
+	{
+		this.visitor = visitor;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @param named
+	 *            Values of named arguments are trimmed after expansion.
+	 */
+	void putUnexpanded(String name, WtValue value, boolean named)
+	{
+		arguments.put(name, new Argument(value, named));
+	}
+
+	/**
+	 * Determines whether the values of all arguments consist of plain text
+	 * only. Expanding such values does not change them and has no side
+	 * effects.
+	 */
+	boolean isPlainText()
+	{
+		for (Argument arg : arguments.values())
+		{
+			if (arg.value == null)
+				continue;
+
+			for (WtNode n : arg.value)
+			{
+				switch (n.getNodeType())
+				{
+					case WtNode.NT_TEXT:
+					case WtNode.NT_NEWLINE:
+						break;
+					default:
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// =========================================================================
+
+	@Override
+	public WtNodeList get(Object name)
+	{
+		Argument arg = arguments.get(name);
+		if (arg == null)
+			return null;
+
+		if (arg.expanded == null)
+		{
+			arg.expanded = visitor.expandTransclusionArgument(arg.value, arg.named);
+			// Allow the unexpanded AST to be collected
+			arg.value = null;
+		}
+
+		return arg.expanded;
+	}
+
+	@Override
+	public boolean containsKey(Object name)
+	{
+		return arguments.containsKey(name);
+	}
+
+	@Override
+	public int size()
+	{
+		return arguments.size();
+	}
+
+	@Override
+	public Set<String> keySet()
+	{
+		return Collections.unmodifiableSet(arguments.keySet());
+	}
+
+	@Override
+	public Set<Map.Entry<String, WtNodeList>> entrySet()
+	{
+		if (entrySet == null)
+			entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	// =========================================================================
+
+	private static final class Argument
+	{
+		private WtValue value;
+
+		private final boolean named;
+
+		private WtNodeList expanded;
+
+		public Argument(WtValue value, boolean named)
+		{
+			this.value = value;
+			this.named = named;
+		}
+	}
+
+	// =========================================================================
+
+	private final class EntrySet
+			extends
+				AbstractSet<Map.Entry<String, WtNodeList>>
+	{
+		@Override
+		public Iterator<Map.Entry<String, WtNodeList>> iterator()
+		{
+			final Iterator<String> i = arguments.keySet().iterator();
+
+			return new Iterator<Map.Entry<String, WtNodeList>>()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return i.hasNext();
+				}
+
+				@Override
+				public Map.Entry<String, WtNodeList> next()
+				{
+					String name = i.next();
+					return new SimpleImmutableEntry<String, WtNodeList>(name, get(name));
+				}
+
+				@Override
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return arguments.size();
+		}
+	}
+}
@@ -23,6 +23,7 @@ import java.net.URL;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.sweble.wikitext.engine.cache.PageTitleCache;
 import org.sweble.wikitext.engine.config.Interwiki;
 import org.sweble.wikitext.engine.config.Namespace;
 import org.sweble.wikitext.engine.config.WikiConfig;
@@ -291,6 +292,25 @@ public class PageTitle
 			WikiConfig config,
 			String target,
 			Namespace defaultNamespace) throws LinkTargetException
+	{
+		PageTitleCache cache = config.getTitleCache();
+		if (cache == null)
+			return parse(config, target, defaultNamespace);
+
+		PageTitle title = cache.retrieve(target, defaultNamespace);
+		if (title == null)
+		{
+			title = parse(config, target, defaultNamespace);
+			cache.cache(target, defaultNamespace, title);
+		}
+
+		return title;
+	}
+
+	private static PageTitle parse(
+			WikiConfig config,
+			String target,
+			Namespace defaultNamespace) throws LinkTargetException
 	{
 		// FIXME: Review the implementation!
 
@@ -157,6 +157,37 @@ public abstract class ParserFunctionBase
 		return tu;
 	}
 
+	/**
+	 * Returns true if the result of this parser function does not only depend
+	 * on its arguments but also on the context of the expansion (e.g. the
+	 * current time or the title of the page that is being rendered). The
+	 * expansion of a frame that invokes a volatile parser function is marked
+	 * as volatile (see ExpansionFrame.setVolatile()).
+	 * 
+	 * Parser functions whose volatility depends on their arguments should
+	 * return false and call ExpansionFrame.setVolatile() themselves.
+	 */
+	public boolean isVolatile()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns true if the result of this parser function only depends on the
+	 * text of its expanded arguments. The results of pure parser functions
+	 * can be cached (see WtEngineImpl.setPfnResultCache()). If a cache is
+	 * used, the engine expands all arguments before invoking the parser
+	 * function and only caches results of invocations that neither marked the
+	 * expansion as volatile nor filed warnings.
+	 * 
+	 * Parser functions that only expand some of their arguments depending on
+	 * the value of others (like #if) are not pure.
+	 */
+	public boolean isPure()
+	{
+		return false;
+	}
+
 	/**
 	 * WtNode can either be a WtTemplate or a WtPageSwitch
 	 */
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.config.WikiRuntimeInfo;
+
+/**
+ * The date and time at which a page is rendered. The clock asks the runtime
+ * info of the wiki only once per page, so all date and time magic words and
+ * parser functions of a page see the same point in time. The values are
+ * immutable and can be shared by the tasks of the parallel expansion mode.
+ */
+public final class RenderClock
+{
+	private final WikiRuntimeInfo runtimeInfo;
+
+	private ZonedDateTime dateAndTime;
+
+	private final Map<Locale, ZonedDateTime> localDateAndTime =
+			new HashMap<Locale, ZonedDateTime>(4);
+
+	// =========================================================================
+
+	public RenderClock(WikiRuntimeInfo runtimeInfo)
+	{
+		this.runtimeInfo = runtimeInfo;
+	}
+
+	// =========================================================================
+
+	/**
+	 * The date and time in the time zone of the wiki (see
+	 * WikiRuntimeInfo.getDateAndTime()).
+	 */
+	public synchronized ZonedDateTime getDateAndTime()
+	{
+		if (dateAndTime == null)
+			dateAndTime = toZonedDateTime(runtimeInfo.getDateAndTime());
+		return dateAndTime;
+	}
+
+	/**
+	 * The date and time for the given locale (see
+	 * WikiRuntimeInfo.getDateAndTime(Locale)).
+	 */
+	public synchronized ZonedDateTime getDateAndTime(Locale locale)
+	{
+		ZonedDateTime local = localDateAndTime.get(locale);
+		if (local == null)
+		{
+			local = toZonedDateTime(runtimeInfo.getDateAndTime(locale));
+			localDateAndTime.put(locale, local);
+		}
+		return local;
+	}
+
+	// =========================================================================
+
+	private static ZonedDateTime toZonedDateTime(Calendar calendar)
+	{
+		if (calendar instanceof GregorianCalendar)
+			return ((GregorianCalendar) calendar).toZonedDateTime();
+
+		return ZonedDateTime.ofInstant(
+				calendar.toInstant(),
+				calendar.getTimeZone().toZoneId());
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.sweble.wikitext.parser.WtEntityMap;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * Makes an entity map usable by multiple threads. Used in parallel expansion
+ * mode where all tasks register entities with the entity map of the page.
+ * getEntities() and getMap() return snapshots.
+ */
+final class SynchronizedEntityMap
+		implements
+			WtEntityMap
+{
+	private final WtEntityMap map;
+
+	// =========================================================================
+
+	public SynchronizedEntityMap(WtEntityMap map)
+	{
+		this.map = map;
+	}
+
+	// =========================================================================
+
+	@Override
+	public synchronized int registerEntity(WtNode entity)
+	{
+		return map.registerEntity(entity);
+	}
+
+	@Override
+	public synchronized WtNode getEntity(int id)
+	{
+		return map.getEntity(id);
+	}
+
+	@Override
+	public synchronized Set<Entry<Integer, WtNode>> getEntities()
+	{
+		return getMap().entrySet();
+	}
+
+	@Override
+	public synchronized Map<Integer, WtNode> getMap()
+	{
+		return Collections.unmodifiableMap(new HashMap<Integer, WtNode>(map.getMap()));
+	}
+
+	@Override
+	public synchronized boolean isEmpty()
+	{
+		return map.isEmpty();
+	}
+}
@@ -107,6 +107,16 @@ public abstract class TagExtensionBase
 		return tu;
 	}
 
+	/**
+	 * Returns true if the result of this tag extension does not only depend
+	 * on its attributes and body but also on the context of the expansion.
+	 * See ParserFunctionBase.isVolatile().
+	 */
+	public boolean isVolatile()
+	{
+		return false;
+	}
+
 	public abstract WtNode invoke(
 			ExpansionFrame preprocessorFrame,
 			WtTagExtension wtTagExtension,
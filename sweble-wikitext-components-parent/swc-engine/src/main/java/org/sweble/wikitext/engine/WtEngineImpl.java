@@ -19,15 +19,23 @@ package org.sweble.wikitext.engine;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sweble.wikitext.engine.cache.PfnResultCache;
+import org.sweble.wikitext.engine.cache.PreprocessedPageCache;
+import org.sweble.wikitext.engine.cache.RedirectCache;
+import org.sweble.wikitext.engine.cache.TransclusionMemo;
 import org.sweble.wikitext.engine.config.EngineConfig;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngLogContainer;
@@ -47,11 +55,15 @@ import org.sweble.wikitext.parser.WikitextPreprocessor;
 import org.sweble.wikitext.parser.WtEntityMap;
 import org.sweble.wikitext.parser.WtEntityMapImpl;
 import org.sweble.wikitext.parser.encval.ValidatedWikitext;
+import org.sweble.wikitext.parser.nodes.WtNode;
 import org.sweble.wikitext.parser.nodes.WtNodeList;
 import org.sweble.wikitext.parser.nodes.WtParsedWikitextPage;
 import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+import org.sweble.wikitext.parser.nodes.WtTemplate;
+import org.sweble.wikitext.parser.parser.LinkTargetException;
 import org.sweble.wikitext.parser.parser.PreprocessorToParserTransformer;
 import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.WtAstCloner;
 
 import de.fau.cs.osr.ptk.common.Warning;
 import de.fau.cs.osr.utils.StopWatch;
@@ -76,8 +88,33 @@ public class WtEngineImpl
 
 	private boolean timingEnabled = false;
 
+	private boolean loggingEnabled = true;
+
 	private boolean catchAll = true;
 
+	private PreprocessedPageCache preprocessedPageCache;
+
+	private TransclusionMemo transclusionMemo;
+
+	private RedirectCache redirectCache;
+
+	private PfnResultCache pfnResultCache;
+
+	/**
+	 * Volatile since session reuse may be switched while other threads use
+	 * the engine.
+	 */
+	private volatile ThreadLocal<WtEngineSession> sessions;
+
+	/**
+	 * The sessions of the calls to the engine which are currently running if
+	 * session reuse is disabled (see beginCall()).
+	 */
+	private final ThreadLocal<WtEngineSession> callSessions =
+			new ThreadLocal<WtEngineSession>();
+
+	private ForkJoinPool parallelExpansionPool;
+
 	// =========================================================================
 
 	public WtEngineImpl(WikiConfig wikiConfig)
@@ -110,6 +147,79 @@ public class WtEngineImpl
 		this.catchAll = catchAll;
 	}
 
+	/**
+	 * If disabled, the engine does not build a log tree while processing a
+	 * page and does not time the individual passes and resolutions. The logs
+	 * of processed pages and exceptions are empty then. Errors are still
+	 * reported to the logger. Logging is enabled by default.
+	 */
+	public void setLoggingEnabled(boolean loggingEnabled)
+	{
+		this.loggingEnabled = loggingEnabled;
+	}
+
+	/**
+	 * Sets a cache which stores the preprocessed ASTs of transcluded pages.
+	 * Pass null to disable caching.
+	 */
+	public void setPreprocessedPageCache(
+			PreprocessedPageCache preprocessedPageCache)
+	{
+		this.preprocessedPageCache = preprocessedPageCache;
+	}
+
+	/**
+	 * If enabled, each thread using this engine keeps its own session (see
+	 * WtEngineSession) and reuses the pipeline objects of the session for all
+	 * pages it processes.
+	 */
+	public void setReuseSessions(boolean reuseSessions)
+	{
+		this.sessions = reuseSessions ? new ThreadLocal<WtEngineSession>() : null;
+	}
+
+	/**
+	 * Enables the parallel expansion mode if a pool is given. In parallel
+	 * expansion mode the templates at the top level of a page are expanded
+	 * concurrently by tasks of the given pool. The expansion callback, the
+	 * debug hooks and all parser functions and tag extensions must then be
+	 * thread-safe. Pass null to expand pages sequentially.
+	 */
+	public void setParallelExpansionPool(ForkJoinPool parallelExpansionPool)
+	{
+		this.parallelExpansionPool = parallelExpansionPool;
+	}
+
+	/**
+	 * Sets a memo which stores the expanded results of transclusions. Only
+	 * transclusions that do not depend on the time, the page being rendered or
+	 * the state of the current frame are memoized. Pass null to disable
+	 * memoization.
+	 */
+	public void setTransclusionMemo(TransclusionMemo transclusionMemo)
+	{
+		this.transclusionMemo = transclusionMemo;
+	}
+
+	/**
+	 * Sets a cache which remembers the targets of redirect pages. Transclusions
+	 * of known redirects then transclude the final target directly. Pass null
+	 * to disable the cache.
+	 */
+	public void setRedirectCache(RedirectCache redirectCache)
+	{
+		this.redirectCache = redirectCache;
+	}
+
+	/**
+	 * Sets a cache which remembers the results of pure parser functions (see
+	 * ParserFunctionBase.isPure()). Pass null to disable the cache.
+	 */
+	public void setPfnResultCache(PfnResultCache pfnResultCache)
+	{
+		this.pfnResultCache = pfnResultCache;
+	}
+
 	public WikiConfig getWikiConfig()
 	{
 		return wikiConfig;
@@ -135,11 +245,112 @@ public class WtEngineImpl
 		return catchAll;
 	}
 
+	public boolean isLoggingEnabled()
+	{
+		return loggingEnabled;
+	}
+
+	public PreprocessedPageCache getPreprocessedPageCache()
+	{
+		return preprocessedPageCache;
+	}
+
+	public TransclusionMemo getTransclusionMemo()
+	{
+		return transclusionMemo;
+	}
+
+	public RedirectCache getRedirectCache()
+	{
+		return redirectCache;
+	}
+
+	public PfnResultCache getPfnResultCache()
+	{
+		return pfnResultCache;
+	}
+
+	/**
+	 * Removes everything the caches of this engine know about the given page.
+	 * This includes memoized transclusions of other pages whose expansion
+	 * retrieved the given page or skipped it as a redirect. Must be called
+	 * whenever a page is created, edited or deleted while caches are in use.
+	 */
+	public void invalidate(PageTitle title)
+	{
+		if (preprocessedPageCache != null)
+			preprocessedPageCache.invalidate(title);
+		if (transclusionMemo != null)
+			transclusionMemo.invalidate(title);
+		if (redirectCache != null)
+			redirectCache.invalidate(title);
+	}
+
+	public ForkJoinPool getParallelExpansionPool()
+	{
+		return parallelExpansionPool;
+	}
+
+	public boolean isReuseSessions()
+	{
+		return sessions != null;
+	}
+
+	/**
+	 * Returns the session of the calling thread if session reuse is enabled.
+	 * Otherwise the session of the current call to the engine is returned, or
+	 * a new session if the thread is not inside a call to the engine.
+	 */
+	public WtEngineSession getSession()
+	{
+		ThreadLocal<WtEngineSession> sessions = this.sessions;
+		if (sessions == null)
+		{
+			WtEngineSession session = callSessions.get();
+			return (session != null) ? session : new WtEngineSession(parserConfig);
+		}
+
+		WtEngineSession session = sessions.get();
+		if (session == null)
+		{
+			session = new WtEngineSession(parserConfig);
+			sessions.set(session);
+		}
+
+		return session;
+	}
+
 	public EngineNodeFactory nf()
 	{
 		return wikiConfig.getNodeFactory();
 	}
 
+	/**
+	 * If session reuse is disabled, creates the session which is used by all
+	 * passes of a call to the engine on the calling thread. Nested calls (the
+	 * expansion of transcluded pages) use the session of the outermost call.
+	 * The tasks of the parallel expansion mode call this method on their
+	 * worker thread, so that all passes of a task share one session.
+	 * 
+	 * @return The created session, which has to be passed to endCall(), or
+	 *         null if no session was created.
+	 */
+	WtEngineSession beginCall()
+	{
+		if (sessions != null || callSessions.get() != null)
+			return null;
+
+		WtEngineSession session = new WtEngineSession(parserConfig);
+		callSessions.set(session);
+		return session;
+	}
+
+	void endCall(WtEngineSession session)
+	{
+		if (session != null)
+			callSessions.remove();
+	}
+
 	// =========================================================================
 
 	/**
@@ -151,6 +362,9 @@ public class WtEngineImpl
 	 * <li>Entity substitution</li>
 	 * <li>Optional: Expansion</li>
 	 * </ul>
+	 * 
+	 * If the page is expanded, the returned AST does not share nodes with the
+	 * caches of this engine and may be modified by the caller.
 	 */
 	public EngProcessedPage preprocess(
 			PageId pageId,
@@ -164,9 +378,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtPreproWikitextPage pprAst;
 		try
@@ -179,7 +393,7 @@ public class WtEngineImpl
 
 			pprAst = ppAst;
 			if (callback != null)
-				pprAst = expand(callback, title, ppAst, null, false, log);
+				pprAst = unshare(expand(callback, title, ppAst, null, false, log));
 		}
 		catch (EngineException e)
 		{
@@ -190,6 +404,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pprAst),
@@ -206,6 +424,9 @@ public class WtEngineImpl
 	 * <li>Entity substitution</li>
 	 * <li>Expansion</li>
 	 * </ul>
+	 * 
+	 * The returned AST does not share nodes with the caches of this engine
+	 * and may be modified by the caller.
 	 */
 	public EngProcessedPage expand(
 			PageId pageId,
@@ -225,6 +446,9 @@ public class WtEngineImpl
 	 * <li>Entity substitution</li>
 	 * <li>Expansion</li>
 	 * </ul>
+	 * 
+	 * The returned AST does not share nodes with the caches of this engine
+	 * and may be modified by the caller.
 	 */
 	public EngProcessedPage expand(
 			PageId pageId,
@@ -238,9 +462,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtPreproWikitextPage pAst;
 		try
@@ -254,7 +478,7 @@ public class WtEngineImpl
 			WtPreproWikitextPage pprAst = ppAst;
 			pprAst = expand(callback, title, ppAst, null, forInclusion, log);
 
-			pAst = pprAst;
+			pAst = unshare(pprAst);
 		}
 		catch (EngineException e)
 		{
@@ -265,6 +489,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pAst),
@@ -296,9 +524,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtParsedWikitextPage pAst;
 		try
@@ -324,6 +552,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pAst),
@@ -350,9 +582,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtParsedWikitextPage pAst;
 		try
@@ -370,6 +602,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pAst),
@@ -401,9 +637,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtParsedWikitextPage pAst;
 		try
@@ -431,6 +667,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pAst),
@@ -457,9 +697,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtParsedWikitextPage pAst;
 		try
@@ -477,6 +717,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pAst),
@@ -516,18 +760,30 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtPreproWikitextPage pprAst;
 		try
 		{
-			ValidatedWikitext validatedWikitext =
-					validate(title, wikitext, log, entityMap);
-
 			WtPreproWikitextPage ppAst =
-					preprocess(title, validatedWikitext, forInclusion, log);
+					retrieveCachedPreprocessedPage(pageId, forInclusion, entityMap);
+
+			if (ppAst == null)
+			{
+				ValidatedWikitext validatedWikitext =
+						validate(title, wikitext, log, entityMap);
+
+				ppAst = preprocess(title, validatedWikitext, forInclusion, log);
+
+				cachePreprocessedPage(
+						pageId,
+						forInclusion,
+						wikitext,
+						validatedWikitext,
+						ppAst);
+			}
 
 			pprAst = expand(
 					callback,
@@ -548,6 +804,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pprAst),
@@ -574,9 +834,9 @@ public class WtEngineImpl
 
 		PageTitle title = pageId.getTitle();
 
-		EngLogProcessingPass log = nf().logProcessingPass();
-		log.setTitle(title.getDenormalizedFullTitle());
-		log.setRevision(pageId.getRevision());
+		EngLogProcessingPass log = logProcessingPass(pageId);
+
+		WtEngineSession session = beginCall();
 
 		WtPreproWikitextPage pprAst;
 		try
@@ -600,6 +860,10 @@ public class WtEngineImpl
 		{
 			throw new EngineException(title, "Compilation failed!", e, log);
 		}
+		finally
+		{
+			endCall(session);
+		}
 
 		return nf().processedPage(
 				nf().page(pprAst),
@@ -609,6 +873,192 @@ public class WtEngineImpl
 
 	// =========================================================================
 
+	/**
+	 * Expanded ASTs share subtrees with the preprocessed page cache, the
+	 * transclusion memo and the parser function result cache. ASTs which leave
+	 * the engine are deep-copied if any of these caches is used, so that the
+	 * caller cannot modify cached nodes.
+	 */
+	private WtPreproWikitextPage unshare(WtPreproWikitextPage pprAst)
+	{
+		if (preprocessedPageCache == null
+				&& transclusionMemo == null
+				&& pfnResultCache == null)
+			return pprAst;
+
+		return WtAstCloner.deepClone(pprAst);
+	}
+
+	/**
+	 * Looks up the preprocessed AST of a page in the preprocessed page cache.
+	 * Expansion does not modify the AST, therefore only the page node itself
+	 * is copied to attach the entity map of the page being expanded. The
+	 * content of the cached AST is shared.
+	 * 
+	 * @return A copy of the cached page node or null if no cache is
+	 *         configured or the page is not in the cache.
+	 */
+	private WtPreproWikitextPage retrieveCachedPreprocessedPage(
+			PageId pageId,
+			boolean forInclusion,
+			WtEntityMap entityMap)
+	{
+		if (preprocessedPageCache == null)
+			return null;
+
+		WtPreproWikitextPage cached =
+				preprocessedPageCache.retrieve(pageId, forInclusion);
+		if (cached == null)
+			return null;
+
+		WtPreproWikitextPage ppAst =
+				(WtPreproWikitextPage) cached.cloneWrapException();
+
+		ppAst.setWarnings(new ArrayList<Warning>(cached.getWarnings()));
+
+		if (entityMap == null)
+			entityMap = new WtEntityMapImpl();
+		ppAst.setEntityMap(entityMap);
+
+		return ppAst;
+	}
+
+	/**
+	 * Puts a freshly preprocessed page into the preprocessed page cache. Only
+	 * the page node is copied, the content is shared with the page that is
+	 * about to be expanded.
+	 */
+	private void cachePreprocessedPage(
+			PageId pageId,
+			boolean forInclusion,
+			String wikitext,
+			ValidatedWikitext validatedWikitext,
+			WtPreproWikitextPage ppAst)
+	{
+		if (preprocessedPageCache == null)
+			return;
+
+		/* Illegal code points are registered as entities in the entity map of
+		 * the page that is being expanded. The preprocessed AST refers to
+		 * these entities and can therefore not be used with another page.
+		 */
+		if (validatedWikitext.containsIllegalCodePoints())
+			return;
+
+		WtPreproWikitextPage copy =
+				(WtPreproWikitextPage) ppAst.cloneWrapException();
+
+		copy.setWarnings(new ArrayList<Warning>(ppAst.getWarnings()));
+
+		// Don't keep the entity map of the including page alive.
+		copy.setEntityMap(WtEntityMap.EMPTY_ENTITY_MAP);
+
+		preprocessedPageCache.cache(
+				pageId,
+				forInclusion,
+				copy,
+				wikitext.length());
+	}
+
+	// =========================================================================
+
+	/**
+	 * If the callback supports batch retrieval, all pages which are
+	 * transcluded under a statically known name are retrieved before the
+	 * expansion of the page starts. Since every transcluded page passes through
+	 * here before it is expanded, the templates of the transcluded pages are
+	 * prefetched as well.
+	 */
+	private void prefetchTemplates(ExpansionFrame frame, WtNode ppAst)
+	{
+		if (!(frame.getCallback() instanceof BatchExpansionCallback))
+			return;
+
+		Set<PageTitle> titles = new LinkedHashSet<PageTitle>();
+		collectTemplateTitles(ppAst, titles);
+
+		if (!titles.isEmpty())
+			frame.prefetchWikitext(titles);
+	}
+
+	private void collectTemplateTitles(WtNode n, Set<PageTitle> titles)
+	{
+		if (n.isNodeType(WtNode.NT_TEMPLATE))
+		{
+			WtTemplate tmpl = (WtTemplate) n;
+			if (tmpl.getName().isResolved())
+			{
+				PageTitle title = getStaticTemplateTitle(
+						tmpl.getName().getAsString(),
+						!tmpl.getArgs().isEmpty());
+
+				if (title != null)
+					titles.add(title);
+			}
+		}
+
+		for (WtNode c : n)
+			collectTemplateTitles(c, titles);
+	}
+
+	/**
+	 * Mirrors the order in which the ExpansionVisitor tries to resolve a
+	 * template name.
+	 * 
+	 * @return The title of the page that would be transcluded or null if the
+	 *         name refers to a parser function or magic word or is not a
+	 *         valid title.
+	 */
+	private PageTitle getStaticTemplateTitle(String name, boolean hasArgs)
+	{
+		if (name.equals("!"))
+			return null;
+
+		int i = name.indexOf(':');
+		if (i != -1 && wikiConfig.getParserFunction(name.substring(0, i).trim() + ":") != null)
+			return null;
+
+		if (!hasArgs && wikiConfig.getParserFunction(name) != null)
+			return null;
+
+		try
+		{
+			return PageTitle.make(
+					wikiConfig,
+					name,
+					wikiConfig.getTemplateNamespace());
+		}
+		catch (LinkTargetException e)
+		{
+			return null;
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * Creates the log of a processing pass. Processed pages and exceptions
+	 * always carry a log, therefore the log is created even if logging is
+	 * disabled. It remains empty then.
+	 */
+	private EngLogProcessingPass logProcessingPass(PageId pageId)
+	{
+		EngLogProcessingPass log = nf().logProcessingPass();
+		if (loggingEnabled)
+		{
+			log.setTitle(pageId.getTitle().getDenormalizedFullTitle());
+			log.setRevision(pageId.getRevision());
+		}
+		return log;
+	}
+
+	private void logUnhandledError(EngLogContainer log, Exception e)
+	{
+		StringWriter w = new StringWriter();
+		e.printStackTrace(new PrintWriter(w));
+		log.add(nf().logUnhandledError(e, w.toString()));
+	}
+
 	/**
 	 * Validates wikitext.
 	 */
@@ -619,15 +1069,20 @@ public class WtEngineImpl
 			WtEntityMap entityMap)
 			throws EngineException
 	{
-		EngLogValidatorPass log = nf().logValidatorPass();
-		parentLog.add(log);
+		EngLogValidatorPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logValidatorPass();
+			parentLog.add(log);
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
-			WikitextEncodingValidator validator = new WikitextEncodingValidator();
+			WikitextEncodingValidator validator = getSession().getValidator();
 
 			if (entityMap == null)
 				entityMap = new WtEntityMapImpl();
@@ -644,16 +1099,18 @@ public class WtEngineImpl
 		{
 			logger.error("Validation failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Validation failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 
@@ -667,17 +1124,21 @@ public class WtEngineImpl
 			EngLogContainer parentLog)
 			throws EngineException
 	{
-		EngLogPreprocessorPass log = nf().logPreprocessorPass();
-		parentLog.add(log);
-
-		log.setForInclusion(forInclusion);
+		EngLogPreprocessorPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logPreprocessorPass();
+			parentLog.add(log);
+			log.setForInclusion(forInclusion);
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
-			WikitextPreprocessor preprocessor = new WikitextPreprocessor(parserConfig);
+			WikitextPreprocessor preprocessor = getSession().getPreprocessor();
 
 			/**
 			 * Entities generated and inserted into the source by the encoding
@@ -700,7 +1161,8 @@ public class WtEngineImpl
 		}
 		catch (xtc.parser.ParseException e)
 		{
-			log.add(nf().logParserError(e.getMessage()));
+			if (log != null)
+				log.add(nf().logParserError(e.getMessage()));
 
 			throw new EngineException(title, "Preprocessing failed!", e);
 		}
@@ -708,16 +1170,18 @@ public class WtEngineImpl
 		{
 			logger.error("Preprocessing failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Preprocessing failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 
@@ -759,14 +1223,19 @@ public class WtEngineImpl
 			EngLogContainer parentLog)
 			throws EngineException
 	{
-		EngLogExpansionPass log = nf().logExpansionPass();
-		parentLog.add(log);
-
 		if (arguments == null)
 			arguments = new HashMap<String, WtNodeList>();
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+		EngLogExpansionPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logExpansionPass();
+			parentLog.add(log);
+
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
@@ -790,29 +1259,37 @@ public class WtEngineImpl
 						parentFrame,
 						warnings,
 						log,
-						timingEnabled,
+						timingEnabled && loggingEnabled,
 						catchAll);
 			}
 			else
 			{
+				// All tasks of the parallel expansion mode share this map.
+				WtEntityMap entityMap = ppAst.getEntityMap();
+				if (parallelExpansionPool != null && entityMap != null)
+					entityMap = new SynchronizedEntityMap(entityMap);
+
 				frame = new ExpansionFrame(
 						this,
 						callback,
 						hooks,
 						title,
-						ppAst.getEntityMap(),
+						entityMap,
 						noRedirect,
 						warnings,
 						log,
-						timingEnabled,
+						timingEnabled && loggingEnabled,
 						catchAll);
 			}
 
+			prefetchTemplates(frame, ppAst);
+
+			// ppAst is not modified, expanded is a copy if anything changed.
 			WtPreproWikitextPage expanded =
-					(WtPreproWikitextPage) frame.expand(ppAst);
+					(WtPreproWikitextPage) frame.expandPage(ppAst);
 
 			if (!warnings.isEmpty())
-				ppAst.setWarnings(warnings);
+				expanded.setWarnings(warnings);
 
 			return expanded;
 		}
@@ -820,16 +1297,18 @@ public class WtEngineImpl
 		{
 			logger.error("Resolution failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Resolution failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 
@@ -842,15 +1321,20 @@ public class WtEngineImpl
 			EngLogContainer parentLog)
 			throws EngineException
 	{
-		EngLogParserPass log = nf().logParserPass();
-		parentLog.add(log);
+		EngLogParserPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logParserPass();
+			parentLog.add(log);
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
-			WikitextParser parser = new WikitextParser(parserConfig);
+			WikitextParser parser = getSession().getParser();
 
 			WtParsedWikitextPage parsedAst =
 					(WtParsedWikitextPage) parser.parseArticle(
@@ -861,7 +1345,8 @@ public class WtEngineImpl
 		}
 		catch (xtc.parser.ParseException e)
 		{
-			log.add(nf().logParserError(e.getMessage()));
+			if (log != null)
+				log.add(nf().logParserError(e.getMessage()));
 
 			throw new EngineException(title, "Parsing failed!", e);
 		}
@@ -869,16 +1354,18 @@ public class WtEngineImpl
 		{
 			logger.error("Parsing failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Parsing failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 
@@ -892,20 +1379,27 @@ public class WtEngineImpl
 			EngLogContainer parentLog)
 			throws EngineException
 	{
-		EngLogParserPass log = nf().logParserPass();
-		parentLog.add(log);
+		EngLogParserPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logParserPass();
+			parentLog.add(log);
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
+			// The expanded AST shares nodes with cached ASTs.
 			PreprocessedWikitext preprocessedWikitext =
 					PreprocessorToParserTransformer.transform(
 							ppAst,
-							engineConfig.isTrimTransparentBeforeParsing());
+							engineConfig.isTrimTransparentBeforeParsing(),
+							true);
 
-			WikitextParser parser = new WikitextParser(parserConfig);
+			WikitextParser parser = getSession().getParser();
 
 			WtParsedWikitextPage parsedAst =
 					(WtParsedWikitextPage) parser.parseArticle(
@@ -926,7 +1420,8 @@ public class WtEngineImpl
 		}
 		catch (xtc.parser.ParseException e)
 		{
-			log.add(nf().logParserError(e.getMessage()));
+			if (log != null)
+				log.add(nf().logParserError(e.getMessage()));
 
 			throw new EngineException(title, "Parsing failed!", e);
 		}
@@ -934,16 +1429,18 @@ public class WtEngineImpl
 		{
 			logger.error("Parsing failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Parsing failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 
@@ -953,15 +1450,20 @@ public class WtEngineImpl
 			EngLogProcessingPass parentLog)
 			throws EngineException
 	{
-		EngLogPostprocessorPass log = nf().logPostprocessorPass();
-		parentLog.add(log);
+		EngLogPostprocessorPass log = null;
+		StopWatch stopWatch = null;
+		if (loggingEnabled)
+		{
+			log = nf().logPostprocessorPass();
+			parentLog.add(log);
 
-		StopWatch stopWatch = new StopWatch();
-		stopWatch.start();
+			stopWatch = new StopWatch();
+			stopWatch.start();
+		}
 
 		try
 		{
-			WikitextPostprocessor lpp = new WikitextPostprocessor(parserConfig);
+			WikitextPostprocessor lpp = getSession().getPostprocessor();
 
 			pAst = (WtParsedWikitextPage) lpp.postprocess(pAst, title.getTitle());
 
@@ -971,16 +1473,18 @@ public class WtEngineImpl
 		{
 			logger.error("Postprocessing failed!", e);
 
-			StringWriter w = new StringWriter();
-			e.printStackTrace(new PrintWriter(w));
-			log.add(nf().logUnhandledError(e, w.toString()));
+			if (log != null)
+				logUnhandledError(log, e);
 
 			throw new EngineException(title, "Postprocessing failed!", e);
 		}
 		finally
 		{
-			stopWatch.stop();
-			log.setTimeNeeded(stopWatch.getElapsedTime());
+			if (log != null)
+			{
+				stopWatch.stop();
+				log.setTimeNeeded(stopWatch.getElapsedTime());
+			}
 		}
 	}
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import org.sweble.wikitext.parser.ParserConfig;
+import org.sweble.wikitext.parser.WikitextEncodingValidator;
+import org.sweble.wikitext.parser.WikitextParser;
+import org.sweble.wikitext.parser.WikitextPostprocessor;
+import org.sweble.wikitext.parser.WikitextPreprocessor;
+
+/**
+ * The objects that make up the processing pipeline of an engine: validator,
+ * preprocessor, parser and postprocessor.
+ * 
+ * A session is confined to one thread. If session reuse is enabled (see
+ * WtEngineImpl.setReuseSessions()), the engine keeps one session per thread
+ * and all pages processed by that thread share the pipeline objects. Only the
+ * lexer of the validator and its buffers are reused across pages. The
+ * preprocessor and the parser still create a new Rats! parser, with new
+ * buffers and memo tables, for each page. Otherwise a new session is created
+ * for every call to the engine and shared by all passes of that call on the
+ * calling thread. In parallel expansion mode each task that runs on another
+ * thread creates its own session.
+ * 
+ * The pipeline stages are never used in a nested fashion: a stage always
+ * completes before the next page (e.g. a transcluded page) enters the same
+ * stage. Therefore a single instance of each stage suffices even though the
+ * expansion of a page is recursive.
+ */
+public final class WtEngineSession
+{
+	private final ParserConfig parserConfig;
+
+	private WikitextEncodingValidator validator;
+
+	private WikitextPreprocessor preprocessor;
+
+	private WikitextParser parser;
+
+	private WikitextPostprocessor postprocessor;
+
+	// =========================================================================
+
+	public WtEngineSession(ParserConfig parserConfig)
+	{
+		this.parserConfig = parserConfig;
+	}
+
+	// =========================================================================
+
+	public WikitextEncodingValidator getValidator()
+	{
+		if (validator == null)
+			validator = new WikitextEncodingValidator(true);
+		return validator;
+	}
+
+	public WikitextPreprocessor getPreprocessor()
+	{
+		if (preprocessor == null)
+			preprocessor = new WikitextPreprocessor(parserConfig);
+		return preprocessor;
+	}
+
+	public WikitextParser getParser()
+	{
+		if (parser == null)
+			parser = new WikitextParser(parserConfig);
+		return parser;
+	}
+
+	public WikitextPostprocessor getPostprocessor()
+	{
+		if (postprocessor == null)
+			postprocessor = new WikitextPostprocessor(parserConfig);
+		return postprocessor;
+	}
+}
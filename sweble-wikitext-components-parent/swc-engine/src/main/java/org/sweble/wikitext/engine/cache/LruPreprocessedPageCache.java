@@ -0,0 +1,257 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+
+/**
+ * A preprocessed page cache that evicts the least recently used pages once
+ * the accumulated length of the wikitext of all cached pages exceeds the
+ * configured maximum.
+ * 
+ * The cache is segmented (see WeightedLruCache). A page is only cached if its
+ * wikitext is not longer than the share of one segment, with the defaults
+ * that is 4M characters. Use a lower concurrency level to cache longer pages.
+ * 
+ * Pages are identified by their namespace, their normalized title and their
+ * revision (see TitleKey). The cache keeps an index from titles to cached
+ * revisions so that invalidate() does not have to scan the whole cache.
+ */
+public class LruPreprocessedPageCache
+		implements
+			PreprocessedPageCache
+{
+	/**
+	 * 64M characters of wikitext.
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+
+	// =========================================================================
+
+	private final WeightedLruCache<Key, WtPreproWikitextPage> cache;
+
+	/**
+	 * The cached keys of each page. Access must be synchronized on the map.
+	 * The lock of the map is always acquired before the locks of the
+	 * segments of the cache.
+	 */
+	private final Map<TitleKey, Set<Key>> index = new HashMap<TitleKey, Set<Key>>();
+
+	// =========================================================================
+
+	public LruPreprocessedPageCache()
+	{
+		this(DEFAULT_MAX_WEIGHT);
+	}
+
+	public LruPreprocessedPageCache(long maxWeight)
+	{
+		this(maxWeight, WeightedLruCache.DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @see WeightedLruCache#WeightedLruCache(long, int)
+	 */
+	public LruPreprocessedPageCache(long maxWeight, int concurrencyLevel)
+	{
+		this.cache = new WeightedLruCache<Key, WtPreproWikitextPage>(maxWeight, concurrencyLevel)
+		{
+			@Override
+			protected void evicted(Key key, WtPreproWikitextPage value)
+			{
+				// Only put() evicts and cache() holds the lock of the index
+				// while it calls put().
+				removeFromIndex(key);
+			}
+		};
+	}
+
+	// =========================================================================
+
+	@Override
+	public WtPreproWikitextPage retrieve(PageId pageId, boolean forInclusion)
+	{
+		return cache.get(new Key(pageId, forInclusion));
+	}
+
+	@Override
+	public void cache(
+			PageId pageId,
+			boolean forInclusion,
+			WtPreproWikitextPage ppAst,
+			long weight)
+	{
+		Key key = new Key(pageId, forInclusion);
+		synchronized (index)
+		{
+			cache.put(key, ppAst, weight);
+
+			// Pages that are too heavy are not cached
+			if (weight <= cache.getMaxEntryWeight())
+			{
+				Set<Key> keys = index.get(key.title);
+				if (keys == null)
+				{
+					keys = new HashSet<Key>(2);
+					index.put(key.title, keys);
+				}
+				keys.add(key);
+			}
+		}
+	}
+
+	@Override
+	public void invalidate(PageTitle title)
+	{
+		synchronized (index)
+		{
+			Set<Key> keys = index.remove(new TitleKey(title));
+			if (keys != null)
+			{
+				for (Key key : keys)
+					cache.remove(key);
+			}
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		synchronized (index)
+		{
+			cache.clear();
+			index.clear();
+		}
+	}
+
+	private void removeFromIndex(Key key)
+	{
+		synchronized (index)
+		{
+			Set<Key> keys = index.get(key.title);
+			if (keys != null && keys.remove(key) && keys.isEmpty())
+				index.remove(key.title);
+		}
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	public long getWeight()
+	{
+		return cache.getWeight();
+	}
+
+	/**
+	 * The length of the longest wikitext this cache admits.
+	 */
+	public long getMaxEntryWeight()
+	{
+		return cache.getMaxEntryWeight();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics()
+	{
+		cache.resetStatistics();
+	}
+
+	@Override
+	public String toString()
+	{
+		return cache.toString();
+	}
+
+	// =========================================================================
+
+	private static final class Key
+	{
+		private final TitleKey title;
+
+		private final long revision;
+
+		private final boolean forInclusion;
+
+		public Key(PageId pageId, boolean forInclusion)
+		{
+			this.title = new TitleKey(pageId.getTitle());
+			this.revision = pageId.getRevision();
+			this.forInclusion = forInclusion;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (forInclusion ? 1231 : 1237);
+			result = prime * result + (int) (revision ^ (revision >>> 32));
+			result = prime * result + title.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (forInclusion != other.forInclusion)
+				return false;
+			if (revision != other.revision)
+				return false;
+			if (!title.equals(other.title))
+				return false;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.config.Namespace;
+
+/**
+ * Remembers the results of PageTitle.make() so that link targets which occur
+ * over and over again (e.g. the links of a navigation box) are parsed only
+ * once. An entry is identified by the raw target string and the default
+ * namespace. Since PageTitle is immutable, the same instance is returned for
+ * all lookups of an entry.
+ * 
+ * A cache belongs to exactly one wiki configuration, which must not change
+ * while the cache is in use. WikiConfigImpl creates a cache when it is frozen
+ * (see WikiConfig.getTitleCache()). Targets which cannot be turned into a
+ * title are not cached.
+ * 
+ * The cache is thread-safe.
+ */
+public class PageTitleCache
+{
+	/**
+	 * The number of titles the cache remembers by default.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024;
+
+	// =========================================================================
+
+	private final WeightedLruCache<Key, PageTitle> cache;
+
+	// =========================================================================
+
+	public PageTitleCache()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public PageTitleCache(long maxSize)
+	{
+		this.cache = new WeightedLruCache<Key, PageTitle>(maxSize);
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The cached title or null if the target has not been cached.
+	 */
+	public PageTitle retrieve(String target, Namespace defaultNamespace)
+	{
+		return cache.get(new Key(target, defaultNamespace));
+	}
+
+	public void cache(String target, Namespace defaultNamespace, PageTitle title)
+	{
+		cache.put(new Key(target, defaultNamespace), title, 1);
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics()
+	{
+		cache.resetStatistics();
+	}
+
+	@Override
+	public String toString()
+	{
+		return cache.toString();
+	}
+
+	// =========================================================================
+
+	private static final class Key
+	{
+		private final String target;
+
+		private final Namespace defaultNamespace;
+
+		private final int hash;
+
+		public Key(String target, Namespace defaultNamespace)
+		{
+			if (target == null)
+				throw new NullPointerException();
+			this.target = target;
+			this.defaultNamespace = defaultNamespace;
+
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + target.hashCode();
+			result = prime * result + ((defaultNamespace == null) ? 0 : defaultNamespace.getId());
+			this.hash = result;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		/**
+		 * Namespaces are compared by id since they belong to the
+		 * configuration of the cache.
+		 */
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (hash != other.hash)
+				return false;
+			if (!target.equals(other.target))
+				return false;
+			if (defaultNamespace == null)
+			{
+				if (other.defaultNamespace != null)
+					return false;
+			}
+			else if (other.defaultNamespace == null
+					|| defaultNamespace.getId() != other.defaultNamespace.getId())
+				return false;
+			return true;
+		}
+	}
+}
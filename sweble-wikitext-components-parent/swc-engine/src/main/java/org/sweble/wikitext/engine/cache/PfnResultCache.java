@@ -0,0 +1,174 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import java.util.Arrays;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * Remembers the results of pure parser functions (see
+ * ParserFunctionBase.isPure()). A call is identified by the id of the parser
+ * function and the text of its expanded arguments.
+ * 
+ * The cached results are shared between all pages that call a parser function
+ * with the same arguments. They must not be modified. Since parser functions
+ * are identified by their id only, a cache must not be shared between engines
+ * with different configurations.
+ * 
+ * The cache is thread-safe.
+ */
+public class PfnResultCache
+{
+	/**
+	 * 4M characters of parser function ids and arguments.
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 4L * 1024 * 1024;
+
+	// =========================================================================
+
+	private final WeightedLruCache<Key, WtNode> cache;
+
+	// =========================================================================
+
+	public PfnResultCache()
+	{
+		this(DEFAULT_MAX_WEIGHT);
+	}
+
+	public PfnResultCache(long maxWeight)
+	{
+		this.cache = new WeightedLruCache<Key, WtNode>(maxWeight);
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The cached result or null if the call has not been cached.
+	 */
+	public WtNode retrieve(String pfnId, String[] args)
+	{
+		return cache.get(new Key(pfnId, args));
+	}
+
+	public void cache(String pfnId, String[] args, WtNode result)
+	{
+		Key key = new Key(pfnId, args);
+		cache.put(key, result, key.weight());
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	public long getWeight()
+	{
+		return cache.getWeight();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics()
+	{
+		cache.resetStatistics();
+	}
+
+	@Override
+	public String toString()
+	{
+		return cache.toString();
+	}
+
+	// =========================================================================
+
+	private static final class Key
+	{
+		private final String pfnId;
+
+		private final String[] args;
+
+		public Key(String pfnId, String[] args)
+		{
+			if (pfnId == null || args == null)
+				throw new NullPointerException();
+			this.pfnId = pfnId;
+			this.args = args;
+		}
+
+		public long weight()
+		{
+			long weight = pfnId.length();
+			for (String arg : args)
+				weight += arg.length() + 1;
+			return weight;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + Arrays.hashCode(args);
+			result = prime * result + pfnId.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (!Arrays.equals(args, other.args))
+				return false;
+			if (!pfnId.equals(other.pfnId))
+				return false;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+
+/**
+ * Caches the preprocessed ASTs of pages so that pages which are transcluded
+ * over and over again don't have to be validated and preprocessed each time.
+ * 
+ * Implementations have to be thread-safe. The engine never modifies the
+ * cached ASTs, expansion only copies the nodes along modified paths. A cached
+ * AST can therefore be used by multiple threads at the same time. A page is
+ * identified by its title and revision. Whoever stores pages without a
+ * meaningful revision (e.g. -1) is responsible for invalidating entries when
+ * the content of a page changes.
+ */
+public interface PreprocessedPageCache
+{
+	/**
+	 * @return The cached preprocessed AST or null if the page was not found
+	 *         in the cache.
+	 */
+	public WtPreproWikitextPage retrieve(PageId pageId, boolean forInclusion);
+
+	/**
+	 * @param weight
+	 *            The weight of the page which is used to decide when to evict
+	 *            entries. The engine passes the length of the page's
+	 *            wikitext.
+	 */
+	public void cache(
+			PageId pageId,
+			boolean forInclusion,
+			WtPreproWikitextPage ppAst,
+			long weight);
+
+	/**
+	 * Removes all revisions of the given page from the cache.
+	 */
+	public void invalidate(PageTitle title);
+
+	public void clear();
+}
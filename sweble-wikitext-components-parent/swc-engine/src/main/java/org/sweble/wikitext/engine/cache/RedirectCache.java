@@ -0,0 +1,263 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sweble.wikitext.engine.PageTitle;
+
+/**
+ * Remembers which pages are redirects and where they redirect to. With a
+ * redirect cache in place a transclusion of a page that is known to be a
+ * redirect (e.g. "Template:Cite" redirecting to "Template:Citation")
+ * transcludes the final target of the redirect chain directly. The redirect
+ * pages themselves are neither retrieved nor preprocessed again.
+ * 
+ * The cache stores single hops (a redirect page and the target of its
+ * redirect statement) and follows them when a title is resolved. Editing a
+ * page therefore only invalidates the hop that starts at the edited page,
+ * chains running through the page are resolved correctly afterwards. A page
+ * can be a redirect when it is rendered but not when it is transcluded (or
+ * vice versa), hops are recorded separately for both modes. Titles are
+ * compared by namespace and title only, fragments and interwiki links are
+ * ignored.
+ * 
+ * The cache does not track the revisions of pages. Whoever edits pages while
+ * the cache is in use has to call invalidate() for the edited pages (see
+ * WtEngineImpl.invalidate()).
+ * 
+ * The cache is thread-safe.
+ */
+public class RedirectCache
+{
+	/**
+	 * The number of redirect hops the cache remembers by default.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024;
+
+	/**
+	 * The maximum number of hops that is followed when resolving a title.
+	 */
+	public static final int MAX_HOPS = 16;
+
+	// =========================================================================
+
+	private final WeightedLruCache<Key, PageTitle> cache;
+
+	// =========================================================================
+
+	public RedirectCache()
+	{
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public RedirectCache(long maxSize)
+	{
+		this.cache = new WeightedLruCache<Key, PageTitle>(maxSize);
+	}
+
+	// =========================================================================
+
+	/**
+	 * Records that the page with the given title redirects to the given
+	 * target. Interwiki titles are not recorded.
+	 */
+	public void cache(PageTitle redirect, boolean forInclusion, PageTitle target)
+	{
+		if (redirect.isInterwiki() || target.isInterwiki())
+			return;
+
+		cache.put(new Key(redirect, forInclusion), target, 1);
+	}
+
+	/**
+	 * Follows the known redirects starting at the given title.
+	 * 
+	 * @return The final target of the redirect chain or null if the given
+	 *         title is not known to be a redirect. Null is also returned if
+	 *         the chain is cyclic or longer than MAX_HOPS.
+	 */
+	public PageTitle resolve(PageTitle title, boolean forInclusion)
+	{
+		return resolve(title, forInclusion, null);
+	}
+
+	/**
+	 * Follows the known redirects starting at the given title.
+	 * 
+	 * @param hops
+	 *            If not null, the given title and the titles of all redirect
+	 *            pages the chain runs through are added to this collection if
+	 *            the title is resolved.
+	 * @return The final target of the redirect chain or null if the given
+	 *         title is not known to be a redirect. Null is also returned if
+	 *         the chain is cyclic or longer than MAX_HOPS.
+	 */
+	public PageTitle resolve(
+			PageTitle title,
+			boolean forInclusion,
+			Collection<PageTitle> hops)
+	{
+		if (title.isInterwiki())
+			return null;
+
+		Key key = new Key(title, forInclusion);
+		PageTitle target = cache.get(key);
+		if (target == null)
+			return null;
+
+		List<PageTitle> chain = null;
+		if (hops != null)
+		{
+			chain = new ArrayList<PageTitle>();
+			chain.add(title);
+		}
+
+		Set<Key> visited = null;
+		for (int hop = 1; hop <= MAX_HOPS; ++hop)
+		{
+			Key next = new Key(target, forInclusion);
+			PageTitle nextTarget = cache.get(next);
+			if (nextTarget == null)
+			{
+				if (chain != null)
+					hops.addAll(chain);
+				return target;
+			}
+
+			if (chain != null)
+				chain.add(target);
+
+			if (visited == null)
+			{
+				visited = new HashSet<Key>();
+				visited.add(key);
+			}
+			if (!visited.add(next))
+				return null;
+
+			target = nextTarget;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Forgets where the given page redirects to.
+	 */
+	public void invalidate(PageTitle title)
+	{
+		cache.remove(new Key(title, false));
+		cache.remove(new Key(title, true));
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics()
+	{
+		cache.resetStatistics();
+	}
+
+	@Override
+	public String toString()
+	{
+		return cache.toString();
+	}
+
+	// =========================================================================
+
+	private static final class Key
+	{
+		private final int namespace;
+
+		private final String title;
+
+		private final boolean forInclusion;
+
+		public Key(PageTitle title, boolean forInclusion)
+		{
+			this.namespace = title.getNamespace().getId();
+			this.title = title.getTitle();
+			this.forInclusion = forInclusion;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (forInclusion ? 1231 : 1237);
+			result = prime * result + namespace;
+			result = prime * result + title.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (forInclusion != other.forInclusion)
+				return false;
+			if (namespace != other.namespace)
+				return false;
+			if (!title.equals(other.title))
+				return false;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import org.sweble.wikitext.engine.PageTitle;
+
+/**
+ * Identifies the page a title refers to. Unlike PageTitle.equals() only the
+ * interwiki prefix, the namespace id and the normalized title are compared.
+ * The fragment, an initial colon and the way the namespace was written are
+ * ignored, so "Template:Foo#bar", ":Template:Foo" and "Template:Foo" map to
+ * the same key.
+ */
+public final class TitleKey
+{
+	private final String interwiki;
+
+	private final int namespace;
+
+	private final String title;
+
+	private final int hash;
+
+	// =========================================================================
+
+	public TitleKey(PageTitle title)
+	{
+		this.interwiki = title.isInterwiki() ? title.getInterwikiLink().getPrefix() : null;
+		this.namespace = title.getNamespace().getId();
+		this.title = title.getTitle();
+
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((interwiki == null) ? 0 : interwiki.hashCode());
+		result = prime * result + namespace;
+		result = prime * result + this.title.hashCode();
+		this.hash = result;
+	}
+
+	// =========================================================================
+
+	@Override
+	public String toString()
+	{
+		return ((interwiki == null) ? "" : interwiki + ":") + namespace + ":" + title;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TitleKey other = (TitleKey) obj;
+		if (hash != other.hash)
+			return false;
+		if (namespace != other.namespace)
+			return false;
+		if (!title.equals(other.title))
+			return false;
+		if (interwiki == null)
+		{
+			if (other.interwiki != null)
+				return false;
+		}
+		else if (!interwiki.equals(other.interwiki))
+			return false;
+		return true;
+	}
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtStringNode;
+
+import de.fau.cs.osr.ptk.common.Warning;
+import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
+
+/**
+ * Remembers the expanded form of transclusions. A transclusion is identified
+ * by the transcluded page (see TitleKey), its revision and a fingerprint of
+ * its expanded arguments.
+ * 
+ * Only the results of transclusions whose expansion was not marked as
+ * volatile are memoized (see ExpansionFrame.setVolatile()). Each memoized
+ * transclusion remembers the titles of all pages its expansion retrieved
+ * (nested transclusions and redirect targets, existing or not) and the
+ * redirect pages that were skipped using the redirect cache. If a page
+ * changes while the memo is in use, invalidate() has to be called for the
+ * page. Pages and dependencies are compared by namespace and title only,
+ * fragments and initial colons are ignored.
+ * 
+ * The memo is thread-safe.
+ */
+public class TransclusionMemo
+{
+	/**
+	 * 32M characters of fingerprint and transcluded wikitext.
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+
+	// =========================================================================
+
+	private final WeightedLruCache<Key, MemoizedTransclusion> cache;
+
+	// =========================================================================
+
+	public TransclusionMemo()
+	{
+		this(DEFAULT_MAX_WEIGHT);
+	}
+
+	public TransclusionMemo(long maxWeight)
+	{
+		this.cache = new WeightedLruCache<Key, MemoizedTransclusion>(maxWeight);
+	}
+
+	// =========================================================================
+
+	/**
+	 * Computes a fingerprint of the given (expanded) template arguments. Two
+	 * argument maps have the same fingerprint if they contain the same names
+	 * mapped to structurally identical ASTs.
+	 */
+	public String fingerprint(Map<String, WtNodeList> args)
+	{
+		if (args.isEmpty())
+			return "";
+
+		List<String> names = new ArrayList<String>(args.keySet());
+		Collections.sort(names);
+
+		StringBuilder b = new StringBuilder();
+		for (String name : names)
+		{
+			appendString(b, name);
+			fingerprint(b, args.get(name));
+		}
+
+		return b.toString();
+	}
+
+	/**
+	 * @return The memoized expansion or null if the transclusion has not been
+	 *         memoized.
+	 */
+	public MemoizedTransclusion retrieve(PageId pageId, String fingerprint)
+	{
+		return cache.get(new Key(pageId, fingerprint));
+	}
+
+	/**
+	 * @param weight
+	 *            The weight of the entry. The engine passes the length of the
+	 *            transcluded wikitext plus the length of the fingerprint.
+	 */
+	public void memoize(
+			PageId pageId,
+			String fingerprint,
+			WtNodeList result,
+			List<Warning> warnings,
+			Set<TitleKey> dependencies,
+			long weight)
+	{
+		cache.put(
+				new Key(pageId, fingerprint),
+				new MemoizedTransclusion(result, warnings, dependencies),
+				weight);
+	}
+
+	/**
+	 * Removes all memoized transclusions of the given page and all memoized
+	 * transclusions that depend on the given page.
+	 */
+	public void invalidate(PageTitle title)
+	{
+		TitleKey titleKey = new TitleKey(title);
+		for (Map.Entry<Key, MemoizedTransclusion> e : cache.entries())
+		{
+			if (e.getKey().title.equals(titleKey)
+					|| e.getValue().getDependencies().contains(titleKey))
+				cache.remove(e.getKey());
+		}
+	}
+
+	public void clear()
+	{
+		cache.clear();
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	public long getWeight()
+	{
+		return cache.getWeight();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.getHitRate();
+	}
+
+	public void resetStatistics()
+	{
+		cache.resetStatistics();
+	}
+
+	@Override
+	public String toString()
+	{
+		return cache.toString();
+	}
+
+	// =========================================================================
+
+	private static void fingerprint(StringBuilder b, WtNode n)
+	{
+		b.append('<');
+		b.append(n.getNodeType());
+
+		if (n.getNodeType() == WtNode.NT_TEXT)
+		{
+			// Fast path for the most common node type
+			appendString(b, ((WtStringNode) n).getContent());
+		}
+		else
+		{
+			AstNodePropertyIterator i = n.propertyIterator();
+			while (i.next())
+			{
+				appendString(b, i.getName());
+				appendString(b, String.valueOf(i.getValue()));
+			}
+
+			if (n.hasAttributes())
+			{
+				for (Map.Entry<String, Object> e : n.getAttributes().entrySet())
+				{
+					appendString(b, e.getKey());
+					appendString(b, String.valueOf(e.getValue()));
+				}
+			}
+
+			for (WtNode c : n)
+				fingerprint(b, c);
+		}
+
+		b.append('>');
+	}
+
+	/**
+	 * Length-prefixed, so that no escaping is needed to keep the fingerprint
+	 * unambiguous.
+	 */
+	private static void appendString(StringBuilder b, String s)
+	{
+		b.append(s.length());
+		b.append(':');
+		b.append(s);
+	}
+
+	// =========================================================================
+
+	public static final class MemoizedTransclusion
+	{
+		private final WtNodeList result;
+
+		private final List<Warning> warnings;
+
+		private final Set<TitleKey> dependencies;
+
+		public MemoizedTransclusion(
+				WtNodeList result,
+				List<Warning> warnings,
+				Set<TitleKey> dependencies)
+		{
+			this.result = result;
+			this.warnings = warnings;
+			this.dependencies = dependencies;
+		}
+
+		/**
+		 * The expanded AST. Must not be modified, use a copy instead.
+		 */
+		public WtNodeList getResult()
+		{
+			return result;
+		}
+
+		public List<Warning> getWarnings()
+		{
+			return warnings;
+		}
+
+		/**
+		 * The titles of the pages the expansion depends on, not including the
+		 * transcluded page itself.
+		 */
+		public Set<TitleKey> getDependencies()
+		{
+			return dependencies;
+		}
+	}
+
+	// =========================================================================
+
+	private static final class Key
+	{
+		private final TitleKey title;
+
+		private final long revision;
+
+		private final String fingerprint;
+
+		public Key(PageId pageId, String fingerprint)
+		{
+			if (fingerprint == null)
+				throw new NullPointerException();
+			this.title = new TitleKey(pageId.getTitle());
+			this.revision = pageId.getRevision();
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + fingerprint.hashCode();
+			result = prime * result + (int) (revision ^ (revision >>> 32));
+			result = prime * result + title.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (!fingerprint.equals(other.fingerprint))
+				return false;
+			if (revision != other.revision)
+				return false;
+			if (!title.equals(other.title))
+				return false;
+			return true;
+		}
+	}
+}
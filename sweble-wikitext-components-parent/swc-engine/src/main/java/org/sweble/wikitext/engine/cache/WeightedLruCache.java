@@ -0,0 +1,380 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache with least-recently-used eviction which is bounded by
+ * the accumulated weight of its entries instead of the number of entries.
+ * 
+ * The cache is split into segments to reduce lock contention. Each segment
+ * is guarded by its own lock and evicts independently once its share of the
+ * maximum weight is exceeded. Consequently a single entry must not be heavier
+ * than the share of one segment (see getMaxEntryWeight()), heavier entries
+ * are not cached at all.
+ */
+public class WeightedLruCache<K, V>
+{
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	// =========================================================================
+
+	private final Segment<K, V>[] segments;
+
+	private final int segmentMask;
+
+	private final long maxWeight;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	// =========================================================================
+
+	/**
+	 * Creates a cache with DEFAULT_CONCURRENCY_LEVEL segments. Entries
+	 * heavier than maxWeight / DEFAULT_CONCURRENCY_LEVEL are not cached.
+	 */
+	public WeightedLruCache(long maxWeight)
+	{
+		this(maxWeight, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @param concurrencyLevel
+	 *            The number of segments, rounded up to the next power of two.
+	 *            Each segment holds an equal share of maxWeight, which is
+	 *            also the weight up to which a single entry is admitted. Pass
+	 *            1 to admit entries up to maxWeight at the cost of a single
+	 *            lock.
+	 */
+	@SuppressWarnings("unchecked")
+	public WeightedLruCache(long maxWeight, int concurrencyLevel)
+	{
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight must be positive");
+		if (concurrencyLevel <= 0)
+			throw new IllegalArgumentException("concurrencyLevel must be positive");
+
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel)
+			segmentCount <<= 1;
+
+		this.maxWeight = maxWeight;
+		this.segmentMask = segmentCount - 1;
+		this.segments = new Segment[segmentCount];
+
+		long segmentMaxWeight = Math.max(1, maxWeight / segmentCount);
+		for (int i = 0; i < segmentCount; ++i)
+			segments[i] = new Segment<K, V>(segmentMaxWeight);
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The cached value or null if no value is cached for the given
+	 *         key.
+	 */
+	public V get(K key)
+	{
+		V value = segmentFor(key).get(key);
+		if (value != null)
+		{
+			hitCount.incrementAndGet();
+		}
+		else
+		{
+			missCount.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Caches a value. If the weight of the value alone exceeds the share of a
+	 * segment of the maximum weight the value is not cached at all.
+	 */
+	public void put(K key, V value, long weight)
+	{
+		if (key == null || value == null)
+			throw new NullPointerException();
+		if (weight < 0)
+			throw new IllegalArgumentException("weight must not be negative");
+
+		int evicted = segmentFor(key).put(this, key, value, weight);
+		if (evicted > 0)
+			evictionCount.addAndGet(evicted);
+	}
+
+	public V remove(K key)
+	{
+		return segmentFor(key).remove(key);
+	}
+
+	public void clear()
+	{
+		for (Segment<K, V> segment : segments)
+			segment.clear();
+	}
+
+	/**
+	 * Returns a snapshot of the keys which are currently cached.
+	 */
+	public List<K> keys()
+	{
+		List<K> keys = new ArrayList<K>();
+		for (Segment<K, V> segment : segments)
+			segment.addKeysTo(keys);
+		return keys;
+	}
+
+	/**
+	 * Returns a snapshot of the entries which are currently cached. Unlike
+	 * get() this does not count as an access of the entries.
+	 */
+	public List<Map.Entry<K, V>> entries()
+	{
+		List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>();
+		for (Segment<K, V> segment : segments)
+			segment.addEntriesTo(entries);
+		return entries;
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		int size = 0;
+		for (Segment<K, V> segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	public long getWeight()
+	{
+		long weight = 0;
+		for (Segment<K, V> segment : segments)
+			weight += segment.getWeight();
+		return weight;
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * The weight of the heaviest entry this cache admits.
+	 */
+	public long getMaxEntryWeight()
+	{
+		return segments[0].maxWeight;
+	}
+
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	public double getHitRate()
+	{
+		long hits = hitCount.get();
+		long requests = hits + missCount.get();
+		return (requests == 0) ? 0. : ((double) hits / requests);
+	}
+
+	public void resetStatistics()
+	{
+		hitCount.set(0);
+		missCount.set(0);
+		evictionCount.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%s(size=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d)",
+				getClass().getSimpleName(),
+				size(),
+				getWeight(),
+				maxWeight,
+				getHitCount(),
+				getMissCount(),
+				getEvictionCount());
+	}
+
+	// =========================================================================
+
+	/**
+	 * Called for each entry that put() evicts, including an entry whose key
+	 * was put again with a value that is too heavy to be cached. Entries
+	 * removed by remove() or clear() are not reported. The lock of the
+	 * entry's segment is held while this method is called. Does nothing by
+	 * default.
+	 */
+	protected void evicted(K key, V value)
+	{
+	}
+
+	// =========================================================================
+
+	private Segment<K, V> segmentFor(K key)
+	{
+		int h = key.hashCode();
+		// Spread bits so that keys which only differ in their upper bits don't
+		// end up in the same segment.
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & segmentMask];
+	}
+
+	// =========================================================================
+
+	private static final class Entry<V>
+	{
+		final V value;
+
+		final long weight;
+
+		public Entry(V value, long weight)
+		{
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private static final class Segment<K, V>
+	{
+		private final LinkedHashMap<K, Entry<V>> map =
+				new LinkedHashMap<K, Entry<V>>(16, 0.75f, true /* access order */);
+
+		private final long maxWeight;
+
+		private long weight;
+
+		public Segment(long maxWeight)
+		{
+			this.maxWeight = maxWeight;
+		}
+
+		public synchronized V get(K key)
+		{
+			Entry<V> entry = map.get(key);
+			return (entry != null) ? entry.value : null;
+		}
+
+		/**
+		 * @return The number of evicted entries.
+		 */
+		public synchronized int put(
+				WeightedLruCache<K, V> owner,
+				K key,
+				V value,
+				long weight)
+		{
+			if (weight > maxWeight)
+			{
+				// Too heavy to be cached, but don't keep a stale value around.
+				Entry<V> old = map.remove(key);
+				if (old != null)
+				{
+					this.weight -= old.weight;
+					owner.evicted(key, old.value);
+				}
+				return 0;
+			}
+
+			Entry<V> old = map.put(key, new Entry<V>(value, weight));
+			if (old != null)
+				this.weight -= old.weight;
+			this.weight += weight;
+
+			int evicted = 0;
+			Iterator<Map.Entry<K, Entry<V>>> i = map.entrySet().iterator();
+			while (this.weight > maxWeight && i.hasNext())
+			{
+				Map.Entry<K, Entry<V>> eldest = i.next();
+				this.weight -= eldest.getValue().weight;
+				i.remove();
+				++evicted;
+				owner.evicted(eldest.getKey(), eldest.getValue().value);
+			}
+
+			return evicted;
+		}
+
+		public synchronized V remove(K key)
+		{
+			Entry<V> old = map.remove(key);
+			if (old == null)
+				return null;
+			this.weight -= old.weight;
+			return old.value;
+		}
+
+		public synchronized void clear()
+		{
+			map.clear();
+			weight = 0;
+		}
+
+		public synchronized void addKeysTo(List<K> keys)
+		{
+			keys.addAll(map.keySet());
+		}
+
+		public synchronized void addEntriesTo(List<Map.Entry<K, V>> entries)
+		{
+			for (Map.Entry<K, Entry<V>> e : map.entrySet())
+			{
+				entries.add(new AbstractMap.SimpleImmutableEntry<K, V>(
+						e.getKey(),
+						e.getValue().value));
+			}
+		}
+
+		public synchronized int size()
+		{
+			return map.size();
+		}
+
+		public synchronized long getWeight()
+		{
+			return weight;
+		}
+	}
+}
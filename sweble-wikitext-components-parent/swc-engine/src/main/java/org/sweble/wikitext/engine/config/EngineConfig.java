@@ -22,4 +22,63 @@ public interface EngineConfig
 
 	public abstract boolean isTrimTransparentBeforeParsing();
 
+	// ==[ Expansion budgets ]==================================================
+
+	/*
+	 * All budgets are off in the default configurations and in
+	 * implementations which do not override the getters. The limits MediaWiki
+	 * uses do not translate one to one: MediaWiki limits the post-expand
+	 * include size to 2097152 bytes ($wgMaxArticleSize * 1024), counted in
+	 * bytes of UTF-8 instead of characters, and its expansion depth limit of
+	 * 40 ($wgMaxPPExpandDepth) counts nested preprocessor nodes, not only
+	 * transclusions.
+	 */
+
+	/**
+	 * The maximum nesting depth of transclusions. Only transclusions count,
+	 * parser functions and other nodes do not add to the depth. A value less
+	 * than 1 means no limit.
+	 */
+	public default int getMaxExpansionDepth()
+	{
+		return 0;
+	}
+
+	/**
+	 * The maximum number of transclusions per expansion process. A value less
+	 * than 1 means no limit.
+	 */
+	public default int getMaxTransclusions()
+	{
+		return 0;
+	}
+
+	/**
+	 * The maximum number of parser function calls per expansion process. A
+	 * value less than 1 means no limit.
+	 */
+	public default int getMaxParserFunctionCalls()
+	{
+		return 0;
+	}
+
+	/**
+	 * The maximum number of characters that transclusions may produce in
+	 * total. Nested transclusions are counted at every level. A value less
+	 * than 1 means no limit.
+	 */
+	public default long getMaxPostExpandIncludeSize()
+	{
+		return 0;
+	}
+
+	/**
+	 * The maximum time in milliseconds an expansion process may take. A value
+	 * less than 1 means no limit.
+	 */
+	public default long getMaxExpansionTime()
+	{
+		return 0;
+	}
+
 }
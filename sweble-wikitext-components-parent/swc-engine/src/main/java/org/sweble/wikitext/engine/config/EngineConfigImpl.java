@@ -27,7 +27,12 @@ import javax.xml.bind.annotation.XmlType;
 		name = "EngineConfig",
 		namespace = "org.sweble.wikitext.engine")
 @XmlType(propOrder = {
-		"trimTransparentBeforeParsing" })
+		"trimTransparentBeforeParsing",
+		"maxExpansionDepth",
+		"maxTransclusions",
+		"maxParserFunctionCalls",
+		"maxPostExpandIncludeSize",
+		"maxExpansionTime" })
 @XmlAccessorType(XmlAccessType.NONE)
 public class EngineConfigImpl
 		implements
@@ -36,6 +41,21 @@ public class EngineConfigImpl
 	@XmlElement()
 	private boolean trimTransparentBeforeParsing;
 
+	@XmlElement()
+	private int maxExpansionDepth;
+
+	@XmlElement()
+	private int maxTransclusions;
+
+	@XmlElement()
+	private int maxParserFunctionCalls;
+
+	@XmlElement()
+	private long maxPostExpandIncludeSize;
+
+	@XmlElement()
+	private long maxExpansionTime;
+
 	// =========================================================================
 
 	@Override
@@ -50,6 +70,61 @@ public class EngineConfigImpl
 		this.trimTransparentBeforeParsing = trimTransparentBeforeParsing;
 	}
 
+	@Override
+	public int getMaxExpansionDepth()
+	{
+		return maxExpansionDepth;
+	}
+
+	public void setMaxExpansionDepth(int maxExpansionDepth)
+	{
+		this.maxExpansionDepth = maxExpansionDepth;
+	}
+
+	@Override
+	public int getMaxTransclusions()
+	{
+		return maxTransclusions;
+	}
+
+	public void setMaxTransclusions(int maxTransclusions)
+	{
+		this.maxTransclusions = maxTransclusions;
+	}
+
+	@Override
+	public int getMaxParserFunctionCalls()
+	{
+		return maxParserFunctionCalls;
+	}
+
+	public void setMaxParserFunctionCalls(int maxParserFunctionCalls)
+	{
+		this.maxParserFunctionCalls = maxParserFunctionCalls;
+	}
+
+	@Override
+	public long getMaxPostExpandIncludeSize()
+	{
+		return maxPostExpandIncludeSize;
+	}
+
+	public void setMaxPostExpandIncludeSize(long maxPostExpandIncludeSize)
+	{
+		this.maxPostExpandIncludeSize = maxPostExpandIncludeSize;
+	}
+
+	@Override
+	public long getMaxExpansionTime()
+	{
+		return maxExpansionTime;
+	}
+
+	public void setMaxExpansionTime(long maxExpansionTime)
+	{
+		this.maxExpansionTime = maxExpansionTime;
+	}
+
 	// =========================================================================
 
 	@Override
@@ -57,6 +132,11 @@ public class EngineConfigImpl
 	{
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + maxExpansionDepth;
+		result = prime * result + (int) (maxExpansionTime ^ (maxExpansionTime >>> 32));
+		result = prime * result + maxParserFunctionCalls;
+		result = prime * result + (int) (maxPostExpandIncludeSize ^ (maxPostExpandIncludeSize >>> 32));
+		result = prime * result + maxTransclusions;
 		result = prime * result + (trimTransparentBeforeParsing ? 1231 : 1237);
 		return result;
 	}
@@ -71,6 +151,16 @@ public class EngineConfigImpl
 		if (getClass() != obj.getClass())
 			return false;
 		EngineConfigImpl other = (EngineConfigImpl) obj;
+		if (maxExpansionDepth != other.maxExpansionDepth)
+			return false;
+		if (maxExpansionTime != other.maxExpansionTime)
+			return false;
+		if (maxParserFunctionCalls != other.maxParserFunctionCalls)
+			return false;
+		if (maxPostExpandIncludeSize != other.maxPostExpandIncludeSize)
+			return false;
+		if (maxTransclusions != other.maxTransclusions)
+			return false;
 		if (trimTransparentBeforeParsing != other.trimTransparentBeforeParsing)
 			return false;
 		return true;
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.config;
+
+import java.util.Map;
+
+/**
+ * An immutable open addressing hash table which maps names to values. If the
+ * table is case-insensitive, keys and queried names are case-folded character
+ * by character while hashing and comparing, so that lookups never allocate.
+ * 
+ * Once constructed, a table can be shared by any number of threads without
+ * synchronization.
+ */
+final class NameTable<V>
+{
+	private final boolean caseInsensitive;
+
+	private final String[] keys;
+
+	private final int[] hashes;
+
+	private final Object[] values;
+
+	private final int mask;
+
+	private final int size;
+
+	// =========================================================================
+
+	public NameTable(Map<String, ? extends V> map, boolean caseInsensitive)
+	{
+		this.caseInsensitive = caseInsensitive;
+
+		// Keep the load factor at or below 0.5 so that probe sequences stay
+		// short.
+		int capacity = 4;
+		while (capacity < map.size() * 2)
+			capacity <<= 1;
+
+		this.keys = new String[capacity];
+		this.hashes = new int[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+
+		int size = 0;
+		for (Map.Entry<String, ? extends V> e : map.entrySet())
+		{
+			String key = e.getKey();
+			int hash = hash(key);
+			int i = hash & mask;
+			while (keys[i] != null)
+			{
+				// Names which only differ in case collapse into one entry
+				// in a case-insensitive table, the last one wins.
+				if (hashes[i] == hash && matches(keys[i], key))
+					break;
+				i = (i + 1) & mask;
+			}
+			if (keys[i] == null)
+				++size;
+			keys[i] = key;
+			hashes[i] = hash;
+			values[i] = e.getValue();
+		}
+		this.size = size;
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(CharSequence name)
+	{
+		int hash = hash(name);
+		int i = hash & mask;
+		String key;
+		while ((key = keys[i]) != null)
+		{
+			if (hashes[i] == hash && matches(key, name))
+				return (V) values[i];
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	// =========================================================================
+
+	private int hash(CharSequence s)
+	{
+		int h = 0;
+		int len = s.length();
+		for (int i = 0; i < len; ++i)
+			h = 31 * h + fold(s.charAt(i));
+
+		// Spread the high bits since the index is taken from the low bits
+		return h ^ (h >>> 16);
+	}
+
+	private boolean matches(String key, CharSequence name)
+	{
+		int len = key.length();
+		if (len != name.length())
+			return false;
+		for (int i = 0; i < len; ++i)
+		{
+			char a = key.charAt(i);
+			char b = name.charAt(i);
+			if (a != b && (!caseInsensitive || fold(a) != fold(b)))
+				return false;
+		}
+		return true;
+	}
+
+	private char fold(char ch)
+	{
+		if (!caseInsensitive)
+			return ch;
+		if (ch < 128)
+			return (ch >= 'A' && ch <= 'Z') ? (char) (ch + ('a' - 'A')) : ch;
+		return Character.toLowerCase(ch);
+	}
+}
@@ -17,7 +17,11 @@
 
 package org.sweble.wikitext.engine.config;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -69,7 +73,7 @@ public class ParserConfigImpl
 
 	private transient WikiConfigImpl wikiConfig;
 
-	private final Map<String, String> xmlEntities = new HashMap<String, String>();
+	private final Map<String, String> xmlEntities;
 
 	@XmlElement
 	private boolean convertIllegalCodePoints;
@@ -99,7 +103,7 @@ public class ParserConfigImpl
 	@XmlElement
 	private boolean fosterParentingForTransclusions = true /*be backward compatible*/;
 
-	private final Set<String> allowedUrlProtocols = new HashSet<String>();
+	private final Set<String> allowedUrlProtocols;
 
 	@XmlElement
 	private String internalLinkPrefixPattern;
@@ -107,9 +111,9 @@ public class ParserConfigImpl
 	@XmlElement
 	private String internalLinkPostfixPattern;
 
-	private final Map<String, String> lctFlagMap = new HashMap<String, String>();
+	private final Map<String, String> lctFlagMap;
 
-	private final Map<String, String> lctVariantMap = new HashMap<String, String>();
+	private final Map<String, String> lctVariantMap;
 
 	// =========================================================================
 
@@ -119,6 +123,10 @@ public class ParserConfigImpl
 	 */
 	protected ParserConfigImpl()
 	{
+		this.xmlEntities = new HashMap<String, String>();
+		this.allowedUrlProtocols = new HashSet<String>();
+		this.lctFlagMap = new HashMap<String, String>();
+		this.lctVariantMap = new HashMap<String, String>();
 	}
 
 	public ParserConfigImpl(WikiConfigImpl wikiConfig)
@@ -127,6 +135,34 @@ public class ParserConfigImpl
 		setWikiConfig(wikiConfig);
 	}
 
+	/**
+	 * Creates the parser configuration of an overlay (see
+	 * WikiConfigImpl(WikiConfigImpl)). The XML entities, URL protocols and
+	 * language conversion mappings of the base are shared and cannot be
+	 * modified through the overlay. All other settings are copied.
+	 */
+	ParserConfigImpl(WikiConfigImpl wikiConfig, ParserConfigImpl base)
+	{
+		this.xmlEntities = Collections.unmodifiableMap(base.xmlEntities);
+		this.allowedUrlProtocols = Collections.unmodifiableSet(base.allowedUrlProtocols);
+		this.lctFlagMap = Collections.unmodifiableMap(base.lctFlagMap);
+		this.lctVariantMap = Collections.unmodifiableMap(base.lctVariantMap);
+
+		this.convertIllegalCodePoints = base.convertIllegalCodePoints;
+		this.warningsEnabled = base.warningsEnabled;
+		this.minSeverity = base.minSeverity;
+		this.autoCorrect = base.autoCorrect;
+		this.gatherRtData = base.gatherRtData;
+		this.langConvTagsEnabled = base.langConvTagsEnabled;
+		this.nonStandardElementBehavior = base.nonStandardElementBehavior;
+		this.fosterParenting = base.fosterParenting;
+		this.fosterParentingForTransclusions = base.fosterParentingForTransclusions;
+		this.internalLinkPrefixPattern = base.internalLinkPrefixPattern;
+		this.internalLinkPostfixPattern = base.internalLinkPostfixPattern;
+
+		setWikiConfig(wikiConfig);
+	}
+
 	/**
 	 * Fix ParserConfigImpl after de-serialization.
 	 */
@@ -663,6 +699,51 @@ public class ParserConfigImpl
 
 	// =========================================================================
 
+	void writeSnapshot(DataOutput out) throws IOException
+	{
+		out.writeBoolean(convertIllegalCodePoints);
+		out.writeBoolean(warningsEnabled);
+		WikiConfigSnapshot.writeString(out, (minSeverity != null) ? minSeverity.name() : null);
+		out.writeBoolean(autoCorrect);
+		out.writeBoolean(gatherRtData);
+		out.writeBoolean(langConvTagsEnabled);
+		WikiConfigSnapshot.writeString(out, (nonStandardElementBehavior != null) ? nonStandardElementBehavior.name() : null);
+		out.writeBoolean(fosterParenting);
+		out.writeBoolean(fosterParentingForTransclusions);
+		WikiConfigSnapshot.writeString(out, internalLinkPrefixPattern);
+		WikiConfigSnapshot.writeString(out, internalLinkPostfixPattern);
+		WikiConfigSnapshot.writeStrings(out, allowedUrlProtocols);
+		WikiConfigSnapshot.writeStringMap(out, xmlEntities);
+		WikiConfigSnapshot.writeStringMap(out, lctFlagMap);
+		WikiConfigSnapshot.writeStringMap(out, lctVariantMap);
+	}
+
+	void readSnapshot(DataInput in) throws IOException
+	{
+		convertIllegalCodePoints = in.readBoolean();
+		warningsEnabled = in.readBoolean();
+		String severity = WikiConfigSnapshot.readString(in);
+		minSeverity = (severity != null) ? WarningSeverity.valueOf(severity) : null;
+		autoCorrect = in.readBoolean();
+		gatherRtData = in.readBoolean();
+		langConvTagsEnabled = in.readBoolean();
+		String behavior = WikiConfigSnapshot.readString(in);
+		nonStandardElementBehavior = (behavior != null) ? NonStandardElementBehavior.valueOf(behavior) : null;
+		fosterParenting = in.readBoolean();
+		fosterParentingForTransclusions = in.readBoolean();
+		internalLinkPrefixPattern = WikiConfigSnapshot.readString(in);
+		internalLinkPostfixPattern = WikiConfigSnapshot.readString(in);
+		allowedUrlProtocols.addAll(WikiConfigSnapshot.readStrings(in));
+		for (int i = in.readInt(); i > 0; --i)
+			xmlEntities.put(in.readUTF(), WikiConfigSnapshot.readString(in));
+		for (int i = in.readInt(); i > 0; --i)
+			lctFlagMap.put(in.readUTF(), WikiConfigSnapshot.readString(in));
+		for (int i = in.readInt(); i > 0; --i)
+			lctVariantMap.put(in.readUTF(), WikiConfigSnapshot.readString(in));
+	}
+
+	// =========================================================================
+
 	@Override
 	public int hashCode()
 	{
@@ -22,6 +22,7 @@ import java.util.TimeZone;
 
 import org.sweble.wikitext.engine.ParserFunctionBase;
 import org.sweble.wikitext.engine.TagExtensionBase;
+import org.sweble.wikitext.engine.cache.PageTitleCache;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
 import org.sweble.wikitext.engine.utils.EngineAstTextUtils;
 import org.sweble.wikitext.parser.ParserConfig;
@@ -131,4 +132,17 @@ public interface WikiConfig
 	public WikiRuntimeInfo getRuntimeInfo();
 
 	public TimeZone getTimezone();
+
+	// ==[ Caches ]=============================================================
+
+	/**
+	 * Returns the cache that PageTitle.make() consults for this configuration
+	 * or null if titles are not cached. Only a configuration that can no
+	 * longer be modified may return a cache. Titles are not cached by
+	 * default.
+	 */
+	public default PageTitleCache getTitleCache()
+	{
+		return null;
+	}
 }
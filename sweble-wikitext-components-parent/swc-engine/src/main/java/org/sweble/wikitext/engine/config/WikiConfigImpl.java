@@ -17,7 +17,14 @@
 
 package org.sweble.wikitext.engine.config;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
@@ -50,6 +57,7 @@ import javax.xml.transform.Source;
 
 import org.sweble.wikitext.engine.ParserFunctionBase;
 import org.sweble.wikitext.engine.TagExtensionBase;
+import org.sweble.wikitext.engine.cache.PageTitleCache;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactoryImpl;
 import org.sweble.wikitext.engine.utils.EngineAstTextUtils;
 import org.sweble.wikitext.engine.utils.EngineAstTextUtilsImpl;
@@ -77,6 +85,9 @@ public class WikiConfigImpl
 			WikiConfig
 {
 
+	/** Null unless this configuration is an overlay. */
+	private final WikiConfigImpl base;
+
 	@XmlElement()
 	private final ParserConfigImpl parserConfig;
 
@@ -116,8 +127,6 @@ public class WikiConfigImpl
 
 	private transient final Map<String, ParserFunctionBase> parserFunctions = new HashMap<String, ParserFunctionBase>();
 
-	private transient final Map<I18nAliasImpl, ParserFunctionBase> aliasToPfnMap = new HashMap<I18nAliasImpl, ParserFunctionBase>();
-
 	// -- Tag Extensions --
 
 	private final Map<String, TagExtensionGroup> tagExtGroups = new HashMap<String, TagExtensionGroup>();
@@ -150,10 +159,24 @@ public class WikiConfigImpl
 
 	private final Map<String, TagExtensionBase> tagExtensionLookup = new HashMap<String, TagExtensionBase>();
 
+	// -- Compiled lookup tables --
+
+	/* Both fields are only set once the configuration has been frozen. They
+	 * are volatile so that a configuration frozen on one thread is safely
+	 * published to the threads using it (e.g. in parallel expansion mode).
+	 * lookupTables is written last: a thread which sees the tables also sees
+	 * the title cache and all settings made before freeze().
+	 */
+
+	private transient volatile LookupTables lookupTables;
+
+	private transient volatile PageTitleCache titleCache;
+
 	// =========================================================================
 
 	public WikiConfigImpl()
 	{
+		this.base = null;
 		this.parserConfig = new ParserConfigImpl(this);
 		this.nodeFactory = new EngineNodeFactoryImpl(this.parserConfig);
 		this.textUtils = new EngineAstTextUtilsImpl(this.parserConfig);
@@ -161,6 +184,99 @@ public class WikiConfigImpl
 		this.engineConfig = new EngineConfigImpl();
 	}
 
+	/**
+	 * Creates an overlay on top of the given base configuration. This is
+	 * meant for processes which render pages of many wikis that only differ
+	 * in their namespaces, aliases, interwikis and general information.
+	 * 
+	 * The overlay shares the XML entities, URL protocols and language
+	 * conversion mappings with the base. Namespaces, interwikis and aliases
+	 * which are added to the overlay take precedence over those of the base,
+	 * everything else is looked up in the base. A namespace of the overlay
+	 * replaces the namespace of the base with the same id. The overlay starts
+	 * out with the general information, the engine configuration and the
+	 * parser settings of the base and with its own instances of the parser
+	 * functions and tag extensions of the base.
+	 * 
+	 * The base must be frozen and is never modified by the overlay, so that
+	 * any number of overlays can share one base. Overlays cannot be saved.
+	 */
+	public WikiConfigImpl(WikiConfigImpl base)
+	{
+		if (!base.isFrozen())
+			throw new IllegalArgumentException("The base configuration must be frozen");
+
+		this.base = base;
+		this.parserConfig = new ParserConfigImpl(this, base.parserConfig);
+		this.nodeFactory = new EngineNodeFactoryImpl(this.parserConfig);
+		this.textUtils = new EngineAstTextUtilsImpl(this.parserConfig);
+		this.runtimeInfo = new WikiRuntimeInfoImpl(this);
+
+		this.engineConfig = new EngineConfigImpl();
+		EngineConfigImpl baseEngineConfig = base.getEngineConfig();
+		engineConfig.setTrimTransparentBeforeParsing(baseEngineConfig.isTrimTransparentBeforeParsing());
+		engineConfig.setMaxExpansionDepth(baseEngineConfig.getMaxExpansionDepth());
+		engineConfig.setMaxTransclusions(baseEngineConfig.getMaxTransclusions());
+		engineConfig.setMaxParserFunctionCalls(baseEngineConfig.getMaxParserFunctionCalls());
+		engineConfig.setMaxPostExpandIncludeSize(baseEngineConfig.getMaxPostExpandIncludeSize());
+		engineConfig.setMaxExpansionTime(baseEngineConfig.getMaxExpansionTime());
+
+		this.siteName = base.siteName;
+		this.wikiUrl = base.wikiUrl;
+		this.contentLang = base.contentLang;
+		this.iwPrefix = base.iwPrefix;
+		this.tagExtensionNamesCaseSensitive = base.tagExtensionNamesCaseSensitive;
+
+		// Parser functions and tag extensions know their configuration and
+		// can therefore not be shared.
+		for (ParserFunctionGroup baseGroup : base.pfnGroups.values())
+		{
+			ParserFunctionGroup group = new ParserFunctionGroup(baseGroup.getName());
+			for (ParserFunctionBase pfn : baseGroup.getParserFunctions())
+			{
+				ParserFunctionBase copy = newInstance(pfn.getClass());
+				copy.setWikiConfig(this);
+				group.addParserFunction(copy);
+			}
+			addParserFunctionGroup(group);
+		}
+
+		for (TagExtensionGroup baseGroup : base.tagExtGroups.values())
+		{
+			TagExtensionGroup group = new TagExtensionGroup(baseGroup.getName());
+			for (TagExtensionBase tagExt : baseGroup.getTagExtensions())
+			{
+				TagExtensionBase copy = newInstance(tagExt.getClass());
+				copy.setWikiConfig(this);
+				group.addTagExtension(copy);
+			}
+			addTagExtensionGroup(group);
+		}
+	}
+
+	private static <T> T newInstance(Class<T> clazz)
+	{
+		try
+		{
+			return clazz.newInstance();
+		}
+		catch (Exception e)
+		{
+			throw new WikiConfigurationException("Cannot instantiate `" + clazz.getName() + "'", e);
+		}
+	}
+
+	// ==[ Layering ]===========================================================
+
+	/**
+	 * Returns the base configuration if this configuration is an overlay,
+	 * null otherwise.
+	 */
+	public WikiConfigImpl getBase()
+	{
+		return base;
+	}
+
 	// ==[ Parser Configuration ]===============================================
 
 	@Override
@@ -189,6 +305,55 @@ public class WikiConfigImpl
 		return textUtils;
 	}
 
+	// ==[ Freezing ]===========================================================
+
+	/**
+	 * Freezes the configuration. Afterwards namespaces, interwikis, aliases,
+	 * parser functions and tag extensions can no longer be added and all
+	 * lookups by name are served from immutable tables which were compiled
+	 * when the configuration was frozen. The tables don't allocate during a
+	 * lookup and can be used by any number of threads without
+	 * synchronization.
+	 * 
+	 * Objects retrieved from the configuration (e.g. the alias sets of
+	 * I18nAliasImpl) must not be modified after freezing. Freezing an already
+	 * frozen configuration has no effect.
+	 * 
+	 * Freezing also creates the title cache of the configuration (see
+	 * getTitleCache()).
+	 */
+	public synchronized void freeze()
+	{
+		if (lookupTables == null)
+		{
+			titleCache = new PageTitleCache();
+			lookupTables = new LookupTables(this);
+		}
+	}
+
+	public boolean isFrozen()
+	{
+		return lookupTables != null;
+	}
+
+	private void checkNotFrozen()
+	{
+		if (lookupTables != null)
+			throw new IllegalStateException("The configuration is frozen");
+	}
+
+	// ==[ Caches ]=============================================================
+
+	/**
+	 * Returns the title cache of this configuration once it has been frozen,
+	 * null otherwise.
+	 */
+	@Override
+	public PageTitleCache getTitleCache()
+	{
+		return titleCache;
+	}
+
 	// ==[ Switches ]===========================================================
 	
 	public boolean isTagExtensionNamesCaseSensitive()
@@ -198,6 +363,8 @@ public class WikiConfigImpl
 
 	public void setTagExtensionNamesCaseSensitive(boolean tagExtensionNamesCaseSensitive)
 	{
+		checkNotFrozen();
+
 		if (this.tagExtensionNamesCaseSensitive == tagExtensionNamesCaseSensitive)
 			return;
 		this.tagExtensionNamesCaseSensitive = tagExtensionNamesCaseSensitive;
@@ -216,6 +383,8 @@ public class WikiConfigImpl
 
 	public void addNamespace(NamespaceImpl ns)
 	{
+		checkNotFrozen();
+
 		NamespaceImpl old = namespaceById.get(ns.getId());
 
 		if (old == ns)
@@ -247,7 +416,9 @@ public class WikiConfigImpl
 
 	public void setDefaultNamespace(NamespaceImpl defaultNamespace)
 	{
-		if (this.namespaceById.get(defaultNamespace.getId()) != defaultNamespace)
+		checkNotFrozen();
+
+		if (getNamespace(defaultNamespace.getId()) != defaultNamespace)
 			throw new IllegalArgumentException("Given namespace unknown in this configuration");
 
 		this.defaultNamespace = defaultNamespace;
@@ -255,7 +426,9 @@ public class WikiConfigImpl
 
 	public void setTemplateNamespace(NamespaceImpl templateNamespace)
 	{
-		if (this.namespaceById.get(templateNamespace.getId()) != templateNamespace)
+		checkNotFrozen();
+
+		if (getNamespace(templateNamespace.getId()) != templateNamespace)
 			throw new IllegalArgumentException("Given namespace unknown in this configuration");
 
 		this.templateNamespace = templateNamespace;
@@ -264,31 +437,63 @@ public class WikiConfigImpl
 	@Override
 	public NamespaceImpl getNamespace(String name)
 	{
-		return namespaceByName.get(name.toLowerCase());
+		NamespaceImpl ns;
+		LookupTables tables = lookupTables;
+		if (tables != null)
+			ns = tables.namespaces.get(name);
+		else
+			ns = namespaceByName.get(name.toLowerCase());
+
+		if (ns == null && base != null)
+		{
+			ns = base.getNamespace(name);
+			if (ns != null)
+			{
+				// The overlay might have replaced the namespace
+				NamespaceImpl own = namespaceById.get(ns.getId());
+				if (own != null)
+					ns = own;
+			}
+		}
+		return ns;
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
 	public Collection<Namespace> getNamespaces()
 	{
-		return (Collection) Collections.unmodifiableCollection(namespaceById.values());
+		if (base == null)
+			return (Collection) Collections.unmodifiableCollection(namespaceById.values());
+
+		Map<Integer, Namespace> merged = new HashMap<Integer, Namespace>();
+		for (Namespace ns : base.getNamespaces())
+			merged.put(ns.getId(), ns);
+		merged.putAll(namespaceById);
+		return Collections.unmodifiableCollection(merged.values());
 	}
 
 	@Override
 	public NamespaceImpl getNamespace(int id)
 	{
-		return namespaceById.get(id);
+		NamespaceImpl ns = namespaceById.get(id);
+		if (ns == null && base != null)
+			ns = base.getNamespace(id);
+		return ns;
 	}
 
 	@Override
 	public NamespaceImpl getDefaultNamespace()
 	{
+		if (defaultNamespace == null && base != null && base.getDefaultNamespace() != null)
+			return getNamespace(base.getDefaultNamespace().getId());
 		return defaultNamespace;
 	}
 
 	@Override
 	public NamespaceImpl getTemplateNamespace()
 	{
+		if (templateNamespace == null && base != null && base.getTemplateNamespace() != null)
+			return getNamespace(base.getTemplateNamespace().getId());
 		return templateNamespace;
 	}
 
@@ -318,6 +523,8 @@ public class WikiConfigImpl
 
 	public void addInterwiki(InterwikiImpl iw)
 	{
+		checkNotFrozen();
+
 		InterwikiImpl old = prefixToInterwikiMap.get(iw.getPrefix());
 
 		if (old == iw)
@@ -332,14 +539,30 @@ public class WikiConfigImpl
 	@Override
 	public InterwikiImpl getInterwiki(String prefix)
 	{
-		return prefixToInterwikiMap.get(prefix);
+		InterwikiImpl iw;
+		LookupTables tables = lookupTables;
+		if (tables != null)
+			iw = (prefix != null) ? tables.interwikis.get(prefix) : null;
+		else
+			iw = prefixToInterwikiMap.get(prefix);
+
+		if (iw == null && base != null)
+			iw = base.getInterwiki(prefix);
+		return iw;
 	}
 
 	@Override
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Collection<Interwiki> getInterwikis()
 	{
-		return (Collection) Collections.unmodifiableCollection(prefixToInterwikiMap.values());
+		if (base == null)
+			return (Collection) Collections.unmodifiableCollection(prefixToInterwikiMap.values());
+
+		Map<String, Interwiki> merged = new HashMap<String, Interwiki>();
+		for (Interwiki iw : base.getInterwikis())
+			merged.put(iw.getPrefix(), iw);
+		merged.putAll(prefixToInterwikiMap);
+		return Collections.unmodifiableCollection(merged.values());
 	}
 
 	// ==[ Internationalization ]===============================================
@@ -366,6 +589,8 @@ public class WikiConfigImpl
 	 */
 	public void addI18nAlias(I18nAliasImpl alias)
 	{
+		checkNotFrozen();
+
 		I18nAliasImpl old = aliasesById.get(alias.getId());
 
 		if (old == alias || (old != null && old.equals(alias)))
@@ -396,28 +621,53 @@ public class WikiConfigImpl
 	{
 		if (name == null)
 			throw new NullPointerException();
-		I18nAliasImpl alias = nameToAliasMap.get(name.toLowerCase());
-		if (alias != null && alias.isCaseSensitive() && !alias.getAliases().contains(name))
-			alias = null;
+		I18nAliasImpl alias;
+		LookupTables tables = lookupTables;
+		if (tables != null)
+		{
+			AliasEntry entry = tables.getAlias(name);
+			alias = (entry != null) ? entry.alias : null;
+		}
+		else
+		{
+			alias = nameToAliasMap.get(name.toLowerCase());
+			if (alias != null && alias.isCaseSensitive() && !alias.getAliases().contains(name))
+				alias = null;
+		}
+
+		if (alias == null && base != null)
+			alias = base.getI18nAlias(name);
 		return alias;
 	}
 
 	public I18nAliasImpl getI18nAliasById(String id)
 	{
-		return aliasesById.get(id);
+		I18nAliasImpl alias = aliasesById.get(id);
+		if (alias == null && base != null)
+			alias = base.getI18nAliasById(id);
+		return alias;
 	}
 
 	@Override
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Collection<I18nAlias> getI18nAliases()
 	{
-		return (Collection) Collections.unmodifiableCollection(aliasesById.values());
+		if (base == null)
+			return (Collection) Collections.unmodifiableCollection(aliasesById.values());
+
+		Map<String, I18nAlias> merged = new HashMap<String, I18nAlias>();
+		for (I18nAlias alias : base.getI18nAliases())
+			merged.put(alias.getId(), alias);
+		merged.putAll(aliasesById);
+		return Collections.unmodifiableCollection(merged.values());
 	}
 
 	// ==[ Tag extensions, parser functions and page switches ]=================
 
 	public void addParserFunctionGroup(ParserFunctionGroup pfnGroup)
 	{
+		checkNotFrozen();
+
 		ParserFunctionGroup old = pfnGroups.get(pfnGroup.getName());
 
 		if (old == pfnGroup)
@@ -434,6 +684,8 @@ public class WikiConfigImpl
 
 	protected void addParserFunction(ParserFunctionBase pfn)
 	{
+		checkNotFrozen();
+
 		ParserFunctionBase old = parserFunctions.get(pfn.getId());
 
 		if (old == pfn)
@@ -444,12 +696,15 @@ public class WikiConfigImpl
 
 		parserFunctions.put(pfn.getId(), pfn);
 
-		I18nAliasImpl alias = aliasesById.get(pfn.getId());
+		// Parser functions are found through the alias with the same id
+		I18nAliasImpl alias = getI18nAliasById(pfn.getId());
 		if (alias == null)
 			throw new IllegalArgumentException("No alias registered for parser function `" + pfn.getId() + "'.");
+	}
 
-		if (aliasToPfnMap.put(alias, pfn) != null)
-			throw new AssertionError("Alias collision should not be possible...");
+	Collection<ParserFunctionGroup> getParserFunctionGroups()
+	{
+		return Collections.unmodifiableCollection(pfnGroups.values());
 	}
 
 	@Override
@@ -461,10 +716,7 @@ public class WikiConfigImpl
 	@Override
 	public ParserFunctionBase getParserFunction(String name)
 	{
-		I18nAliasImpl alias = getI18nAlias(name);
-		if (alias == null)
-			return null;
-		ParserFunctionBase pfn = aliasToPfnMap.get(alias);
+		ParserFunctionBase pfn = lookupParserFunction(name);
 		if (pfn != null && pfn.isPageSwitch())
 			return null;
 		return pfn;
@@ -473,19 +725,39 @@ public class WikiConfigImpl
 	@Override
 	public ParserFunctionBase getPageSwitch(String name)
 	{
-		I18nAliasImpl alias = getI18nAlias(name);
-		if (alias == null)
-			return null;
-		ParserFunctionBase pfn = aliasToPfnMap.get(alias);
+		ParserFunctionBase pfn = lookupParserFunction(name);
 		if (pfn != null && !pfn.isPageSwitch())
 			return null;
 		return pfn;
 	}
 
+	private ParserFunctionBase lookupParserFunction(String name)
+	{
+		I18nAliasImpl alias;
+		LookupTables tables = lookupTables;
+		if (tables != null)
+		{
+			AliasEntry entry = tables.getAlias(name);
+			if (entry != null)
+				return entry.pfn;
+			alias = (base != null) ? base.getI18nAlias(name) : null;
+		}
+		else
+		{
+			alias = getI18nAlias(name);
+		}
+
+		// The parser functions of an overlay are registered with the overlay
+		// even if the alias comes from the base.
+		return (alias != null) ? parserFunctions.get(alias.getId()) : null;
+	}
+
 	// --------
 
 	public void addTagExtensionGroup(TagExtensionGroup tagExtGroup)
 	{
+		checkNotFrozen();
+
 		TagExtensionGroup old = tagExtGroups.get(tagExtGroup.getName());
 
 		if (old == tagExtGroup)
@@ -502,6 +774,8 @@ public class WikiConfigImpl
 
 	protected void addTagExtension(TagExtensionBase tagExt)
 	{
+		checkNotFrozen();
+
 		TagExtensionBase old = tagExtensions.get(tagExt.getId());
 
 		if (old == tagExt)
@@ -520,6 +794,11 @@ public class WikiConfigImpl
 		tagExtensionLookup.put(lookupName, tagExt);
 	}
 
+	Collection<TagExtensionGroup> getTagExtensionGroups()
+	{
+		return Collections.unmodifiableCollection(tagExtGroups.values());
+	}
+
 	@Override
 	public Collection<TagExtensionBase> getTagExtensions()
 	{
@@ -529,6 +808,9 @@ public class WikiConfigImpl
 	@Override
 	public TagExtensionBase getTagExtension(String name)
 	{
+		LookupTables tables = lookupTables;
+		if (tables != null)
+			return tables.tagExtensions.get(name);
 		String lookupName = tagExtensionNamesCaseSensitive ?
 				name :
 				name.toLowerCase();
@@ -753,6 +1035,8 @@ public class WikiConfigImpl
 
 	private Marshaller createMarshaller() throws JAXBException
 	{
+		checkNotOverlay();
+
 		JAXBContext context = JAXBContext.newInstance(WikiConfigImpl.class);
 
 		Marshaller m = context.createMarshaller();
@@ -804,6 +1088,62 @@ public class WikiConfigImpl
 		return finishImport((WikiConfigImpl) createUnmarshaller().unmarshal(in));
 	}
 
+	// =========================================================================
+
+	/**
+	 * Writes a compact binary snapshot of this configuration. Loading a
+	 * snapshot with loadSnapshot() is much faster than building the
+	 * configuration in code or loading it from XML. Snapshots are only meant
+	 * to be read by the same version of the engine that wrote them.
+	 */
+	public void saveSnapshot(File file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			saveSnapshot(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public void saveSnapshot(OutputStream out) throws IOException
+	{
+		checkNotOverlay();
+
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		WikiConfigSnapshot.write(this, dout);
+		dout.flush();
+	}
+
+	public static WikiConfigImpl loadSnapshot(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			return loadSnapshot(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	public static WikiConfigImpl loadSnapshot(InputStream in) throws IOException
+	{
+		WikiConfigImpl config = new WikiConfigImpl();
+		WikiConfigSnapshot.read(config, new DataInputStream(new BufferedInputStream(in)));
+		return finishImport(config);
+	}
+
+	private void checkNotOverlay()
+	{
+		if (base != null)
+			throw new UnsupportedOperationException("Overlay configurations cannot be saved");
+	}
+
 	private static WikiConfigImpl finishImport(WikiConfigImpl config)
 	{
 		for (ParserFunctionBase pf : config.getParserFunctions())
@@ -990,4 +1330,75 @@ public class WikiConfigImpl
 		setDefaultNamespace(getNamespace(namespaces.defaultNsId));
 		setTemplateNamespace(getNamespace(namespaces.templateNsId));
 	}
+
+	// =========================================================================
+
+	private static final class AliasEntry
+	{
+		private final I18nAliasImpl alias;
+
+		private final ParserFunctionBase pfn;
+
+		public AliasEntry(I18nAliasImpl alias, ParserFunctionBase pfn)
+		{
+			this.alias = alias;
+			this.pfn = pfn;
+		}
+	}
+
+	/**
+	 * The immutable lookup tables of a frozen configuration.
+	 */
+	private static final class LookupTables
+	{
+		private final NameTable<NamespaceImpl> namespaces;
+
+		private final NameTable<InterwikiImpl> interwikis;
+
+		/** All names of all aliases, compared case-sensitively. */
+		private final NameTable<AliasEntry> exactAliases;
+
+		/** The names of case-insensitive aliases only. */
+		private final NameTable<AliasEntry> foldedAliases;
+
+		private final NameTable<TagExtensionBase> tagExtensions;
+
+		public LookupTables(WikiConfigImpl config)
+		{
+			this.namespaces = new NameTable<NamespaceImpl>(config.namespaceByName, true);
+
+			this.interwikis = new NameTable<InterwikiImpl>(config.prefixToInterwikiMap, false);
+
+			Map<String, AliasEntry> exact = new HashMap<String, AliasEntry>();
+			Map<String, AliasEntry> folded = new HashMap<String, AliasEntry>();
+			for (I18nAliasImpl alias : config.aliasesById.values())
+			{
+				AliasEntry entry = new AliasEntry(alias, config.parserFunctions.get(alias.getId()));
+				for (String name : alias.getAliases())
+				{
+					exact.put(name, entry);
+					if (!alias.isCaseSensitive())
+						folded.put(name, entry);
+				}
+			}
+			this.exactAliases = new NameTable<AliasEntry>(exact, false);
+			this.foldedAliases = new NameTable<AliasEntry>(folded, true);
+
+			this.tagExtensions = new NameTable<TagExtensionBase>(
+					config.tagExtensions,
+					!config.tagExtensionNamesCaseSensitive);
+		}
+
+		/**
+		 * An exact match is always valid. Otherwise only case-insensitive
+		 * aliases may match.
+		 */
+		public AliasEntry getAlias(String name)
+		{
+			AliasEntry entry = exactAliases.get(name);
+			if (entry == null)
+				entry = foldedAliases.get(name);
+			return entry;
+		}
+	}
 }
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.config;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.ParserFunctionBase;
+import org.sweble.wikitext.engine.TagExtensionBase;
+
+/**
+ * Reads and writes the binary snapshot format of WikiConfigImpl (see
+ * WikiConfigImpl.saveSnapshot() and WikiConfigImpl.loadSnapshot()).
+ * 
+ * The snapshot starts with a magic number and a format version followed by
+ * the general information, the engine and parser configuration, namespaces,
+ * interwikis, aliases, parser function groups and tag extension groups.
+ * Collections are written as a count followed by their sorted elements,
+ * parser functions and tag extensions by their class name. The format is
+ * meant for fast start-up of processes that share a configuration, not for
+ * exchange between different versions of the engine. Use the XML format for
+ * that.
+ */
+final class WikiConfigSnapshot
+{
+	private static final int MAGIC = 0x53574343; // "SWCC"
+
+	private static final int VERSION = 1;
+
+	// =========================================================================
+
+	private WikiConfigSnapshot()
+	{
+	}
+
+	// =========================================================================
+
+	public static void write(WikiConfigImpl config, DataOutput out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		writeString(out, config.getSiteName());
+		writeString(out, config.getWikiUrl());
+		writeString(out, config.getContentLanguage());
+		writeString(out, config.getInterwikiPrefix());
+		out.writeBoolean(config.isTagExtensionNamesCaseSensitive());
+
+		EngineConfigImpl engineConfig = config.getEngineConfig();
+		out.writeBoolean(engineConfig.isTrimTransparentBeforeParsing());
+		out.writeInt(engineConfig.getMaxExpansionDepth());
+		out.writeInt(engineConfig.getMaxTransclusions());
+		out.writeInt(engineConfig.getMaxParserFunctionCalls());
+		out.writeLong(engineConfig.getMaxPostExpandIncludeSize());
+		out.writeLong(engineConfig.getMaxExpansionTime());
+
+		config.getParserConfig().writeSnapshot(out);
+
+		List<NamespaceImpl> namespaces = sorted(config.getNamespaces(), NamespaceImpl.class);
+		out.writeInt(namespaces.size());
+		for (NamespaceImpl ns : namespaces)
+		{
+			out.writeInt(ns.getId());
+			writeString(out, ns.getName());
+			writeString(out, ns.getCanonical());
+			out.writeBoolean(ns.isCanHaveSubpages());
+			out.writeBoolean(ns.isFileNs());
+			writeStrings(out, ns.getAliases());
+		}
+		out.writeInt(config.getDefaultNamespace().getId());
+		out.writeInt(config.getTemplateNamespace().getId());
+
+		List<InterwikiImpl> interwikis = sorted(config.getInterwikis(), InterwikiImpl.class);
+		out.writeInt(interwikis.size());
+		for (InterwikiImpl iw : interwikis)
+		{
+			writeString(out, iw.getPrefix());
+			writeString(out, iw.getUrl());
+			out.writeBoolean(iw.isLocal());
+			out.writeBoolean(iw.isTrans());
+		}
+
+		List<I18nAliasImpl> aliases = sorted(config.getI18nAliases(), I18nAliasImpl.class);
+		out.writeInt(aliases.size());
+		for (I18nAliasImpl alias : aliases)
+		{
+			writeString(out, alias.getId());
+			out.writeBoolean(alias.isCaseSensitive());
+			writeStrings(out, alias.getAliases());
+		}
+
+		List<ParserFunctionGroup> pfnGroups = sorted(config.getParserFunctionGroups());
+		out.writeInt(pfnGroups.size());
+		for (ParserFunctionGroup group : pfnGroups)
+		{
+			writeString(out, group.getName());
+			List<ParserFunctionBase> pfns = sorted(group.getParserFunctions());
+			out.writeInt(pfns.size());
+			for (ParserFunctionBase pfn : pfns)
+				writeString(out, pfn.getClass().getName());
+		}
+
+		List<TagExtensionGroup> tagExtGroups = sorted(config.getTagExtensionGroups());
+		out.writeInt(tagExtGroups.size());
+		for (TagExtensionGroup group : tagExtGroups)
+		{
+			writeString(out, group.getName());
+			List<TagExtensionBase> tagExts = sorted(group.getTagExtensions());
+			out.writeInt(tagExts.size());
+			for (TagExtensionBase tagExt : tagExts)
+				writeString(out, tagExt.getClass().getName());
+		}
+	}
+
+	/**
+	 * Reads a snapshot into the given freshly created configuration.
+	 */
+	public static void read(WikiConfigImpl config, DataInput in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a wiki configuration snapshot");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported wiki configuration snapshot version " + version);
+
+		config.setSiteName(readString(in));
+		config.setWikiUrl(readString(in));
+		config.setContentLang(readString(in));
+		config.setIwPrefix(readString(in));
+		boolean tagExtensionNamesCaseSensitive = in.readBoolean();
+
+		EngineConfigImpl engineConfig = config.getEngineConfig();
+		engineConfig.setTrimTransparentBeforeParsing(in.readBoolean());
+		engineConfig.setMaxExpansionDepth(in.readInt());
+		engineConfig.setMaxTransclusions(in.readInt());
+		engineConfig.setMaxParserFunctionCalls(in.readInt());
+		engineConfig.setMaxPostExpandIncludeSize(in.readLong());
+		engineConfig.setMaxExpansionTime(in.readLong());
+
+		config.getParserConfig().readSnapshot(in);
+
+		for (int i = in.readInt(); i > 0; --i)
+		{
+			int id = in.readInt();
+			String name = readString(in);
+			String canonical = readString(in);
+			boolean subpages = in.readBoolean();
+			boolean fileNs = in.readBoolean();
+			config.addNamespace(new NamespaceImpl(
+					id,
+					name,
+					canonical,
+					subpages,
+					fileNs,
+					readStrings(in)));
+		}
+		config.setDefaultNamespace(config.getNamespace(in.readInt()));
+		config.setTemplateNamespace(config.getNamespace(in.readInt()));
+
+		for (int i = in.readInt(); i > 0; --i)
+		{
+			String prefix = readString(in);
+			String url = readString(in);
+			boolean local = in.readBoolean();
+			boolean trans = in.readBoolean();
+			config.addInterwiki(new InterwikiImpl(prefix, url, local, trans));
+		}
+
+		for (int i = in.readInt(); i > 0; --i)
+		{
+			String id = readString(in);
+			boolean caseSensitive = in.readBoolean();
+			config.addI18nAlias(new I18nAliasImpl(id, caseSensitive, readStrings(in)));
+		}
+
+		for (int i = in.readInt(); i > 0; --i)
+		{
+			ParserFunctionGroup group = new ParserFunctionGroup(readString(in));
+			for (int j = in.readInt(); j > 0; --j)
+				group.addParserFunction(newInstance(readString(in), ParserFunctionBase.class));
+			config.addParserFunctionGroup(group);
+		}
+
+		for (int i = in.readInt(); i > 0; --i)
+		{
+			TagExtensionGroup group = new TagExtensionGroup(readString(in));
+			for (int j = in.readInt(); j > 0; --j)
+				group.addTagExtension(newInstance(readString(in), TagExtensionBase.class));
+			config.addTagExtensionGroup(group);
+		}
+
+		config.setTagExtensionNamesCaseSensitive(tagExtensionNamesCaseSensitive);
+	}
+
+	// =========================================================================
+
+	static void writeString(DataOutput out, String s) throws IOException
+	{
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	static String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static void writeStrings(DataOutput out, Collection<String> strings) throws IOException
+	{
+		String[] sorted = strings.toArray(new String[strings.size()]);
+		Arrays.sort(sorted);
+		out.writeInt(sorted.length);
+		for (String s : sorted)
+			out.writeUTF(s);
+	}
+
+	static List<String> readStrings(DataInput in) throws IOException
+	{
+		int count = in.readInt();
+		List<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; ++i)
+			strings.add(in.readUTF());
+		return strings;
+	}
+
+	static void writeStringMap(DataOutput out, Map<String, String> map) throws IOException
+	{
+		List<String> keys = new ArrayList<String>(map.keySet());
+		Collections.sort(keys);
+		out.writeInt(keys.size());
+		for (String key : keys)
+		{
+			out.writeUTF(key);
+			writeString(out, map.get(key));
+		}
+	}
+
+	// =========================================================================
+
+	private static <T extends Comparable<? super T>> List<T> sorted(Collection<T> c)
+	{
+		List<T> list = new ArrayList<T>(c);
+		Collections.sort(list);
+		return list;
+	}
+
+	private static <T extends Comparable<? super T>> List<T> sorted(
+			Collection<?> c,
+			Class<T> clazz)
+	{
+		List<T> list = new ArrayList<T>(c.size());
+		for (Object o : c)
+			list.add(clazz.cast(o));
+		Collections.sort(list);
+		return list;
+	}
+
+	private static <T> T newInstance(String className, Class<T> clazz) throws IOException
+	{
+		try
+		{
+			return clazz.cast(Class.forName(className).newInstance());
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Cannot instantiate `" + className + "'", e);
+		}
+	}
+}
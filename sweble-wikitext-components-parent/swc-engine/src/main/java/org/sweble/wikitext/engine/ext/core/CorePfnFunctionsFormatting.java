@@ -282,6 +282,12 @@ public class CorePfnFunctionsFormatting
 			super(wikiConfig, PfnArgumentMode.EXPANDED_AND_TRIMMED_VALUES, "padleft");
 		}
 
+		@Override
+		public boolean isPure()
+		{
+			return true;
+		}
+
 		@Override
 		public WtNode invoke(
 				WtTemplate pfn,
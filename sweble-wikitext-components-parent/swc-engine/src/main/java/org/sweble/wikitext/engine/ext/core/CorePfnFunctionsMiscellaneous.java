@@ -164,9 +164,17 @@ public class CorePfnFunctionsMiscellaneous
 			return frame.expand(tagExt);
 		}
 
+		/**
+		 * Returns a copy of n without comments. The expanded value can share
+		 * nodes with cached ASTs and must not be modified.
+		 */
 		private WtNode stripComments(WtNode n)
 		{
-			ListIterator<WtNode> i = n.listIterator();
+			if (!containsComments(n))
+				return n;
+
+			WtNode result = (WtNode) n.cloneWrapException();
+			ListIterator<WtNode> i = result.listIterator();
 			while (i.hasNext())
 			{
 				WtNode child = i.next();
@@ -178,10 +186,27 @@ public class CorePfnFunctionsMiscellaneous
 						break;
 					default:
 						if (!child.isEmpty())
-							stripComments(child);
+							i.set(stripComments(child));
+				}
+			}
+			return result;
+		}
+
+		private boolean containsComments(WtNode n)
+		{
+			for (WtNode child : n)
+			{
+				switch (child.getNodeType())
+				{
+					case WtNode.NT_XML_COMMENT:
+					case WtNode.NT_IGNORED:
+						return true;
+					default:
+						if (!child.isEmpty() && containsComments(child))
+							return true;
 				}
 			}
-			return n;
+			return false;
 		}
 	}
 }
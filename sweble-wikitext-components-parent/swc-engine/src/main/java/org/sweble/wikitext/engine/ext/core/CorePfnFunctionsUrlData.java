@@ -255,6 +255,12 @@ public class CorePfnFunctionsUrlData
 			super(wikiConfig, "filepath");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		public WtNode invoke(
 				WtTemplate pfn,
@@ -352,12 +358,18 @@ public class CorePfnFunctionsUrlData
 		 */
 		public UrlencodePfn()
 		{
-			super("urlencode");
+			super(PfnArgumentMode.EXPANDED_AND_TRIMMED_VALUES, "urlencode");
 		}
 
 		public UrlencodePfn(WikiConfig wikiConfig)
 		{
-			super(wikiConfig, "urlencode");
+			super(wikiConfig, PfnArgumentMode.EXPANDED_AND_TRIMMED_VALUES, "urlencode");
+		}
+
+		@Override
+		public boolean isPure()
+		{
+			return true;
 		}
 
 		@Override
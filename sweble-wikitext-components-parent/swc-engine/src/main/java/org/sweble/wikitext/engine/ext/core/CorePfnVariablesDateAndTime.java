@@ -17,8 +17,7 @@
 
 package org.sweble.wikitext.engine.ext.core;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.time.ZonedDateTime;
 
 import org.sweble.wikitext.engine.ExpansionFrame;
 import org.sweble.wikitext.engine.config.ParserFunctionGroup;
@@ -72,11 +71,17 @@ public class CorePfnVariablesDateAndTime
 			super(wikiConfig, "currentyear");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		protected final WtNode invoke(WtTemplate var, ExpansionFrame frame)
 		{
-			Calendar cal = getWikiConfig().getRuntimeInfo().getDateAndTime();
-			return nf().text(String.valueOf(cal.get(GregorianCalendar.YEAR)));
+			ZonedDateTime now = frame.getRenderClock().getDateAndTime();
+			return nf().text(String.valueOf(now.getYear()));
 		}
 	}
 
@@ -105,11 +110,17 @@ public class CorePfnVariablesDateAndTime
 			super(wikiConfig, "currentmonth");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		protected final WtNode invoke(WtTemplate var, ExpansionFrame frame)
 		{
-			Calendar cal = getWikiConfig().getRuntimeInfo().getDateAndTime();
-			return nf().text(String.format("%02d", cal.get(GregorianCalendar.MONTH) + 1));
+			ZonedDateTime now = frame.getRenderClock().getDateAndTime();
+			return nf().text(String.format("%02d", now.getMonthValue()));
 		}
 	}
 
@@ -146,11 +157,17 @@ public class CorePfnVariablesDateAndTime
 			super(wikiConfig, "currentday");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		protected final WtNode invoke(WtTemplate var, ExpansionFrame frame)
 		{
-			Calendar cal = getWikiConfig().getRuntimeInfo().getDateAndTime();
-			return nf().text(String.valueOf(cal.get(GregorianCalendar.DAY_OF_MONTH)));
+			ZonedDateTime now = frame.getRenderClock().getDateAndTime();
+			return nf().text(String.valueOf(now.getDayOfMonth()));
 		}
 	}
 
@@ -172,6 +172,12 @@ public class CorePfnVariablesTechnicalMetadata
 			super(wikiConfig, PfnArgumentMode.EXPANDED_AND_TRIMMED_VALUES, "protectionlevel");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		public WtNode invoke(
 				WtTemplate var,
@@ -218,6 +224,12 @@ public class CorePfnVariablesTechnicalMetadata
 			super(wikiConfig, PfnArgumentMode.EXPANDED_AND_TRIMMED_VALUES, "defaultsort");
 		}
 
+		@Override
+		public boolean isVolatile()
+		{
+			return true;
+		}
+
 		@Override
 		public WtNode invoke(
 				WtTemplate var,
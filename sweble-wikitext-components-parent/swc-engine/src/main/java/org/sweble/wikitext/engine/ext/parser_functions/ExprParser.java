@@ -18,14 +18,29 @@
 package org.sweble.wikitext.engine.ext.parser_functions;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Stack;
 
+import org.sweble.wikitext.engine.cache.WeightedLruCache;
+
+/**
+ * Evaluates the expressions of #expr and #ifexpr. An expression is compiled
+ * once into a Program which is cached by the text of the expression and
+ * evaluated on a primitive operand stack.
+ */
 public class ExprParser
 {
 	private static final int maxStackSize = 100;
 
+	/**
+	 * 1M characters of expression text.
+	 */
+	private static final long MAX_CACHE_WEIGHT = 1024L * 1024;
+
+	private static final WeightedLruCache<String, Program> PROGRAMS =
+			new WeightedLruCache<String, Program>(MAX_CACHE_WEIGHT);
+
 	private static final Map<String, Token> TOKENS = new HashMap<String, Token>();
 
 	static
@@ -71,334 +86,489 @@ public class ExprParser
 
 	// =====================================================================
 
-	private final Stack<Double> operands = new Stack<Double>();
+	/**
+	 * @throws ExprError
+	 */
+	public String parse(String expr) throws ExprError
+	{
+		return compile(expr).evaluate();
+	}
+
+	/**
+	 * Returns the compiled form of the given expression. Syntax errors are
+	 * not reported until the program is evaluated, since operations in front
+	 * of the error can fail first.
+	 */
+	public static Program compile(String expr)
+	{
+		Program program = PROGRAMS.get(expr);
+		if (program == null)
+		{
+			program = new Compiler().compile(expr);
+			PROGRAMS.put(expr, program, expr.length() + 1);
+		}
+		return program;
+	}
+
+	// =====================================================================
+
+	/**
+	 * An expression compiled into a sequence of operations in reverse polish
+	 * notation. Programs are immutable and can be evaluated concurrently.
+	 */
+	public static final class Program
+	{
+		/**
+		 * The operations of the program. A null entry pushes the value of
+		 * the same index.
+		 */
+		private final Token[] ops;
+
+		private final double[] values;
+
+		private final int maxDepth;
 
-	private final Stack<Token> operators = new Stack<Token>();
+		private final String errorMessage;
 
-	private Production expecting;
+		private final String errorParam;
+
+		private Program(
+				Token[] ops,
+				double[] values,
+				int maxDepth,
+				String errorMessage,
+				String errorParam)
+		{
+			this.ops = ops;
+			this.values = values;
+			this.maxDepth = maxDepth;
+			this.errorMessage = errorMessage;
+			this.errorParam = errorParam;
+		}
+
+		public String evaluate() throws ExprError
+		{
+			double[] stack = new double[maxDepth];
+			int sp = 0;
+
+			for (int i = 0; i < ops.length; ++i)
+			{
+				Token op = ops[i];
+				if (op == null)
+					stack[sp++] = values[i];
+				else
+					sp = op.apply(stack, sp);
+			}
+
+			if (errorMessage != null)
+				throw new ExprError(errorMessage, errorParam);
+
+			return implode("<br />\n", stack, sp);
+		}
+	}
 
 	// =====================================================================
 
 	/**
 	 * http://montcs.bloomu.edu/~bobmon/Information/RPN/infix2rpn.shtml
 	 * 
-	 * @throws ExprError
+	 * Instead of applying operators to the operand stack directly, the
+	 * compiler emits them and only tracks the depth of the operand stack.
 	 */
-	public String parse(String expr) throws ExprError
+	private static final class Compiler
 	{
-		operands.clear();
-		operators.clear();
-		expecting = Production.EXPR;
-		int i = 0;
+		private final ArrayList<Token> operators = new ArrayList<Token>();
 
-		expr = unescape(expr);
+		private final ArrayList<Token> ops = new ArrayList<Token>();
 
-		while (i < expr.length())
-		{
-			if (operands.size() > maxStackSize
-					|| operators.size() > maxStackSize)
-				throw new ExprError("operands_exhausted");
+		private double[] values = new double[16];
+
+		private int depth;
+
+		private int maxDepth;
 
-			char ch = expr.charAt(i);
+		private Production expecting;
+
+		// =================================================================
+
+		public Program compile(String expr)
+		{
+			expecting = Production.EXPR;
 
-			if (isWs(ch))
+			try
 			{
-				i = skipWs(expr, i);
-				continue;
+				parse(unescape(expr));
+				return program(null, null);
 			}
-			else if (isNumberChar(ch))
+			catch (ExprError e)
 			{
-				expect(Production.EXPR, "unexpected_number");
-				i = pushOperand(expr, i);
-				expecting = Production.OPERATOR;
-				continue;
+				return program(e.getRawMessage(), e.getParam());
 			}
-			else
+		}
+
+		private Program program(String errorMessage, String errorParam)
+		{
+			Token[] code = ops.toArray(new Token[ops.size()]);
+			double[] constants = new double[code.length];
+			System.arraycopy(values, 0, constants, 0, code.length);
+			return new Program(code, constants, maxDepth, errorMessage, errorParam);
+		}
+
+		private void parse(String expr) throws ExprError
+		{
+			int i = 0;
+			while (i < expr.length())
 			{
-				String word = null;
-				Token token = null;
-				if (isAlphaChar(ch))
+				if (depth > maxStackSize
+						|| operators.size() > maxStackSize)
+					throw new ExprError("operands_exhausted");
+
+				char ch = expr.charAt(i);
+
+				if (isWs(ch))
 				{
-					word = parseWordToken(expr, i).toLowerCase();
-					token = TOKENS.get(word);
+					i = skipWs(expr, i);
+					continue;
+				}
+				else if (isNumberChar(ch))
+				{
+					expect(Production.EXPR, "unexpected_number");
+					i = pushOperand(expr, i);
+					expecting = Production.OPERATOR;
+					continue;
 				}
 				else
 				{
-					if (i + 1 < expr.length())
+					String word = null;
+					Token token = null;
+					if (isAlphaChar(ch))
 					{
-						// Try two-character operators
-						word = expr.substring(i, i + 2);
+						word = parseWordToken(expr, i).toLowerCase();
 						token = TOKENS.get(word);
 					}
-
-					if (token == null)
+					else
 					{
-						// Try one-character operators
-						word = "" + ch;
-						token = TOKENS.get(word);
+						if (i + 1 < expr.length())
+						{
+							// Try two-character operators
+							word = expr.substring(i, i + 2);
+							token = TOKENS.get(word);
+						}
+
+						if (token == null)
+						{
+							// Try one-character operators
+							word = String.valueOf(ch);
+							token = TOKENS.get(word);
+						}
 					}
-				}
 
-				if (token == null)
-					throw new ExprError("Unrecognised word \"%s\".", word);
+					if (token == null)
+						throw new ExprError("Unrecognised word \"%s\".", word);
 
-				i += word.length();
+					i += word.length();
 
-				switch (token)
-				{
+					switch (token)
+					{
 
-				// -- Constants ----------------------------------------
+					// -- Constants ----------------------------------------
 
-					case E:
-					{
-						if (expecting == Production.OPERATOR)
+						case E:
 						{
-							processBinaryOp(Token.SCIENTIFIC, word);
-							continue;
+							if (expecting == Production.OPERATOR)
+							{
+								processBinaryOp(Token.SCIENTIFIC, word);
+								continue;
+							}
+							// Fall through to handle constants
 						}
-						// Fall through to handle constants
-					}
-					case PI:
-					{
-						if (expecting == Production.EXPR)
+						case PI:
 						{
-							token.apply(operands);
-							expecting = Production.OPERATOR;
+							if (expecting == Production.EXPR)
+							{
+								push((token == Token.E) ? Math.E : Math.PI);
+								expecting = Production.OPERATOR;
+							}
+							continue;
 						}
-						continue;
-					}
 
-					// -- Unary operators ----------------------------------
-
-					case NOT:
-					case SINE:
-					case COSINE:
-					case TANGENS:
-					case ARCSINE:
-					case ARCCOS:
-					case ARCTAN:
-					case EXP:
-					case LN:
-					case ABS:
-					case FLOOR:
-					case TRUNC:
-					case CEIL:
-					{
-						expect(Production.EXPR, "unexpected_operator", word);
-						operators.push(token);
-						continue;
-					}
+						// -- Unary operators ----------------------------------
+
+						case NOT:
+						case SINE:
+						case COSINE:
+						case TANGENS:
+						case ARCSINE:
+						case ARCCOS:
+						case ARCTAN:
+						case EXP:
+						case LN:
+						case ABS:
+						case FLOOR:
+						case TRUNC:
+						case CEIL:
+						{
+							expect(Production.EXPR, "unexpected_operator", word);
+							operators.add(token);
+							continue;
+						}
 
-					// -- Binary or Unary ----------------------------------
+						// -- Binary or Unary ----------------------------------
 
-					case PLUS:
-					case MINUS:
-					{
-						if (expecting == Production.EXPR)
+						case PLUS:
+						case MINUS:
 						{
-							operators.push(token == Token.PLUS ?
-									Token.POS :
-									Token.NEG);
+							if (expecting == Production.EXPR)
+							{
+								operators.add(token == Token.PLUS ?
+										Token.POS :
+										Token.NEG);
+							}
+							else
+							{
+								processBinaryOp(token, word);
+							}
+							continue;
 						}
-						else
+
+						// -- Binary operators ---------------------------------
+
+						case EQ:
+						case NEQ:
+						case LE:
+						case GR:
+						case LEQ:
+						case GEQ:
+						case TIMES:
+						case DIVIDE:
+						case MOD:
+						case POW:
+						case ROUND:
+						case AND:
+						case OR:
 						{
 							processBinaryOp(token, word);
+							continue;
 						}
-						continue;
-					}
-
-					// -- Binary operators ---------------------------------
-
-					case EQ:
-					case NEQ:
-					case LE:
-					case GR:
-					case LEQ:
-					case GEQ:
-					case TIMES:
-					case DIVIDE:
-					case MOD:
-					case POW:
-					case ROUND:
-					case AND:
-					case OR:
-					{
-						processBinaryOp(token, word);
-						continue;
-					}
 
-					// -- Parentheses --------------------------------------
+						// -- Parentheses --------------------------------------
 
-					case LPAREN:
-					{
-						expect(Production.EXPR, "unexpected_operator", word);
-						operators.push(token);
-						continue;
-					}
+						case LPAREN:
+						{
+							expect(Production.EXPR, "unexpected_operator", word);
+							operators.add(token);
+							continue;
+						}
 
-					case RPAREN:
-					{
-						Token lastOp = null;
-						while (!operators.isEmpty())
+						case RPAREN:
 						{
-							lastOp = operators.peek();
-							if (lastOp == Token.LPAREN)
-								break;
+							Token lastOp = null;
+							while (!operators.isEmpty())
+							{
+								lastOp = peek();
+								if (lastOp == Token.LPAREN)
+									break;
 
-							lastOp.apply(operands);
-							operators.pop();
-						}
+								emit(lastOp);
+								pop();
+							}
 
-						if (lastOp != Token.LPAREN)
-							throw new ExprError("unexpected_closing_bracket");
+							if (lastOp != Token.LPAREN)
+								throw new ExprError("unexpected_closing_bracket");
 
-						operators.pop();
-						expecting = Production.OPERATOR;
-						continue;
-					}
+							pop();
+							expecting = Production.OPERATOR;
+							continue;
+						}
 
-					default:
-						throw new AssertionError();
+						default:
+							throw new AssertionError();
+					}
 				}
 			}
+
+			while (!operators.isEmpty())
+			{
+				Token op = pop();
+				if (op == Token.LPAREN)
+					throw new ExprError("unclosed_bracket");
+
+				emit(op);
+			}
 		}
 
-		while (!operators.isEmpty())
+		// =================================================================
+
+		private Token peek()
 		{
-			Token op = operators.pop();
-			if (op == Token.LPAREN)
-				throw new ExprError("unclosed_bracket");
+			return operators.get(operators.size() - 1);
+		}
 
-			op.apply(operands);
+		private Token pop()
+		{
+			return operators.remove(operators.size() - 1);
 		}
 
-		return implode("<br />\n", operands);
-	}
+		private void push(double value)
+		{
+			ops.add(null);
+			values = ensureCapacity(values, ops.size());
+			values[ops.size() - 1] = value;
 
-	// =====================================================================
+			++depth;
+			if (depth > maxDepth)
+				maxDepth = depth;
+		}
 
-	private String unescape(String expr)
-	{
-		expr = expr.replace("&lt;", "<");
-		expr = expr.replace("&gt;", ">");
-		expr = expr.replace("&minus;", "-");
-		expr = expr.replace("\u2212", "-");
-		return expr;
-	}
+		/**
+		 * Emits an operator. The operands an operator needs must be on the
+		 * stack when it is applied, and the depth of the stack does not
+		 * depend on the values of the operands. Therefore missing operands
+		 * are reported here.
+		 */
+		private void emit(Token op) throws ExprError
+		{
+			if (depth < op.getArity())
+				throw new ExprError("Missing operand for %s.", op.toString());
 
-	// =====================================================================
+			ops.add(op);
+			values = ensureCapacity(values, ops.size());
 
-	private boolean isWs(char ch)
-	{
-		return Character.isWhitespace(ch);
-	}
+			depth -= op.getArity() - 1;
+		}
 
-	private int skipWs(String expr, int i)
-	{
-		int j = i + 1;
-		while (j < expr.length() && isWs(expr.charAt(j)))
-			++j;
-		return j;
-	}
+		private static double[] ensureCapacity(double[] values, int size)
+		{
+			if (size <= values.length)
+				return values;
+			double[] grown = new double[values.length * 2];
+			System.arraycopy(values, 0, grown, 0, values.length);
+			return grown;
+		}
 
-	// =====================================================================
+		// =================================================================
 
-	private boolean isNumberChar(char ch)
-	{
-		return ch == '.' || Character.isDigit(ch);
-	}
+		private int pushOperand(String expr, int i)
+		{
+			int j = i + 1;
+			while (j < expr.length())
+			{
+				char ch = expr.charAt(j);
+				if (!isNumberChar(ch))
+					break;
+				++j;
+			}
 
-	private int pushOperand(String expr, int i)
-	{
-		int j = i + 1;
-		while (j < expr.length())
+			try
+			{
+				push(Double.parseDouble(expr.substring(i, j)));
+			}
+			catch (NumberFormatException e)
+			{
+				push(0.);
+			}
+
+			return j;
+		}
+
+		private String parseWordToken(String expr, int i)
 		{
-			char ch = expr.charAt(j);
-			if (!isNumberChar(ch))
-				break;
-			++j;
+			int j = i + 1;
+			while (j < expr.length())
+			{
+				char chx = expr.charAt(j);
+				if (!isAlphaChar(chx))
+					break;
+				++j;
+			}
+
+			return expr.substring(i, j);
 		}
 
-		try
+		// =================================================================
+
+		private void expect(Production p, String msg) throws ExprError
 		{
-			operands.push(Double.parseDouble(expr.substring(i, j)));
+			if (expecting != p)
+				throw new ExprError(msg);
 		}
-		catch (NumberFormatException e)
+
+		private void expect(Production p, String msg, String word) throws ExprError
 		{
-			operands.push(0.);
+			if (expecting != p)
+				throw new ExprError(msg, word);
 		}
 
-		return j;
-	}
+		// =================================================================
 
-	// =====================================================================
+		private void processBinaryOp(Token op, String word) throws ExprError
+		{
+			expect(Production.OPERATOR, "unexpected_operator", word);
 
-	private boolean isAlphaChar(char ch)
-	{
-		return Character.isLetter(ch);
-	}
+			while (!operators.isEmpty())
+			{
+				Token lastOp = peek();
+				if (op.getPrecedence() > lastOp.getPrecedence())
+					break;
 
-	private String parseWordToken(String expr, int i)
-	{
-		int j = i + 1;
-		while (j < expr.length())
-		{
-			char chx = expr.charAt(j);
-			if (!isAlphaChar(chx))
-				break;
-			++j;
-		}
+				emit(lastOp);
+				pop();
+			}
 
-		return expr.substring(i, j);
+			operators.add(op);
+			expecting = Production.EXPR;
+		}
 	}
 
 	// =====================================================================
 
-	private void expect(Production p, String msg) throws ExprError
+	private static String unescape(String expr)
 	{
-		if (expecting != p)
-			throw new ExprError(msg);
-	}
-
-	private void expect(Production p, String msg, String word) throws ExprError
-	{
-		if (expecting != p)
-			throw new ExprError(msg, word);
+		expr = expr.replace("&lt;", "<");
+		expr = expr.replace("&gt;", ">");
+		expr = expr.replace("&minus;", "-");
+		expr = expr.replace("\u2212", "-");
+		return expr;
 	}
 
 	// =====================================================================
 
-	private void processBinaryOp(Token op, String word) throws ExprError
+	private static boolean isWs(char ch)
 	{
-		expect(Production.OPERATOR, "unexpected_operator", word);
+		return Character.isWhitespace(ch);
+	}
 
-		while (!operators.isEmpty())
-		{
-			Token lastOp = operators.peek();
-			if (op.getPrecedence() > lastOp.getPrecedence())
-				break;
+	private static int skipWs(String expr, int i)
+	{
+		int j = i + 1;
+		while (j < expr.length() && isWs(expr.charAt(j)))
+			++j;
+		return j;
+	}
 
-			lastOp.apply(operands);
-			operators.pop();
-		}
+	private static boolean isNumberChar(char ch)
+	{
+		return ch == '.' || Character.isDigit(ch);
+	}
 
-		operators.push(op);
-		expecting = Production.EXPR;
+	private static boolean isAlphaChar(char ch)
+	{
+		return Character.isLetter(ch);
 	}
 
 	// =====================================================================
 
-	private String implode(String serparator, Stack<Double> operands)
+	private static String implode(String serparator, double[] operands, int size)
 	{
 		StringBuilder b = new StringBuilder();
-		for (int i = 0; i < operands.size();)
+		for (int i = 0; i < size;)
 		{
-			double result = operands.get(i);
+			double result = operands[i];
 			if (((double) (int) result) == result)
 				b.append((int) result);
 			else
 				b.append(result);
-			if (++i < operands.size())
+			if (++i < size)
 				b.append(serparator);
 		}
 		return b.toString();
@@ -412,6 +582,8 @@ public class ExprParser
 	{
 		private static final long serialVersionUID = 1L;
 
+		private final String rawMessage;
+
 		private final String param;
 
 		public ExprError(String message)
@@ -422,6 +594,7 @@ public class ExprParser
 		public ExprError(String message, String param)
 		{
 			super(makeMessage(message, param));
+			this.rawMessage = message;
 			this.param = param;
 		}
 
@@ -433,6 +606,11 @@ public class ExprParser
 			return "Expression error: " + msg;
 		}
 
+		String getRawMessage()
+		{
+			return rawMessage;
+		}
+
 		public String getParam()
 		{
 			return param;
@@ -453,407 +631,402 @@ public class ExprParser
 	{
 		// -- Constants -- e, pi --
 
-		E(-1, "e")
+		E(-1, 0, "e")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp)
 			{
-				operands.push(Math.E);
+				throw new AssertionError();
 			}
 		},
-		PI(-1, "pi")
+		PI(-1, 0, "pi")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp)
 			{
-				operands.push(Math.PI);
+				throw new AssertionError();
 			}
 		},
 
 		// -- Binary -- 10e^x --
 
-		SCIENTIFIC(10, "e")
+		SCIENTIFIC(10, 2, "e")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left * Math.pow(10, right));
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = left * Math.pow(10, right);
+				return sp;
 			}
 		},
 
 		// -- Unary -- +, -, ! --
 
-		POS(10, "+")
+		POS(10, 1, "+")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
+				return sp;
 			}
 		},
-		NEG(10, "-")
+		NEG(10, 1, "-")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(-arg);
+				double arg = stack[sp - 1];
+				stack[sp - 1] = -arg;
+				return sp;
 			}
 		},
 
-		NOT(9, "not")
+		NOT(9, 1, "not")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push((arg == 0) ? 1. : 0.);
+				double arg = stack[sp - 1];
+				stack[sp - 1] = (arg == 0) ? 1. : 0.;
+				return sp;
 			}
 		},
 
 		// -- Unary -- sin, cos, tan, atan, acos, atan --
 
-		SINE(9, "sin")
+		SINE(9, 1, "sin")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.sin(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.sin(arg);
+				return sp;
 			}
 		},
-		COSINE(9, "cos")
+		COSINE(9, 1, "cos")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.cos(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.cos(arg);
+				return sp;
 			}
 		},
-		TANGENS(9, "tan")
+		TANGENS(9, 1, "tan")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.tan(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.tan(arg);
+				return sp;
 			}
 		},
-		ARCSINE(9, "asin")
+		ARCSINE(9, 1, "asin")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				double arg = stack[sp - 1];
 				if (arg < -1 || arg > 1)
 					throw new ExprError("invalid_argument", toString());
-				operands.push(Math.asin(arg));
+				stack[sp - 1] = Math.asin(arg);
+				return sp;
 			}
 		},
-		ARCCOS(9, "acos")
+		ARCCOS(9, 1, "acos")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				double arg = stack[sp - 1];
 				if (arg < -1 || arg > 1)
 					throw new ExprError("invalid_argument", toString());
-				operands.push(Math.acos(arg));
+				stack[sp - 1] = Math.acos(arg);
+				return sp;
 			}
 		},
-		ARCTAN(9, "atan")
+		ARCTAN(9, 1, "atan")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.atan(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.atan(arg);
+				return sp;
 			}
 		},
 
 		// -- Unary -- e^x, ln(x) --
 
-		EXP(9, "exp")
+		EXP(9, 1, "exp")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.exp(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.exp(arg);
+				return sp;
 			}
 		},
-		LN(9, "ln")
+		LN(9, 1, "ln")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
+				double arg = stack[sp - 1];
 				if (arg <= 0)
 					throw new ExprError("invalid_argument_ln", toString());
-				operands.push(Math.log(arg));
+				stack[sp - 1] = Math.log(arg);
+				return sp;
 			}
 		},
 
 		// -- Unary -- abs, floor, trunc, ceil --
 
-		ABS(9, "abs")
+		ABS(9, 1, "abs")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.abs(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.abs(arg);
+				return sp;
 			}
 		},
-
-		FLOOR(9, "floor")
+		FLOOR(9, 1, "floor")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.floor(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.floor(arg);
+				return sp;
 			}
 		},
-		TRUNC(9, "trunc")
+		TRUNC(9, 1, "trunc")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push((double) ((int) arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = (double) ((int) arg);
+				return sp;
 			}
 		},
-		CEIL(9, "ceil")
+		CEIL(9, 1, "ceil")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireOneOp(this, operands);
-				double arg = operands.pop();
-				operands.push(Math.ceil(arg));
+				double arg = stack[sp - 1];
+				stack[sp - 1] = Math.ceil(arg);
+				return sp;
 			}
 		},
 
 		// -- Binary -- --
 
-		POW(8, "^")
+		POW(8, 2, "^")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				double right = stack[--sp];
+				double left = stack[sp - 1];
 				double result = Math.pow(left, right);
 				if (Double.isNaN(result))
 					throw new ExprError("division_by_zero", toString());
-				operands.push(result);
+				stack[sp - 1] = result;
+				return sp;
 			}
 		},
-		TIMES(7, "*")
+		TIMES(7, 2, "*")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left * right);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = left * right;
+				return sp;
 			}
 		},
-		DIVIDE(7, "/")
+		DIVIDE(7, 2, "/")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				double right = stack[--sp];
+				double left = stack[sp - 1];
 				if (right == 0)
 					throw new ExprError("division_by_zero", toString());
-				operands.push(left / right);
+				stack[sp - 1] = left / right;
+				return sp;
 			}
 		},
-		MOD(7, "mod")
+		MOD(7, 2, "mod")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
+				double right = stack[--sp];
+				double left = stack[sp - 1];
 				if (right == 0)
 					throw new ExprError("division_by_zero", toString());
-				operands.push(left % right);
+				stack[sp - 1] = left % right;
+				return sp;
 			}
 		},
-
-		// -- Binary -- --
-
-		PLUS(6, "+")
+		PLUS(6, 2, "+")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left + right);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = left + right;
+				return sp;
 			}
 		},
-		MINUS(6, "-")
+		MINUS(6, 2, "-")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push(left - right);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = left - right;
+				return sp;
 			}
 		},
 
 		// -- Binary -- round --
 
-		ROUND(5, "round")
+		ROUND(5, 2, "round")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				int digits = (int) (double) operands.pop();
-				double value = operands.pop();
-				value = round(value, digits);
-				operands.push(value);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = round(left, (int) right);
+				return sp;
 			}
 		},
 
 		// -- Binary -- --
 
-		EQ(4, "=")
+		EQ(4, 2, "=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left == right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left == right) ? 1. : 0.;
+				return sp;
 			}
 		},
-		NEQ(4, "!=")
+		NEQ(4, 2, "!=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left != right) ? 1. : 0.;
+				return sp;
 			}
 		},
-		LE(4, "<")
+		LE(4, 2, "<")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left < right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left < right) ? 1. : 0.;
+				return sp;
 			}
 		},
-		GR(4, ">")
+		GR(4, 2, ">")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left > right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left > right) ? 1. : 0.;
+				return sp;
 			}
 		},
-		LEQ(4, "<=")
+		LEQ(4, 2, "<=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left <= right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left <= right) ? 1. : 0.;
+				return sp;
 			}
 		},
-		GEQ(4, ">=")
+		GEQ(4, 2, ">=")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left >= right) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left >= right) ? 1. : 0.;
+				return sp;
 			}
 		},
 
 		// -- Binary -- --
 
-		AND(3, "and")
+		AND(3, 2, "and")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != 0 && right != 0) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left != 0 && right != 0) ? 1. : 0.;
+				return sp;
 			}
 		},
-		OR(2, "or")
+		OR(2, 2, "or")
 		{
 			@Override
-			public void apply(Stack<Double> operands) throws ExprError
+			public int apply(double[] stack, int sp) throws ExprError
 			{
-				requireTwoOps(this, operands);
-				double right = operands.pop();
-				double left = operands.pop();
-				operands.push((left != 0 || right != 0) ? 1. : 0.);
+				double right = stack[--sp];
+				double left = stack[sp - 1];
+				stack[sp - 1] = (left != 0 || right != 0) ? 1. : 0.;
+				return sp;
 			}
 		},
 
 		// -- Binary -- --
 
-		LPAREN(-1, "(")
+		LPAREN(-1, 0, "(")
 		{
 			@Override
-			public void apply(Stack<Double> operands)
+			public int apply(double[] stack, int sp)
 			{
 				throw new AssertionError();
 			}
 		},
-		RPAREN(-1, ")")
+		RPAREN(-1, 0, ")")
 		{
 			@Override
-			public void apply(Stack<Double> operands)
+			public int apply(double[] stack, int sp)
 			{
 				throw new AssertionError();
 			}
@@ -863,25 +1036,39 @@ public class ExprParser
 
 		private final int precedence;
 
+		private final int arity;
+
 		private final String name;
 
 		// -----------------------------------------------------------------
 
-		Token(int precedence, String name)
+		Token(int precedence, int arity, String name)
 		{
 			this.name = name;
 			this.precedence = precedence;
+			this.arity = arity;
 		}
 
 		// -----------------------------------------------------------------
 
-		public abstract void apply(Stack<Double> operands) throws ExprError;
+		/**
+		 * Applies the operator to the top of the operand stack. The compiler
+		 * makes sure that the stack holds enough operands.
+		 * 
+		 * @return The new size of the stack.
+		 */
+		public abstract int apply(double[] stack, int sp) throws ExprError;
 
 		public int getPrecedence()
 		{
 			return precedence;
 		}
 
+		public int getArity()
+		{
+			return arity;
+		}
+
 		@Override
 		public String toString()
 		{
@@ -890,18 +1077,6 @@ public class ExprParser
 
 		// -----------------------------------------------------------------
 
-		private static void requireOneOp(Token op, Stack<Double> operands) throws ExprError
-		{
-			if (operands.isEmpty())
-				throw new ExprError("Missing operand for %s.", op.toString());
-		}
-
-		private static void requireTwoOps(Token op, Stack<Double> operands) throws ExprError
-		{
-			if (operands.size() < 2)
-				throw new ExprError("Missing operand for %s.", op.toString());
-		}
-
 		private static double round(double value, int digits)
 		{
 			return new BigDecimal(value)
@@ -76,11 +76,10 @@ public class ParserFunctionIfExpr
 		if (expr.isEmpty())
 			return false;
 
-		ExprParser p = new ExprParser();
 		String result;
 		try
 		{
-			result = p.parse(expr);
+			result = ExprParser.compile(expr).evaluate();
 		}
 		catch (ExprError e)
 		{
@@ -17,7 +17,15 @@
 
 package org.sweble.wikitext.engine.ext.parser_functions;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sweble.wikitext.engine.ExpansionFrame;
 import org.sweble.wikitext.engine.config.WikiConfig;
@@ -33,6 +41,17 @@ public class ParserFunctionSwitch
 {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The compiled cases of the #switch statements evaluated so far, keyed by
+	 * the identity of their template arguments node. Statements whose cases
+	 * cannot be compiled are mapped to Boolean.FALSE. The pre-processed ASTs
+	 * themselves are shared by concurrent expansions and caches and must not
+	 * be modified.
+	 */
+	private transient CompiledSwitches compiledSwitches = new CompiledSwitches();
+
+	// =========================================================================
+
 	/**
 	 * For un-marshaling only.
 	 */
@@ -55,9 +74,109 @@ public class ParserFunctionSwitch
 		if (args.size() < 1)
 			return nf().list();
 
+		CompiledSwitch compiled = getCompiledSwitch(pfn, args);
+		if (compiled != null)
+			return compiled.evaluate(frame, args.get(0));
+
 		return new Evaluator(frame, args).evaluate();
 	}
 
+	/**
+	 * Compiles the cases of a #switch statement once per template arguments
+	 * node. The arguments node is shared by all expansions of the statement,
+	 * even if the name of the template has to be expanded first (e.g.
+	 * {{#switch:{{{1}}}|...}}).
+	 * 
+	 * @return The compiled cases or null if a case label is not plain text
+	 *         and has to be expanded on each evaluation.
+	 */
+	private CompiledSwitch getCompiledSwitch(
+			WtTemplate pfn,
+			List<? extends WtNode> args)
+	{
+		if (args.size() < 2)
+			return null;
+
+		WtNode argsNode = pfn.getArgs();
+		if (argsNode.size() != args.size() - 1)
+			return null;
+
+		Object compiled = compiledSwitches.get(argsNode);
+		if (compiled == null)
+		{
+			// Concurrent expansions may compile the same statement twice.
+			compiled = compile(args);
+			if (compiled == null)
+				compiled = Boolean.FALSE;
+			compiledSwitches.put(argsNode, compiled);
+		}
+
+		return (compiled instanceof CompiledSwitch) ?
+				(CompiledSwitch) compiled :
+				null;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		compiledSwitches = new CompiledSwitches();
+	}
+
+	private CompiledSwitch compile(List<? extends WtNode> args)
+	{
+		int count = args.size() - 1;
+
+		String[] labels = new String[count];
+		WtNodeList[] befores = new WtNodeList[count];
+		WtNodeList[] afters = new WtNodeList[count];
+
+		for (int i = 0; i < count; ++i)
+		{
+			WtNode arg = args.get(i + 1);
+			if (!arg.isNodeType(WtNode.NT_NODE_LIST))
+				return null;
+
+			StringBuilder label = new StringBuilder();
+			WtNodeList before = nf().list();
+			WtNodeList after = null;
+			for (WtNode c : arg)
+			{
+				if (after != null)
+				{
+					after.add(c);
+				}
+				else if (c.isNodeType(WtNode.NT_TEXT))
+				{
+					String text = ((WtText) c).getContent();
+
+					int j = text.indexOf('=');
+					if (j != -1)
+					{
+						label.append(text, 0, j);
+						before.add(nf().text(text.substring(0, j)));
+						after = nf().list(nf().text(text.substring(j + 1)));
+					}
+					else
+					{
+						label.append(text);
+						before.add(c);
+					}
+				}
+				else
+				{
+					// The label has to be expanded
+					return null;
+				}
+			}
+
+			labels[i] = label.toString().trim();
+			befores[i] = before;
+			afters[i] = after;
+		}
+
+		return new CompiledSwitch(labels, befores, afters);
+	}
+
 	private final class Evaluator
 	{
 		private ExpansionFrame frame;
@@ -181,18 +300,6 @@ public class ParserFunctionSwitch
 			return (cmp != null) && cmp.equals(cmp2);
 		}
 
-		private Double strToDbl(String str)
-		{
-			try
-			{
-				return Double.parseDouble(str);
-			}
-			catch (NumberFormatException e)
-			{
-				return null;
-			}
-		}
-
 		private void splitNodeListAtEquals(int i)
 		{
 			for (WtNode c : args.get(i))
@@ -231,4 +338,194 @@ public class ParserFunctionSwitch
 			}
 		}
 	}
+
+	// =========================================================================
+
+	private static Double strToDbl(String str)
+	{
+		try
+		{
+			return Double.parseDouble(str);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * The cases of a #switch statement whose labels are plain text. Finding
+	 * the matching case takes constant time. The result is the same as the
+	 * one of the Evaluator which compares the test string against each case
+	 * in turn:
+	 * <ul>
+	 * <li>The first case whose label equals the test string (as text or
+	 * numerically) matches.</li>
+	 * <li>If the matching case has no value, the value of the next case which
+	 * has one is used (fall-through).</li>
+	 * <li>Otherwise the value of the last #default case in front of the
+	 * matching case (or of all #default cases if nothing matched) is used.</li>
+	 * <li>If there is none and the last case has no value, the last case is
+	 * the result.</li>
+	 * </ul>
+	 */
+	private final class CompiledSwitch
+	{
+		private final int count;
+
+		private final Map<String, Integer> textIndex;
+
+		private final Map<Double, Integer> numberIndex;
+
+		/**
+		 * The value of the first case at or after index i which has a value.
+		 */
+		private final WtNodeList[] nextValue;
+
+		/**
+		 * The value of the last #default case in front of index i.
+		 */
+		private final WtNodeList[] defaultValue;
+
+		private final WtNodeList implicitDefault;
+
+		public CompiledSwitch(
+				String[] labels,
+				WtNodeList[] befores,
+				WtNodeList[] afters)
+		{
+			this.count = labels.length;
+			this.textIndex = new HashMap<String, Integer>(count * 2);
+			this.numberIndex = new HashMap<Double, Integer>();
+
+			for (int i = 0; i < count; ++i)
+			{
+				String label = labels[i];
+				if (label.equals("#default"))
+					continue;
+
+				if (!textIndex.containsKey(label))
+					textIndex.put(label, i);
+
+				Double number = strToDbl(label);
+				if (number != null && !numberIndex.containsKey(number))
+					numberIndex.put(number, i);
+			}
+
+			this.nextValue = new WtNodeList[count + 1];
+			for (int i = count - 1; i >= 0; --i)
+				nextValue[i] = (afters[i] != null) ? afters[i] : nextValue[i + 1];
+
+			this.defaultValue = new WtNodeList[count + 1];
+			for (int i = 0; i < count; ++i)
+			{
+				defaultValue[i + 1] = labels[i].equals("#default") ?
+						afters[i] :
+						defaultValue[i];
+			}
+
+			this.implicitDefault = (afters[count - 1] == null) ?
+					befores[count - 1] :
+					null;
+		}
+
+		public WtNode evaluate(ExpansionFrame frame, WtNode test)
+		{
+			WtNode arg0 = frame.expand(test);
+
+			int match = count;
+			try
+			{
+				String cmp = tu().astToText(arg0).trim();
+
+				Integer i = textIndex.get(cmp);
+				if (i != null)
+					match = i;
+
+				Double icmp = strToDbl(cmp);
+				if (icmp != null)
+				{
+					i = numberIndex.get(icmp);
+					if (i != null && i < match)
+						match = i;
+				}
+			}
+			catch (StringConversionException e)
+			{
+				// FIXME: Do recursive equality check
+			}
+
+			if (nextValue[match] != null)
+				return nextValue[match];
+
+			if (defaultValue[match] != null)
+				return defaultValue[match];
+
+			return implicitDefault;
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * A thread-safe map which compares its keys by identity and only holds
+	 * them weakly. Entries disappear once the pre-processed AST the arguments
+	 * node belongs to is no longer used.
+	 */
+	private static final class CompiledSwitches
+	{
+		private final ConcurrentHashMap<NodeRef, Object> map =
+				new ConcurrentHashMap<NodeRef, Object>();
+
+		private final ReferenceQueue<WtNode> collected =
+				new ReferenceQueue<WtNode>();
+
+		public Object get(WtNode argsNode)
+		{
+			return map.get(new NodeRef(argsNode, null));
+		}
+
+		public void put(WtNode argsNode, Object compiled)
+		{
+			Reference<? extends WtNode> ref;
+			while ((ref = collected.poll()) != null)
+				map.remove(ref);
+
+			map.put(new NodeRef(argsNode, collected), compiled);
+		}
+	}
+
+	private static final class NodeRef
+			extends
+				WeakReference<WtNode>
+	{
+		private final int hash;
+
+		public NodeRef(WtNode node, ReferenceQueue<WtNode> queue)
+		{
+			super(node, queue);
+			this.hash = System.identityHashCode(node);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			WtNode node = get();
+			return (node != null) && (node == ((NodeRef) obj).get());
+		}
+	}
 }
@@ -17,8 +17,7 @@
 
 package org.sweble.wikitext.engine.ext.parser_functions;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.Locale;
 
@@ -38,6 +37,8 @@ public class ParserFunctionTime
 {
 	private static final long serialVersionUID = 1L;
 
+	private static final Locale ENGLISH = new Locale("en");
+
 	/**
 	 * For un-marshaling only.
 	 */
@@ -92,48 +93,16 @@ public class ParserFunctionTime
 		if (languageTag != null && !languageTag.isEmpty())
 			return notYetImplemented(_("Cannot handle non-empty language argument!"));
 
-		languageTag = "en";
-
 		// ---- let's format ourselves a date...
 
-		Locale locale = new Locale(languageTag);
+		Locale locale = ENGLISH;
 
-		Calendar timestamp = getWikiConfig().getRuntimeInfo().getDateAndTime(locale);
+		// Formatting the current time makes the expansion volatile.
+		frame.setVolatile();
 
-		return format(format, timestamp, locale);
-	}
-
-	private WtNode format(String format, Calendar timestamp, Locale locale)
-	{
-		StringBuilder sb = new StringBuilder();
+		ZonedDateTime timestamp = frame.getRenderClock().getDateAndTime(locale);
 
-		for (int i = 0; i < format.length(); ++i)
-		{
-			char ch = format.charAt(i);
-			switch (ch)
-			{
-				case 'j':
-					sb.append(timestamp.get(GregorianCalendar.DAY_OF_MONTH));
-					break;
-
-				case 'Y':
-					sb.append(timestamp.get(GregorianCalendar.YEAR));
-					break;
-
-				case 'F':
-					sb.append(timestamp.getDisplayName(
-							GregorianCalendar.MONTH,
-							GregorianCalendar.LONG,
-							locale));
-					break;
-
-				default:
-					sb.append(ch);
-					break;
-			}
-		}
-
-		return nf().text(sb.toString());
+		return nf().text(TimeFormat.compile(format).format(timestamp, locale));
 	}
 
 	private String _(String string, Object... args)
@@ -146,9 +115,7 @@ public class ParserFunctionTime
 			List<? extends WtNode> args,
 			final int index)
 	{
-		WtNode arg = preprocessorFrame.expand(args.get(index));
-
-		tu().trim(arg);
+		WtNode arg = tu().trim(preprocessorFrame.expand(args.get(index)));
 
 		String format = null;
 		try
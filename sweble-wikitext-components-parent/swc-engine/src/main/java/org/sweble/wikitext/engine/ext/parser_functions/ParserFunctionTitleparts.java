@@ -48,6 +48,12 @@ public class ParserFunctionTitleparts
 		super(wikiConfig, "titleparts");
 	}
 
+	@Override
+	public boolean isPure()
+	{
+		return true;
+	}
+
 	@Override
 	public WtNode invoke(
 			WtTemplate pfn,
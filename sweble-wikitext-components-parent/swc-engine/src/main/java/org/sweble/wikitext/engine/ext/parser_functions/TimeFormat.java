@@ -0,0 +1,177 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.ext.parser_functions;
+
+import java.time.Month;
+import java.time.ZonedDateTime;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sweble.wikitext.engine.cache.WeightedLruCache;
+
+/**
+ * A #time format string compiled into a sequence of literal text and format
+ * codes. Compiled formats are cached by the text of the format string and are
+ * immutable.
+ * 
+ * Supported format codes: "j" (day of month), "Y" (year) and "F" (full name
+ * of the month). All other characters are copied literally.
+ */
+final class TimeFormat
+{
+	/**
+	 * 256K characters of format strings.
+	 */
+	private static final long MAX_CACHE_WEIGHT = 256L * 1024;
+
+	private static final WeightedLruCache<String, TimeFormat> FORMATS =
+			new WeightedLruCache<String, TimeFormat>(MAX_CACHE_WEIGHT);
+
+	private static final ConcurrentHashMap<Locale, String[]> MONTH_NAMES =
+			new ConcurrentHashMap<Locale, String[]>();
+
+	/**
+	 * Marks an element which is literal text.
+	 */
+	private static final char LITERAL = '\0';
+
+	// =========================================================================
+
+	private final char[] codes;
+
+	private final String[] literals;
+
+	// =========================================================================
+
+	private TimeFormat(char[] codes, String[] literals)
+	{
+		this.codes = codes;
+		this.literals = literals;
+	}
+
+	// =========================================================================
+
+	public static TimeFormat compile(String format)
+	{
+		TimeFormat compiled = FORMATS.get(format);
+		if (compiled == null)
+		{
+			compiled = doCompile(format);
+			FORMATS.put(format, compiled, format.length() + 1);
+		}
+		return compiled;
+	}
+
+	private static TimeFormat doCompile(String format)
+	{
+		ArrayList<Character> codes = new ArrayList<Character>();
+		ArrayList<String> literals = new ArrayList<String>();
+
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < format.length(); ++i)
+		{
+			char ch = format.charAt(i);
+			switch (ch)
+			{
+				case 'j':
+				case 'Y':
+				case 'F':
+					if (literal.length() > 0)
+					{
+						codes.add(LITERAL);
+						literals.add(literal.toString());
+						literal.setLength(0);
+					}
+					codes.add(ch);
+					literals.add(null);
+					break;
+
+				default:
+					literal.append(ch);
+					break;
+			}
+		}
+
+		if (literal.length() > 0)
+		{
+			codes.add(LITERAL);
+			literals.add(literal.toString());
+		}
+
+		char[] codesArray = new char[codes.size()];
+		for (int i = 0; i < codesArray.length; ++i)
+			codesArray[i] = codes.get(i);
+
+		return new TimeFormat(
+				codesArray,
+				literals.toArray(new String[literals.size()]));
+	}
+
+	// =========================================================================
+
+	public String format(ZonedDateTime timestamp, Locale locale)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < codes.length; ++i)
+		{
+			switch (codes[i])
+			{
+				case LITERAL:
+					sb.append(literals[i]);
+					break;
+
+				case 'j':
+					sb.append(timestamp.getDayOfMonth());
+					break;
+
+				case 'Y':
+					sb.append(timestamp.getYear());
+					break;
+
+				case 'F':
+					sb.append(getMonthNames(locale)[timestamp.getMonthValue() - 1]);
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	// =========================================================================
+
+	/**
+	 * Returns the full names of the twelve months in the given locale. The
+	 * names are looked up only once per locale.
+	 */
+	static String[] getMonthNames(Locale locale)
+	{
+		String[] names = MONTH_NAMES.get(locale);
+		if (names == null)
+		{
+			names = new String[12];
+			for (int m = 0; m < 12; ++m)
+				names[m] = Month.of(m + 1).getDisplayName(TextStyle.FULL, locale);
+
+			String[] previous = MONTH_NAMES.putIfAbsent(locale, names);
+			if (previous != null)
+				names = previous;
+		}
+		return names;
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.nodes;
+
+import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
+
+public class EngLogBudgetExceeded
+		extends
+			EngLogLeafNode
+{
+	private static final long serialVersionUID = 1L;
+
+	// =========================================================================
+
+	protected EngLogBudgetExceeded()
+	{
+	}
+
+	protected EngLogBudgetExceeded(String budget, Long limit)
+	{
+		setBudget(budget);
+		setLimit(limit);
+	}
+
+	// =========================================================================
+	// Properties
+
+	private String budget;
+
+	public final String getBudget()
+	{
+		return this.budget;
+	}
+
+	public final void setBudget(String budget)
+	{
+		this.budget = budget;
+	}
+
+	private Long limit;
+
+	public final Long getLimit()
+	{
+		return this.limit;
+	}
+
+	public final void setLimit(Long limit)
+	{
+		this.limit = limit;
+	}
+
+	@Override
+	public final int getPropertyCount()
+	{
+		return 2;
+	}
+
+	@Override
+	public final AstNodePropertyIterator propertyIterator()
+	{
+		return new AstNodePropertyIterator()
+		{
+			@Override
+			protected int getPropertyCount()
+			{
+				return 2;
+			}
+
+			@Override
+			protected String getName(int index)
+			{
+				switch (index)
+				{
+					case 0:
+						return "budget";
+					case 1:
+						return "limit";
+
+					default:
+						throw new IndexOutOfBoundsException();
+				}
+			}
+
+			@Override
+			protected Object getValue(int index)
+			{
+				switch (index)
+				{
+					case 0:
+						return EngLogBudgetExceeded.this.getBudget();
+					case 1:
+						return EngLogBudgetExceeded.this.getLimit();
+
+					default:
+						throw new IndexOutOfBoundsException();
+				}
+			}
+
+			@Override
+			protected Object setValue(int index, Object value)
+			{
+				switch (index)
+				{
+					case 0:
+					{
+						String old = EngLogBudgetExceeded.this.getBudget();
+						EngLogBudgetExceeded.this.setBudget((String) value);
+						return old;
+					}
+					case 1:
+					{
+						Long old = EngLogBudgetExceeded.this.getLimit();
+						EngLogBudgetExceeded.this.setLimit((Long) value);
+						return old;
+					}
+
+					default:
+						throw new IndexOutOfBoundsException();
+				}
+			}
+		};
+	}
+}
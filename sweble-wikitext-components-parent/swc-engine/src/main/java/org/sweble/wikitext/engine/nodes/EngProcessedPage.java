@@ -25,6 +25,12 @@ import de.fau.cs.osr.ptk.common.Warning;
 import de.fau.cs.osr.ptk.common.ast.AstNodePropertyIterator;
 import de.fau.cs.osr.ptk.common.ast.Uninitialized;
 
+/**
+ * The result of processing a page. Pages returned by the public methods of
+ * WtEngineImpl own their AST. Pages passed between expansion frames (e.g.
+ * the result of a transclusion) share subtrees with the caches of the engine
+ * and must not be modified.
+ */
 public class EngProcessedPage
 		extends
 			WtInnerNode2
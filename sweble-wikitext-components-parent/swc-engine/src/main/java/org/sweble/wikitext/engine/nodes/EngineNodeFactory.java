@@ -95,6 +95,11 @@ public interface EngineNodeFactory
 
 	EngLogUnhandledError logUnhandledError(Throwable exception, String dump);
 
+	default EngLogBudgetExceeded logBudgetExceeded(String budget, Long limit)
+	{
+		return new EngLogBudgetExceeded(budget, limit);
+	}
+
 	// --[ Modification ]-------------------------------------------------------
 
 	<T extends WtXmlElement> T addCssClass(T elem, String cssClass);
@@ -212,6 +212,12 @@ public final class EngineNodeFactoryImpl
 		return new EngLogUnhandledError(exception, dump);
 	}
 
+	@Override
+	public EngLogBudgetExceeded logBudgetExceeded(String budget, Long limit)
+	{
+		return new EngLogBudgetExceeded(budget, limit);
+	}
+
 	// --[ Modification ]-------------------------------------------------------
 
 	@Override
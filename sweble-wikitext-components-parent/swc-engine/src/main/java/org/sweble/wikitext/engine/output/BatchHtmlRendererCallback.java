@@ -0,0 +1,53 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.PageTitle;
+
+/**
+ * A renderer callback which can resolve multiple link targets at once.
+ * 
+ * If the callback passed to the HtmlRenderer implements this interface, the
+ * renderer collects the targets of all internal links and image links of a
+ * page before it renders the page and resolves them with one call to each of
+ * the methods below. Targets which are missing from the returned maps are
+ * resolved link by link through the methods of HtmlRendererCallback.
+ */
+public interface BatchHtmlRendererCallback
+		extends
+			HtmlRendererCallback
+{
+	/**
+	 * Determines which of the given link targets exist.
+	 * 
+	 * @return A map from the given titles to whether the respective page
+	 *         exists.
+	 */
+	Map<PageTitle, Boolean> resourcesExist(Collection<PageTitle> targets);
+
+	/**
+	 * Retrieves the media info for the given image links.
+	 * 
+	 * @return A map from the given requests to the retrieved media info.
+	 *         Files which do not exist must be mapped to null.
+	 */
+	Map<MediaRequest, MediaInfo> getMediaInfo(Collection<MediaRequest> requests);
+}
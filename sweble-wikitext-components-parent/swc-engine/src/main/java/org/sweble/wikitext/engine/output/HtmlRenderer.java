@@ -21,6 +21,8 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -189,7 +191,7 @@ public class HtmlRenderer
 		{
 			p.indentAtBol();
 
-			pt("<a rel=\"nofollow\" class=\"external text\" href=\"%s\">%!</a>",
+			pt(EXTERNAL_LINK,
 					callback.makeUrl(n.getTarget()),
 					n.getTitle());
 		}
@@ -225,7 +227,7 @@ public class HtmlRenderer
 
 		final String cp = n.getCodePoint();
 		for (int i = 0; i < cp.length(); ++i)
-			pf("&amp;#%d;", (int) cp.charAt(i));
+			pt(ILLEGAL_CODE_POINT, (int) cp.charAt(i));
 	}
 
 	public void visit(WtImageLink n)
@@ -246,30 +248,13 @@ public class HtmlRenderer
 			throw new VisitingException(e);
 		}
 
-		int imgWidth = n.getWidth();
-		int imgHeight = n.getHeight();
-
-		switch (n.getFormat())
-		{
-			case THUMBNAIL: // FALL THROUGH
-			case FRAMELESS:
-				if (imgWidth <= 0)
-					imgWidth = 180;
-				break;
-			default:
-				break;
-		}
-
-		if (n.getUpright())
-		{
-			imgWidth = 140;
-			imgHeight = -1;
-		}
+		int imgWidth = getRequestedWidth(n);
+		int imgHeight = getRequestedHeight(n);
 
 		MediaInfo info;
 		try
 		{
-			info = callback.getMediaInfo(
+			info = getMediaInfo(
 					target.getNormalizedFullTitle(),
 					imgWidth,
 					imgHeight);
@@ -291,7 +276,7 @@ public class HtmlRenderer
 				imgWidth = altWidth;
 				try
 				{
-					info = callback.getMediaInfo(
+					info = getMediaInfo(
 							target.getNormalizedFullTitle(),
 							imgWidth,
 							imgHeight);
@@ -382,7 +367,7 @@ public class HtmlRenderer
 		// -- <a> classes
 
 		if (!aClasses.isEmpty())
-			aClasses = String.format(" class=\"%s\"", aClasses.trim());
+			aClasses = " class=\"" + aClasses.trim() + "\"";
 
 		// -- <a> title --
 
@@ -403,7 +388,7 @@ public class HtmlRenderer
 			}
 		}
 		if (!aTitle.isEmpty())
-			aTitle = String.format(" title=\"%s\"", aTitle);
+			aTitle = " title=\"" + aTitle + "\"";
 
 		// -- width & height --
 
@@ -450,20 +435,20 @@ public class HtmlRenderer
 			{
 				thumb = "thumb";
 				inner = "thumbinner";
-				style = String.format(" style=\"width:%dpx;\"", width + 2);
+				style = " style=\"width:" + (width + 2) + "px;\"";
 			}
 
 			p.indent();
-			pf("<div class=\"%s\">", (thumb + align).trim());
+			pt(DIV_WITH_CLASS, (thumb + align).trim());
 			p.incIndent();
 			p.indent();
-			pf("<div class=\"%s\"%s>", inner, style);
+			pt(DIV_WITH_CLASS_AND_STYLE, inner, style);
 			p.println();
 			p.incIndent();
 
 			aTitle = "";
 			if (!exists)
-				aTitle = String.format(" title=\"%s\"", makeImageTitle(n, target));
+				aTitle = " title=\"" + makeImageTitle(n, target) + "\"";
 		}
 		else
 		{
@@ -477,20 +462,20 @@ public class HtmlRenderer
 		p.indentAtBol();
 		if (linkTarget != null || linkUrl != null)
 		{
-			pf("<a href=\"%s\"%s%s>",
+			pt(IMAGE_LINK,
 					linkTarget != null ? callback.makeUrl(linkTarget) : callback.makeUrl(linkUrl),
 					aClasses,
 					aTitle);
 		}
 
 		if (!imgClasses.isEmpty())
-			imgClasses = String.format(" class=\"%s\"", imgClasses.trim());
+			imgClasses = " class=\"" + imgClasses.trim() + "\"";
 
 		if (exists)
 		{
 			if (isImage)
 			{
-				pt("<img alt=\"%s\" src=\"%s\" width=\"%d\" height=\"%d\"%s />",
+				pt(IMAGE,
 						alt.trim(),
 						imgUrl,
 						width,
@@ -519,7 +504,7 @@ public class HtmlRenderer
 				p.indentln("<div class=\"magnify\">");
 				p.incIndent();
 				p.indent();
-				pf("<a href=\"%s\" class=\"internal\" title=\"Enlarge\"><img src=\"/mediawiki/skins/common/images/magnify-clip.png\" width=\"15\" height=\"11\" alt=\"\" /></a>",
+				pt(MAGNIFY,
 						callback.makeUrl(linkTarget));
 				p.decIndent();
 				p.indentln("</div>");
@@ -530,7 +515,7 @@ public class HtmlRenderer
 			else
 			{
 				p.indent();
-				pt("<div class=\"thumbcaption\">%!</div>", n.getTitle());
+				pt(THUMB_CAPTION, n.getTitle());
 			}
 		}
 
@@ -581,7 +566,7 @@ public class HtmlRenderer
 		if (target.getNamespace() == wikiConfig.getNamespace("Category"))
 			return;
 
-		if (!callback.resourceExists(target))
+		if (!resourceExists(target))
 		{
 			String title = target.getDenormalizedFullTitle();
 
@@ -589,7 +574,7 @@ public class HtmlRenderer
 
 			if (n.hasTitle())
 			{
-				pt("<a href=\"%s\" class=\"new\" title=\"%s (page does not exist)\">%=%!%=</a>",
+				pt(MISSING_LINK_WITH_TITLE,
 						callback.makeUrlMissingTarget(path),
 						title,
 						n.getPrefix(),
@@ -600,7 +585,7 @@ public class HtmlRenderer
 			{
 				String linkText = makeTitleFromTarget(n, target);
 
-				pt("<a href=\"%s\" class=\"new\" title=\"%s (page does not exist)\">%=%=%=</a>",
+				pt(MISSING_LINK,
 						callback.makeUrlMissingTarget(path),
 						title,
 						n.getPrefix(),
@@ -614,7 +599,7 @@ public class HtmlRenderer
 			{
 				if (n.hasTitle())
 				{
-					pt("<a href=\"%s\" title=\"%s\">%=%!%=</a>",
+					pt(LINK_WITH_TITLE,
 							callback.makeUrl(target),
 							makeLinkTitle(n, target),
 							n.getPrefix(),
@@ -623,7 +608,7 @@ public class HtmlRenderer
 				}
 				else
 				{
-					pt("<a href=\"%s\" title=\"%s\">%=%=%=</a>",
+					pt(LINK,
 							callback.makeUrl(target),
 							makeLinkTitle(n, target),
 							n.getPrefix(),
@@ -635,14 +620,14 @@ public class HtmlRenderer
 			{
 				if (n.hasTitle())
 				{
-					pt("<strong class=\"selflink\">%=%!%=</strong>",
+					pt(SELF_LINK_WITH_TITLE,
 							n.getPrefix(),
 							n.getTitle(),
 							n.getPostfix());
 				}
 				else
 				{
-					pt("<strong class=\"selflink\">%=%=%=</strong>",
+					pt(SELF_LINK,
 							n.getPrefix(),
 							makeTitleFromTarget(n, target),
 							n.getPostfix());
@@ -794,7 +779,7 @@ public class HtmlRenderer
 	public void visit(WtSection n)
 	{
 		p.indent();
-		pt("<h%d><span class=\"mw-headline\" id=\"%s\">%!</span></h%d>",
+		pt(SECTION,
 				n.getLevel(),
 				makeSectionTitle(n.getHeading()),
 				n.getHeading(),
@@ -808,7 +793,7 @@ public class HtmlRenderer
 	{
 		p.indent();
 		++inPre;
-		pt("<pre>%!</pre>", n);
+		pt(PRE, n);
 		--inPre;
 		p.println();
 	}
@@ -829,7 +814,7 @@ public class HtmlRenderer
 	public void visit(WtTable n)
 	{
 		p.indent();
-		pt("<table%!>", cleanAttribs(n.getXmlAttributes()));
+		pt(TABLE, cleanAttribs(n.getXmlAttributes()));
 		p.println();
 
 		p.incIndent();
@@ -843,7 +828,7 @@ public class HtmlRenderer
 	public void visit(WtTableCaption n)
 	{
 		p.indent();
-		pt("<caption%!>", cleanAttribs(n.getXmlAttributes()));
+		pt(TABLE_CAPTION, cleanAttribs(n.getXmlAttributes()));
 		p.println();
 		p.incIndent();
 		dispatch(getCellContent(n.getBody()));
@@ -854,7 +839,7 @@ public class HtmlRenderer
 	public void visit(WtTableCell n)
 	{
 		p.indent();
-		pt("<td%!>", cleanAttribs(n.getXmlAttributes()));
+		pt(TABLE_CELL, cleanAttribs(n.getXmlAttributes()));
 		p.println();
 		p.incIndent();
 		dispatch(getCellContent(n.getBody()));
@@ -865,7 +850,7 @@ public class HtmlRenderer
 	public void visit(WtTableHeader n)
 	{
 		p.indent();
-		pt("<th%!>", cleanAttribs(n.getXmlAttributes()));
+		pt(TABLE_HEADER, cleanAttribs(n.getXmlAttributes()));
 		p.println();
 		p.incIndent();
 		dispatch(getCellContent(n.getBody()));
@@ -890,7 +875,7 @@ public class HtmlRenderer
 		if (cellsDefined)
 		{
 			p.indent();
-			pt("<tr%!>", cleanAttribs(n.getXmlAttributes()));
+			pt(TABLE_ROW, cleanAttribs(n.getXmlAttributes()));
 			p.println();
 			p.incIndent();
 			dispatch(getCellContent(n.getBody()));
@@ -984,7 +969,7 @@ public class HtmlRenderer
 		p.indentAtBol();
 
 		String url = callback.makeUrl(n);
-		pf("<a href=\"%s\">%s</a>", url, url);
+		pt(URL, url, url);
 	}
 
 	@Override
@@ -1010,11 +995,12 @@ public class HtmlRenderer
 		{
 			if (n.hasValue())
 			{
-				pt(" %s=\"%~\"", n.getName().getAsString(), cleanAttribValue(n.getValue()));
+				pt(ATTRIBUTE, n.getName().getAsString(), cleanAttribValue(n.getValue()));
 			}
 			else
 			{
-				pf(" %s=\"%<s\"", n.getName().getAsString());
+				String name = n.getName().getAsString();
+				pt(ATTRIBUTE_WITHOUT_VALUE, name, name);
 			}
 		}
 	}
@@ -1045,7 +1031,7 @@ public class HtmlRenderer
 	public void visit(WtXmlCharRef n)
 	{
 		p.indentAtBol();
-		pf("&#%d;", n.getCodePoint());
+		pt(CHAR_REF, n.getCodePoint());
 	}
 
 	@Override
@@ -1061,30 +1047,30 @@ public class HtmlRenderer
 			if (blockElements.contains(n.getName().toLowerCase()))
 			{
 				p.indent();
-				pt("<%s%!>", n.getName(), cleanAttribs(n.getXmlAttributes()));
+				pt(START_TAG, n.getName(), cleanAttribs(n.getXmlAttributes()));
 				p.println();
 				p.incIndent();
 				dispatch(n.getBody());
 				p.decIndent();
 				p.indent();
-				pf("</%s>", n.getName());
+				pt(END_TAG, n.getName());
 				p.println();
 			}
 			else
 			{
 				p.indentAtBol();
-				pt("<%s%!>", n.getName(), cleanAttribs(n.getXmlAttributes()));
+				pt(START_TAG, n.getName(), cleanAttribs(n.getXmlAttributes()));
 				p.incIndent();
 				dispatch(n.getBody());
 				p.decIndent();
 				p.indentAtBol();
-				pf("</%s>", n.getName());
+				pt(END_TAG, n.getName());
 			}
 		}
 		else
 		{
 			p.indentAtBol();
-			pt("<%s%! />", n.getName(), cleanAttribs(n.getXmlAttributes()));
+			pt(EMPTY_TAG, n.getName(), cleanAttribs(n.getXmlAttributes()));
 		}
 	}
 
@@ -1101,7 +1087,7 @@ public class HtmlRenderer
 	public void visit(WtXmlEntityRef n)
 	{
 		p.indentAtBol();
-		pf("&%s;", n.getName());
+		pt(ENTITY_REF, n.getName());
 	}
 
 	public void visit(WtXmlStartTag n)
@@ -1111,6 +1097,147 @@ public class HtmlRenderer
 
 	// =====================================================================
 
+	@Override
+	protected WtNode before(WtNode node)
+	{
+		if (callback instanceof BatchHtmlRendererCallback)
+			resolveLinkTargets((BatchHtmlRendererCallback) callback, node);
+		return super.before(node);
+	}
+
+	/**
+	 * Resolves the targets of all internal links and image links of the given
+	 * tree with one call to the batch callback each.
+	 */
+	private void resolveLinkTargets(BatchHtmlRendererCallback batch, WtNode node)
+	{
+		Set<PageTitle> targets = new LinkedHashSet<PageTitle>();
+		Set<MediaRequest> media = new LinkedHashSet<MediaRequest>();
+		collectLinkTargets(node, targets, media);
+
+		if (!targets.isEmpty())
+			existence = batch.resourcesExist(targets);
+
+		if (!media.isEmpty())
+		{
+			try
+			{
+				mediaInfo = batch.getMediaInfo(media);
+			}
+			catch (Exception e)
+			{
+				throw new VisitingException(e);
+			}
+		}
+	}
+
+	/**
+	 * Mirrors how visit(WtInternalLink) and visit(WtImageLink) determine the
+	 * targets they look up.
+	 */
+	private void collectLinkTargets(
+			WtNode n,
+			Set<PageTitle> targets,
+			Set<MediaRequest> media)
+	{
+		switch (n.getNodeType())
+		{
+			case WtNode.NT_INTERNAL_LINK:
+			{
+				WtInternalLink link = (WtInternalLink) n;
+				PageTitle target = makeResolvedTarget(link.getTarget());
+				if (target != null
+						&& target.getNamespace() != wikiConfig.getNamespace("Category"))
+					targets.add(target);
+				break;
+			}
+
+			case WtNode.NT_IMAGE_LINK:
+			{
+				WtImageLink link = (WtImageLink) n;
+				PageTitle target = makeResolvedTarget(link.getTarget());
+				if (target != null)
+				{
+					media.add(new MediaRequest(
+							target.getNormalizedFullTitle(),
+							getRequestedWidth(link),
+							getRequestedHeight(link)));
+				}
+				break;
+			}
+		}
+
+		for (WtNode c : n)
+			collectLinkTargets(c, targets, media);
+	}
+
+	/**
+	 * @return The title or null if the target is not resolved or not a valid
+	 *         title. Invalid titles are reported when the link is rendered.
+	 */
+	private PageTitle makeResolvedTarget(WtPageName target)
+	{
+		if (!target.isResolved())
+			return null;
+
+		try
+		{
+			return PageTitle.make(wikiConfig, target.getAsString());
+		}
+		catch (LinkTargetException e)
+		{
+			return null;
+		}
+	}
+
+	private boolean resourceExists(PageTitle target)
+	{
+		if (existence != null)
+		{
+			Boolean exists = existence.get(target);
+			if (exists != null)
+				return exists;
+		}
+		return callback.resourceExists(target);
+	}
+
+	private MediaInfo getMediaInfo(String title, int width, int height)
+	{
+		if (mediaInfo != null)
+		{
+			MediaRequest request = new MediaRequest(title, width, height);
+			if (mediaInfo.containsKey(request))
+				return mediaInfo.get(request);
+		}
+		return callback.getMediaInfo(title, width, height);
+	}
+
+	private static int getRequestedWidth(WtImageLink n)
+	{
+		if (n.getUpright())
+			return 140;
+
+		int imgWidth = n.getWidth();
+		switch (n.getFormat())
+		{
+			case THUMBNAIL: // FALL THROUGH
+			case FRAMELESS:
+				if (imgWidth <= 0)
+					imgWidth = 180;
+				break;
+			default:
+				break;
+		}
+		return imgWidth;
+	}
+
+	private static int getRequestedHeight(WtImageLink n)
+	{
+		return n.getUpright() ? -1 : n.getHeight();
+	}
+
+	// =====================================================================
+
 	private void wrapText(String text)
 	{
 		if (inPre > 0)
@@ -1216,7 +1343,8 @@ public class HtmlRenderer
 			if (u < 0)
 			{
 				b.append('.');
-				b.append(String.format("%02X", u));
+				b.append(HEX_DIGITS[(u >> 4) & 0xF]);
+				b.append(HEX_DIGITS[u & 0xF]);
 			}
 			else if (u == ' ')
 			{
@@ -1421,16 +1549,11 @@ public class HtmlRenderer
 			String name = a.getName().getAsString().toLowerCase();
 			if (name.equals("align"))
 			{
-				newStyle = String.format(
-						"text-align: %s; ",
-						cleanAttribValue(a.getValue())) + newStyle;
+				newStyle = "text-align: " + cleanAttribValue(a.getValue()) + "; " + newStyle;
 			}
 			else
 			{
-				newStyle = String.format(
-						"%s: %s; ",
-						name,
-						cleanAttribValue(a.getValue())) + newStyle;
+				newStyle = name + ": " + cleanAttribValue(a.getValue()) + "; " + newStyle;
 			}
 		}
 
@@ -1484,12 +1607,117 @@ public class HtmlRenderer
 		return writer;
 	}
 
+	/**
+	 * Renders the given node as UTF-8 encoded HTML. To reuse the output
+	 * buffer for multiple pages, pass a Utf8ByteWriter to print() instead and
+	 * reset it after each page.
+	 */
+	public static <T extends WtNode> byte[] printUtf8(
+			HtmlRendererCallback callback,
+			WikiConfig wikiConfig,
+			PageTitle pageTitle,
+			T node)
+	{
+		Utf8ByteWriter out = new Utf8ByteWriter();
+		print(callback, wikiConfig, out, pageTitle, node);
+		return out.toByteArray();
+	}
+
 	// =========================================================================
 
 	protected static final Logger logger = LoggerFactory.getLogger(HtmlRenderer.class);
 
 	protected static final Set<String> blockElements = new HashSet<String>();
 
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private static final TreeTemplate EXTERNAL_LINK = TreeTemplate.compile(
+			"<a rel=\"nofollow\" class=\"external text\" href=\"%s\">%!</a>");
+
+	private static final TreeTemplate ILLEGAL_CODE_POINT = TreeTemplate.compile(
+			"&amp;#%d;");
+
+	private static final TreeTemplate DIV_WITH_CLASS = TreeTemplate.compile(
+			"<div class=\"%s\">");
+
+	private static final TreeTemplate DIV_WITH_CLASS_AND_STYLE = TreeTemplate.compile(
+			"<div class=\"%s\"%s>");
+
+	private static final TreeTemplate IMAGE_LINK = TreeTemplate.compile(
+			"<a href=\"%s\"%s%s>");
+
+	private static final TreeTemplate IMAGE = TreeTemplate.compile(
+			"<img alt=\"%s\" src=\"%s\" width=\"%d\" height=\"%d\"%s />");
+
+	private static final TreeTemplate MAGNIFY = TreeTemplate.compile(
+			"<a href=\"%s\" class=\"internal\" title=\"Enlarge\"><img src=\"/mediawiki/skins/common/images/magnify-clip.png\" width=\"15\" height=\"11\" alt=\"\" /></a>");
+
+	private static final TreeTemplate THUMB_CAPTION = TreeTemplate.compile(
+			"<div class=\"thumbcaption\">%!</div>");
+
+	private static final TreeTemplate MISSING_LINK_WITH_TITLE = TreeTemplate.compile(
+			"<a href=\"%s\" class=\"new\" title=\"%s (page does not exist)\">%=%!%=</a>");
+
+	private static final TreeTemplate MISSING_LINK = TreeTemplate.compile(
+			"<a href=\"%s\" class=\"new\" title=\"%s (page does not exist)\">%=%=%=</a>");
+
+	private static final TreeTemplate LINK_WITH_TITLE = TreeTemplate.compile(
+			"<a href=\"%s\" title=\"%s\">%=%!%=</a>");
+
+	private static final TreeTemplate LINK = TreeTemplate.compile(
+			"<a href=\"%s\" title=\"%s\">%=%=%=</a>");
+
+	private static final TreeTemplate SELF_LINK_WITH_TITLE = TreeTemplate.compile(
+			"<strong class=\"selflink\">%=%!%=</strong>");
+
+	private static final TreeTemplate SELF_LINK = TreeTemplate.compile(
+			"<strong class=\"selflink\">%=%=%=</strong>");
+
+	private static final TreeTemplate SECTION = TreeTemplate.compile(
+			"<h%d><span class=\"mw-headline\" id=\"%s\">%!</span></h%d>");
+
+	private static final TreeTemplate PRE = TreeTemplate.compile(
+			"<pre>%!</pre>");
+
+	private static final TreeTemplate TABLE = TreeTemplate.compile(
+			"<table%!>");
+
+	private static final TreeTemplate TABLE_CAPTION = TreeTemplate.compile(
+			"<caption%!>");
+
+	private static final TreeTemplate TABLE_CELL = TreeTemplate.compile(
+			"<td%!>");
+
+	private static final TreeTemplate TABLE_HEADER = TreeTemplate.compile(
+			"<th%!>");
+
+	private static final TreeTemplate TABLE_ROW = TreeTemplate.compile(
+			"<tr%!>");
+
+	private static final TreeTemplate URL = TreeTemplate.compile(
+			"<a href=\"%s\">%s</a>");
+
+	private static final TreeTemplate ATTRIBUTE = TreeTemplate.compile(
+			" %s=\"%~\"");
+
+	private static final TreeTemplate ATTRIBUTE_WITHOUT_VALUE = TreeTemplate.compile(
+			" %s=\"%s\"");
+
+	private static final TreeTemplate CHAR_REF = TreeTemplate.compile(
+			"&#%d;");
+
+	private static final TreeTemplate START_TAG = TreeTemplate.compile(
+			"<%s%!>");
+
+	private static final TreeTemplate END_TAG = TreeTemplate.compile(
+			"</%s>");
+
+	private static final TreeTemplate EMPTY_TAG = TreeTemplate.compile(
+			"<%s%! />");
+
+	private static final TreeTemplate ENTITY_REF = TreeTemplate.compile(
+			"&%s;");
+
 	protected final WikiConfig wikiConfig;
 
 	protected final PageTitle pageTitle;
@@ -1502,6 +1730,16 @@ public class HtmlRenderer
 
 	protected int inPre = 0;
 
+	/**
+	 * Link targets resolved by a BatchHtmlRendererCallback before rendering.
+	 */
+	private Map<PageTitle, Boolean> existence;
+
+	/**
+	 * Media info retrieved by a BatchHtmlRendererCallback before rendering.
+	 */
+	private Map<MediaRequest, MediaInfo> mediaInfo;
+
 	static
 	{
 		// left out del and ins, added table elements
@@ -17,7 +17,7 @@
 package org.sweble.wikitext.engine.output;
 
 import java.io.Writer;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sweble.wikitext.parser.nodes.WtNode;
@@ -44,14 +44,45 @@ public class HtmlRendererBase
 
 	protected static String esc(String content)
 	{
+		if (content != null && !needsEscaping(content, 0, content.length()))
+			return content;
 		return StringTools.escHtml(content);
 	}
 
 	protected static String esc(String content, boolean forAttribute)
 	{
+		if (content != null && !needsEscaping(content, 0, content.length()))
+			return content;
 		return StringTools.escHtml(content, forAttribute);
 	}
 
+	/**
+	 * Determines whether the given range of characters contains a character
+	 * which might have to be escaped. Only printable ASCII characters other
+	 * than &lt;, &gt;, &amp;, &quot; and ' are known to be safe, all other
+	 * characters are left to StringTools.escHtml().
+	 */
+	protected static boolean needsEscaping(CharSequence text, int start, int end)
+	{
+		for (int i = start; i < end; ++i)
+		{
+			char ch = text.charAt(i);
+			if (ch < 0x20 || ch > 0x7E)
+				return true;
+
+			switch (ch)
+			{
+				case '<':
+				case '>':
+				case '&':
+				case '"':
+				case '\'':
+					return true;
+			}
+		}
+		return false;
+	}
+
 	protected static String capitalize(String text)
 	{
 		return StringUtils.capitalize(text);
@@ -72,76 +103,75 @@ public class HtmlRendererBase
 	 */
 	protected void pt(String format, Object... args)
 	{
-		ArrayList<Object> a = new ArrayList<Object>(args.length);
+		pt(TreeTemplate.get(format), args);
+	}
+
+	/**
+	 * Print Tree using a precompiled format.
+	 */
+	protected void pt(TreeTemplate template, Object... args)
+	{
+		final byte[] ops = template.ops;
 
 		int arg = 0;
-		int last = 0;
-		for (int i = 0; i < format.length(); ++i)
+		for (int i = 0; i < ops.length; ++i)
 		{
-			char ch = format.charAt(i);
-			if (ch == '%' && format.length() > i + 1)
+			switch (ops[i])
 			{
-				char ch2 = format.charAt(i + 1);
-				switch (ch2)
+				case TreeTemplate.LITERAL:
+					p.print(template.texts[i]);
+					break;
+
+				case TreeTemplate.NODE:
 				{
-					case '!':
+					WtNode n = (WtNode) args[arg++];
+					if (n.isList())
 					{
-						printPart(format, a, last, i);
-						last = i + 2;
-
-						WtNode n = (WtNode) args[arg++];
-						if (n.isList())
-						{
-							iterate(n);
-						}
-						else
-						{
-							dispatch(n);
-						}
-						break;
+						iterate(n);
 					}
-
-					case '=': // Escape string for HTML
-					case '~': // Escape string for HTML attribute value
+					else
 					{
-						printPart(format, a, last, i);
-						last = i + 2;
+						dispatch(n);
+					}
+					break;
+				}
 
-						String s = (String) args[arg++];
-						p.print(esc(s, ch2 == '~'));
+				case TreeTemplate.ESC: // Escape string for HTML
+					p.print(esc((String) args[arg++], false));
+					break;
 
-						break;
-					}
+				case TreeTemplate.ESC_ATTR: // Escape string for HTML attribute value
+					p.print(esc((String) args[arg++], true));
+					break;
 
-					case '%':
-						break;
+				case TreeTemplate.STRING:
+					p.print(String.valueOf(args[arg++]));
+					break;
 
-					default:
-						a.add(args[arg++]);
-						break;
-				}
+				case TreeTemplate.DECIMAL:
+					p.print(decimal(args[arg++]));
+					break;
 
-				++i;
+				case TreeTemplate.FORMAT:
+				{
+					int count = template.argCounts[i];
+					Object[] a = Arrays.copyOfRange(args, arg, arg + count);
+					arg += count;
+					p.print(String.format(template.texts[i], a));
+					break;
+				}
 			}
 		}
-
-		printPart(format, a, last, format.length());
 	}
 
-	private void printPart(String format, ArrayList<Object> a, int last, int i)
+	private static String decimal(Object value)
 	{
-		if (i - last > 0)
-		{
-			String f = format.substring(last, i);
-			if (a.isEmpty())
-			{
-				p.print(f);
-			}
-			else
-			{
-				p.print(String.format(f, a.toArray()));
-				a.clear();
-			}
-		}
+		if (value instanceof Integer
+				|| value instanceof Long
+				|| value instanceof Short
+				|| value instanceof Byte)
+			return value.toString();
+
+		return String.format("%d", value);
 	}
 }
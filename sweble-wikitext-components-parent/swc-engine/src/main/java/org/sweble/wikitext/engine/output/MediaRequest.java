@@ -0,0 +1,99 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+/**
+ * The arguments of a call to HtmlRendererCallback.getMediaInfo().
+ */
+public final class MediaRequest
+{
+	private final String title;
+
+	private final int width;
+
+	private final int height;
+
+	// =========================================================================
+
+	public MediaRequest(String title, int width, int height)
+	{
+		this.title = title;
+		this.width = width;
+		this.height = height;
+	}
+
+	// =========================================================================
+
+	public String getTitle()
+	{
+		return title;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	// =========================================================================
+
+	@Override
+	public String toString()
+	{
+		return title + "@" + width + "x" + height;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + height;
+		result = prime * result + ((title == null) ? 0 : title.hashCode());
+		result = prime * result + width;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MediaRequest other = (MediaRequest) obj;
+		if (height != other.height)
+			return false;
+		if (title == null)
+		{
+			if (other.title != null)
+				return false;
+		}
+		else if (!title.equals(other.title))
+			return false;
+		if (width != other.width)
+			return false;
+		return true;
+	}
+}
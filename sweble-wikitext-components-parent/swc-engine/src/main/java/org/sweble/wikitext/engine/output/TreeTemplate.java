@@ -0,0 +1,267 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import java.util.ArrayList;
+
+import org.sweble.wikitext.engine.cache.WeightedLruCache;
+
+/**
+ * A format string of HtmlRendererBase.pt() compiled into a sequence of
+ * segments. Templates are immutable and should be compiled once, usually into
+ * a static field of the renderer.
+ * 
+ * The format syntax is the one of pt(): "%!" prints a node (or iterates a
+ * node list), "%=" prints a string escaped for HTML and "%~" prints a string
+ * escaped for an HTML attribute value. All other conversions are handled by
+ * String.format(). Literal text, "%s" and "%d" are printed without going
+ * through String.format().
+ */
+public final class TreeTemplate
+{
+	/**
+	 * 64K characters of format strings passed to pt() as strings.
+	 */
+	private static final long MAX_CACHE_WEIGHT = 64L * 1024;
+
+	private static final WeightedLruCache<String, TreeTemplate> TEMPLATES =
+			new WeightedLruCache<String, TreeTemplate>(MAX_CACHE_WEIGHT);
+
+	static final byte LITERAL = 0;
+
+	static final byte NODE = 1;
+
+	static final byte ESC = 2;
+
+	static final byte ESC_ATTR = 3;
+
+	static final byte STRING = 4;
+
+	static final byte DECIMAL = 5;
+
+	/**
+	 * A part of the format string which is passed to String.format() together
+	 * with the next argCounts[i] arguments.
+	 */
+	static final byte FORMAT = 6;
+
+	// =========================================================================
+
+	private final String format;
+
+	final byte[] ops;
+
+	final String[] texts;
+
+	final int[] argCounts;
+
+	// =========================================================================
+
+	private TreeTemplate(
+			String format,
+			byte[] ops,
+			String[] texts,
+			int[] argCounts)
+	{
+		this.format = format;
+		this.ops = ops;
+		this.texts = texts;
+		this.argCounts = argCounts;
+	}
+
+	// =========================================================================
+
+	/**
+	 * Compiles the given format string.
+	 */
+	public static TreeTemplate compile(String format)
+	{
+		return new Compiler(format).compile();
+	}
+
+	/**
+	 * Returns the compiled form of the given format string. Compiled formats
+	 * are cached by the text of the format string.
+	 */
+	public static TreeTemplate get(String format)
+	{
+		TreeTemplate template = TEMPLATES.get(format);
+		if (template == null)
+		{
+			template = compile(format);
+			TEMPLATES.put(format, template, format.length() + 1);
+		}
+		return template;
+	}
+
+	// =========================================================================
+
+	public String getFormat()
+	{
+		return format;
+	}
+
+	@Override
+	public String toString()
+	{
+		return format;
+	}
+
+	// =========================================================================
+
+	private static final class Compiler
+	{
+		private final String format;
+
+		private final ArrayList<Byte> ops = new ArrayList<Byte>();
+
+		private final ArrayList<String> texts = new ArrayList<String>();
+
+		private final ArrayList<Integer> argCounts = new ArrayList<Integer>();
+
+		// =====================================================================
+
+		public Compiler(String format)
+		{
+			this.format = format;
+		}
+
+		// =====================================================================
+
+		public TreeTemplate compile()
+		{
+			int last = 0;
+			for (int i = 0; i < format.length(); ++i)
+			{
+				if (format.charAt(i) == '%' && format.length() > i + 1)
+				{
+					byte op;
+					switch (format.charAt(i + 1))
+					{
+						case '!':
+							op = NODE;
+							break;
+						case '=':
+							op = ESC;
+							break;
+						case '~':
+							op = ESC_ATTR;
+							break;
+						default:
+							op = -1;
+							break;
+					}
+
+					if (op != -1)
+					{
+						compilePart(last, i);
+						add(op, null, 1);
+						last = i + 2;
+					}
+
+					++i;
+				}
+			}
+
+			compilePart(last, format.length());
+
+			byte[] opsArray = new byte[ops.size()];
+			int[] argCountsArray = new int[ops.size()];
+			for (int i = 0; i < opsArray.length; ++i)
+			{
+				opsArray[i] = ops.get(i);
+				argCountsArray[i] = argCounts.get(i);
+			}
+
+			return new TreeTemplate(
+					format,
+					opsArray,
+					texts.toArray(new String[texts.size()]),
+					argCountsArray);
+		}
+
+		/**
+		 * Compiles the text in between two node or string arguments. If the
+		 * part contains conversions other than "%s" and "%d" (or a "%%"), the
+		 * whole part is left to String.format(). A part without conversions
+		 * is printed as it is.
+		 */
+		private void compilePart(int from, int to)
+		{
+			if (to - from <= 0)
+				return;
+
+			String part = format.substring(from, to);
+
+			int conversions = 0;
+			boolean simple = true;
+			for (int i = 0; i < part.length(); ++i)
+			{
+				if (part.charAt(i) == '%')
+				{
+					if (part.length() > i + 1)
+					{
+						char ch = part.charAt(i + 1);
+						if (ch != '%')
+							++conversions;
+						if (ch != 's' && ch != 'd')
+							simple = false;
+						++i;
+					}
+					else
+					{
+						simple = false;
+					}
+				}
+			}
+
+			if (conversions == 0)
+			{
+				add(LITERAL, part, 0);
+			}
+			else if (!simple)
+			{
+				add(FORMAT, part, conversions);
+			}
+			else
+			{
+				int last = 0;
+				for (int i = 0; i < part.length(); ++i)
+				{
+					if (part.charAt(i) == '%')
+					{
+						if (i > last)
+							add(LITERAL, part.substring(last, i), 0);
+						add(part.charAt(i + 1) == 's' ? STRING : DECIMAL, null, 1);
+						last = i + 2;
+						++i;
+					}
+				}
+				if (part.length() > last)
+					add(LITERAL, part.substring(last), 0);
+			}
+		}
+
+		private void add(byte op, String text, int argCount)
+		{
+			ops.add(op);
+			texts.add(text);
+			argCounts.add(argCount);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A writer which encodes the written characters as UTF-8 straight into a
+ * growable byte array. Passing it to HtmlRenderer.print() avoids building the
+ * rendered page as a string and encoding that string a second time.
+ * 
+ * The buffer can be reused for the next page after calling reset(). Unpaired
+ * surrogates are encoded as '?', like String.getBytes() does.
+ */
+public final class Utf8ByteWriter
+		extends
+			Writer
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private byte[] buf;
+
+	private int count;
+
+	/**
+	 * A high surrogate waiting for its low surrogate or 0.
+	 */
+	private char pendingHigh;
+
+	// =========================================================================
+
+	public Utf8ByteWriter()
+	{
+		this(8192);
+	}
+
+	public Utf8ByteWriter(int initialCapacity)
+	{
+		this.buf = new byte[initialCapacity];
+	}
+
+	// =========================================================================
+
+	@Override
+	public void write(int c)
+	{
+		ensureCapacity(4);
+		encode((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len)
+	{
+		ensureCapacity(len * 3 + 1);
+		for (int i = off; i < off + len; ++i)
+			encode(cbuf[i]);
+	}
+
+	@Override
+	public void write(String str, int off, int len)
+	{
+		ensureCapacity(len * 3 + 1);
+		for (int i = off; i < off + len; ++i)
+			encode(str.charAt(i));
+	}
+
+	@Override
+	public Utf8ByteWriter append(CharSequence csq)
+	{
+		String str = String.valueOf(csq);
+		write(str, 0, str.length());
+		return this;
+	}
+
+	@Override
+	public Utf8ByteWriter append(CharSequence csq, int start, int end)
+	{
+		if (csq == null)
+			csq = "null";
+		ensureCapacity((end - start) * 3 + 1);
+		for (int i = start; i < end; ++i)
+			encode(csq.charAt(i));
+		return this;
+	}
+
+	@Override
+	public Utf8ByteWriter append(char c)
+	{
+		write(c);
+		return this;
+	}
+
+	@Override
+	public void flush()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+		finishPending();
+	}
+
+	// =========================================================================
+
+	/**
+	 * Discards the content but keeps the allocated buffer.
+	 */
+	public void reset()
+	{
+		count = 0;
+		pendingHigh = 0;
+	}
+
+	/**
+	 * @return The number of bytes written so far. A high surrogate still
+	 *         waiting for its low surrogate is not counted yet.
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	public byte[] toByteArray()
+	{
+		finishPending();
+		return Arrays.copyOf(buf, count);
+	}
+
+	/**
+	 * Returns a read-only view on the written bytes without copying them. The
+	 * view is only valid until the writer is written to or reset.
+	 */
+	public ByteBuffer toByteBuffer()
+	{
+		finishPending();
+		return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+	}
+
+	public void writeTo(OutputStream out) throws IOException
+	{
+		finishPending();
+		out.write(buf, 0, count);
+	}
+
+	@Override
+	public String toString()
+	{
+		finishPending();
+		return new String(buf, 0, count, UTF8);
+	}
+
+	// =========================================================================
+
+	private void encode(char c)
+	{
+		if (pendingHigh != 0)
+		{
+			char high = pendingHigh;
+			pendingHigh = 0;
+			if (Character.isLowSurrogate(c))
+			{
+				int cp = Character.toCodePoint(high, c);
+				buf[count++] = (byte) (0xF0 | (cp >> 18));
+				buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (cp & 0x3F));
+				return;
+			}
+			buf[count++] = '?';
+		}
+
+		if (c < 0x80)
+		{
+			buf[count++] = (byte) c;
+		}
+		else if (c < 0x800)
+		{
+			buf[count++] = (byte) (0xC0 | (c >> 6));
+			buf[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+		else if (Character.isHighSurrogate(c))
+		{
+			pendingHigh = c;
+		}
+		else if (Character.isLowSurrogate(c))
+		{
+			buf[count++] = '?';
+		}
+		else
+		{
+			buf[count++] = (byte) (0xE0 | (c >> 12));
+			buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buf[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void finishPending()
+	{
+		if (pendingHigh != 0)
+		{
+			ensureCapacity(1);
+			pendingHigh = 0;
+			buf[count++] = '?';
+		}
+	}
+
+	/**
+	 * Makes room for the given number of bytes. A character takes at most
+	 * three bytes, a pending high surrogate and its low surrogate take four.
+	 */
+	private void ensureCapacity(int bytes)
+	{
+		if (count + bytes > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + bytes));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.profiling;
+
+import org.sweble.wikitext.engine.profiling.TemplateProfiler.Kind;
+
+/**
+ * A snapshot of the numbers that a TemplateProfiler has recorded for one
+ * template, parser function or tag extension. All times are given in
+ * nanoseconds.
+ */
+public final class TemplateProfile
+{
+	private final Kind kind;
+
+	private final String name;
+
+	private final long calls;
+
+	private final long inclusiveTime;
+
+	private final long exclusiveTime;
+
+	private final long outputSize;
+
+	// =========================================================================
+
+	public TemplateProfile(
+			Kind kind,
+			String name,
+			long calls,
+			long inclusiveTime,
+			long exclusiveTime,
+			long outputSize)
+	{
+		this.kind = kind;
+		this.name = name;
+		this.calls = calls;
+		this.inclusiveTime = inclusiveTime;
+		this.exclusiveTime = exclusiveTime;
+		this.outputSize = outputSize;
+	}
+
+	// =========================================================================
+
+	public Kind getKind()
+	{
+		return kind;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getCalls()
+	{
+		return calls;
+	}
+
+	/**
+	 * The time spent in the template including the time spent in the
+	 * templates, parser functions and tag extensions it called.
+	 */
+	public long getInclusiveTime()
+	{
+		return inclusiveTime;
+	}
+
+	/**
+	 * The time spent in the template itself.
+	 */
+	public long getExclusiveTime()
+	{
+		return exclusiveTime;
+	}
+
+	/**
+	 * The accumulated number of characters of text that the template
+	 * produced.
+	 */
+	public long getOutputSize()
+	{
+		return outputSize;
+	}
+
+	// =========================================================================
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"%s %s: calls=%d, inclusive=%.3fms, exclusive=%.3fms, output=%d",
+				kind,
+				name,
+				calls,
+				inclusiveTime / 1000000.,
+				exclusiveTime / 1000000.,
+				outputSize);
+	}
+}
@@ -0,0 +1,540 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.profiling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sweble.wikitext.engine.ExpansionDebugHooks;
+import org.sweble.wikitext.engine.ExpansionVisitor;
+import org.sweble.wikitext.engine.ParserFunctionBase;
+import org.sweble.wikitext.engine.nodes.EngLogParserFunctionResolution;
+import org.sweble.wikitext.engine.nodes.EngLogTagExtensionResolution;
+import org.sweble.wikitext.engine.nodes.EngLogTransclusionResolution;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtStringNode;
+import org.sweble.wikitext.parser.nodes.WtTagExtension;
+import org.sweble.wikitext.parser.nodes.WtTagExtensionBody;
+import org.sweble.wikitext.parser.nodes.WtTemplate;
+import org.sweble.wikitext.parser.nodes.WtTemplateArgument;
+import org.sweble.wikitext.parser.nodes.WtValue;
+
+/**
+ * Debug hooks which record how often templates, parser functions and tag
+ * extensions are called, how much time is spent in them and how much text
+ * they produce. The numbers are aggregated over all pages expanded with the
+ * hooks, so one profiler can be used for a whole dump run.
+ * 
+ * The inclusive time of a call covers everything that happens between the
+ * before and after hook of the call, except for the expansion of the
+ * arguments of a template. Arguments are expanded lazily in the frame of the
+ * caller and are charged to the caller. The exclusive time is the inclusive
+ * time minus the inclusive time of the profiled calls nested in it.
+ * 
+ * The output size is the amount of text in the result of a call. It is
+ * measured like the post-expand include size of the expansion budget: the
+ * results of nested calls are measured once and not walked again as part of
+ * the result of the enclosing call.
+ * 
+ * The profiler is thread-safe and can be shared by multiple engines.
+ * Subclasses which override a hook must call the hook of this class.
+ */
+public class TemplateProfiler
+		extends
+			ExpansionDebugHooks
+{
+	public static enum Kind
+	{
+		TRANSCLUSION,
+		PARSER_FUNCTION,
+		TAG_EXTENSION,
+	}
+
+	/**
+	 * Sorts profiles by exclusive time, most expensive first.
+	 */
+	public static final Comparator<TemplateProfile> BY_EXCLUSIVE_TIME = new Comparator<TemplateProfile>()
+	{
+		@Override
+		public int compare(TemplateProfile o1, TemplateProfile o2)
+		{
+			return compareDescending(o1.getExclusiveTime(), o2.getExclusiveTime());
+		}
+	};
+
+	/**
+	 * Sorts profiles by inclusive time, most expensive first.
+	 */
+	public static final Comparator<TemplateProfile> BY_INCLUSIVE_TIME = new Comparator<TemplateProfile>()
+	{
+		@Override
+		public int compare(TemplateProfile o1, TemplateProfile o2)
+		{
+			return compareDescending(o1.getInclusiveTime(), o2.getInclusiveTime());
+		}
+	};
+
+	// =========================================================================
+
+	private final ConcurrentMap<Key, Counters> counters =
+			new ConcurrentHashMap<Key, Counters>();
+
+	private final ThreadLocal<ArrayList<Call>> callStacks =
+			new ThreadLocal<ArrayList<Call>>()
+			{
+				@Override
+				protected ArrayList<Call> initialValue()
+				{
+					return new ArrayList<Call>();
+				}
+			};
+
+	/**
+	 * The output sizes of the results of nested calls which are still part of
+	 * an open call. Cleared when the outermost call is left.
+	 */
+	private final ThreadLocal<IdentityHashMap<WtNode, Long>> outputSizes =
+			new ThreadLocal<IdentityHashMap<WtNode, Long>>()
+			{
+				@Override
+				protected IdentityHashMap<WtNode, Long> initialValue()
+				{
+					return new IdentityHashMap<WtNode, Long>();
+				}
+			};
+
+	// =========================================================================
+
+	@Override
+	public WtNode beforeResolveParserFunction(
+			ExpansionVisitor expansionVisitor,
+			WtTemplate n,
+			ParserFunctionBase pfn,
+			List<? extends WtNode> argsValues)
+	{
+		enter(expansionVisitor, n);
+		return PROCEED;
+	}
+
+	@Override
+	public WtNode afterResolveParserFunction(
+			ExpansionVisitor expansionVisitor,
+			WtTemplate n,
+			ParserFunctionBase pfn,
+			List<? extends WtNode> argsValues,
+			WtNode result,
+			EngLogParserFunctionResolution log)
+	{
+		leave(n, Kind.PARSER_FUNCTION, pfn.getId(), result);
+		return result;
+	}
+
+	@Override
+	public WtNode beforeResolveTransclusion(
+			ExpansionVisitor expansionVisitor,
+			WtTemplate n,
+			String target,
+			List<WtTemplateArgument> args)
+	{
+		enter(expansionVisitor, n);
+		return PROCEED;
+	}
+
+	@Override
+	public WtNode afterResolveTransclusion(
+			ExpansionVisitor expansionVisitor,
+			WtTemplate n,
+			String target,
+			List<WtTemplateArgument> args,
+			WtNode result,
+			EngLogTransclusionResolution log)
+	{
+		leave(n, Kind.TRANSCLUSION, normalizeTarget(target), result);
+		return result;
+	}
+
+	@Override
+	public WtNode beforeResolveTagExtension(
+			ExpansionVisitor expansionVisitor,
+			WtTagExtension n,
+			String name,
+			WtNodeList attrs,
+			WtTagExtensionBody wtTagExtensionBody)
+	{
+		enter(expansionVisitor, n);
+		return PROCEED;
+	}
+
+	@Override
+	public WtNode afterResolveTagExtension(
+			ExpansionVisitor expansionVisitor,
+			WtTagExtension n,
+			String name,
+			WtNodeList attributes,
+			WtTagExtensionBody wtTagExtensionBody,
+			WtNode result,
+			EngLogTagExtensionResolution log)
+	{
+		leave(n, Kind.TAG_EXTENSION, name, result);
+		return result;
+	}
+
+	@Override
+	public void beforeExpandArgument(
+			ExpansionVisitor expansionVisitor,
+			WtValue value)
+	{
+		pause(expansionVisitor);
+	}
+
+	@Override
+	public void afterExpandArgument(
+			ExpansionVisitor expansionVisitor,
+			WtValue value)
+	{
+		resume();
+	}
+
+	// =========================================================================
+
+	/**
+	 * Returns a snapshot of all recorded numbers sorted by exclusive time,
+	 * most expensive first.
+	 */
+	public List<TemplateProfile> getReport()
+	{
+		return getReport(BY_EXCLUSIVE_TIME);
+	}
+
+	public List<TemplateProfile> getReport(Comparator<TemplateProfile> order)
+	{
+		List<TemplateProfile> report = new ArrayList<TemplateProfile>(counters.size());
+		for (Entry<Key, Counters> e : counters.entrySet())
+		{
+			Key key = e.getKey();
+			Counters c = e.getValue();
+			report.add(new TemplateProfile(
+					key.kind,
+					key.name,
+					c.calls.sum(),
+					c.inclusiveTime.sum(),
+					c.exclusiveTime.sum(),
+					c.outputSize.sum()));
+		}
+		Collections.sort(report, order);
+		return report;
+	}
+
+	/**
+	 * Writes the most expensive entries of the report as tab-separated table.
+	 * Times are given in milliseconds.
+	 * 
+	 * @param limit
+	 *            The maximum number of entries to write or a value below 1 to
+	 *            write all entries.
+	 */
+	public void writeReport(Appendable out, int limit) throws IOException
+	{
+		out.append("kind\tname\tcalls\tinclusive\texclusive\toutput\n");
+
+		int i = 0;
+		for (TemplateProfile p : getReport())
+		{
+			if (limit > 0 && i++ >= limit)
+				break;
+
+			out.append(String.format(
+					"%s\t%s\t%d\t%.3f\t%.3f\t%d\n",
+					p.getKind(),
+					p.getName(),
+					p.getCalls(),
+					p.getInclusiveTime() / 1000000.,
+					p.getExclusiveTime() / 1000000.,
+					p.getOutputSize()));
+		}
+	}
+
+	/**
+	 * Discards all recorded numbers.
+	 */
+	public void reset()
+	{
+		counters.clear();
+	}
+
+	// =========================================================================
+
+	private void enter(ExpansionVisitor visitor, WtNode n)
+	{
+		callStacks.get().add(new Call(visitor, n, System.nanoTime()));
+	}
+
+	private void leave(WtNode n, Kind kind, String name, WtNode result)
+	{
+		long now = System.nanoTime();
+
+		ArrayList<Call> stack = callStacks.get();
+
+		/* The after hook is not called if the expansion of a nested call
+		 * failed with an exception. Drop the calls that were left open.
+		 */
+		int i = stack.size() - 1;
+		while (i >= 0 && stack.get(i).node != n)
+			--i;
+		if (i < 0)
+			return;
+
+		Call call = stack.get(i);
+		while (stack.size() > i)
+			stack.remove(stack.size() - 1);
+
+		long inclusiveTime = now - call.start - call.pausedTime;
+		if (i > 0)
+			stack.get(i - 1).nestedTime += inclusiveTime;
+
+		Counters c = getCounters(kind, name);
+		c.calls.increment();
+		c.inclusiveTime.add(inclusiveTime);
+		c.exclusiveTime.add(inclusiveTime - call.nestedTime);
+		if (result != null)
+			c.outputSize.add(measureOutput(result, stack.isEmpty()));
+	}
+
+	/**
+	 * Stops the clocks of the called template and of all calls nested in it
+	 * while an argument of the template is expanded. The called template is
+	 * the innermost open call that was entered by the visitor which expands
+	 * the argument.
+	 */
+	private void pause(ExpansionVisitor visitor)
+	{
+		ArrayList<Call> stack = callStacks.get();
+
+		int callee = stack.size();
+		for (int i = stack.size() - 1; i >= 0; --i)
+		{
+			Call call = stack.get(i);
+			if (call.node != null && call.visitor == visitor)
+			{
+				callee = i;
+				break;
+			}
+		}
+
+		stack.add(new Call(callee, System.nanoTime()));
+	}
+
+	private void resume()
+	{
+		long now = System.nanoTime();
+
+		ArrayList<Call> stack = callStacks.get();
+
+		// Drop the calls that were left open by a failed expansion.
+		int i = stack.size() - 1;
+		while (i >= 0 && stack.get(i).node != null)
+			--i;
+		if (i < 0)
+			return;
+
+		Call pause = stack.get(i);
+		while (stack.size() > i)
+			stack.remove(stack.size() - 1);
+
+		long pausedTime = now - pause.start - pause.pausedTime;
+		for (int j = pause.callee; j < i; ++j)
+			stack.get(j).pausedTime += pausedTime;
+
+		// Calls nested in the argument belong to the caller of the template
+		if (pause.callee > 0)
+			stack.get(pause.callee - 1).nestedTime += pause.nestedTime;
+	}
+
+	private Counters getCounters(Kind kind, String name)
+	{
+		Key key = new Key(kind, name);
+		Counters c = counters.get(key);
+		if (c == null)
+		{
+			Counters newCounters = new Counters();
+			c = counters.putIfAbsent(key, newCounters);
+			if (c == null)
+				c = newCounters;
+		}
+		return c;
+	}
+
+	/**
+	 * Makes "cite_web" and "Cite web" count as the same template.
+	 */
+	private static String normalizeTarget(String target)
+	{
+		return StringUtils.capitalize(target.trim().replace('_', ' '));
+	}
+
+	/**
+	 * Counts the characters of text in the given result. Results of nested
+	 * calls are usually part of the result of the enclosing call and are not
+	 * walked again.
+	 */
+	private long measureOutput(WtNode result, boolean outermost)
+	{
+		IdentityHashMap<WtNode, Long> sizes = outputSizes.get();
+
+		long size;
+		if (result.isNodeType(WtNode.NT_NODE_LIST))
+		{
+			// Only the children of a list survive splicing into the parent
+			size = 0;
+			for (WtNode c : result)
+			{
+				long childSize = measureText(c, sizes);
+				if (!outermost)
+					sizes.put(c, childSize);
+				size += childSize;
+			}
+		}
+		else
+		{
+			size = measureText(result, sizes);
+		}
+
+		if (outermost)
+			sizes.clear();
+		else
+			sizes.put(result, size);
+
+		return size;
+	}
+
+	private static long measureText(WtNode n, IdentityHashMap<WtNode, Long> sizes)
+	{
+		Long known = sizes.get(n);
+		if (known != null)
+			return known;
+
+		if (n.isNodeType(WtNode.NT_TEXT))
+			return ((WtStringNode) n).getContent().length();
+
+		long size = 0;
+		for (WtNode c : n)
+			size += measureText(c, sizes);
+		return size;
+	}
+
+	private static int compareDescending(long a, long b)
+	{
+		return (a < b) ? 1 : ((a == b) ? 0 : -1);
+	}
+
+	// =========================================================================
+
+	/**
+	 * An open call or, if node is null, the expansion of an argument.
+	 */
+	private static final class Call
+	{
+		private final ExpansionVisitor visitor;
+
+		private final WtNode node;
+
+		/**
+		 * The index of the first call which was paused for an argument.
+		 */
+		private final int callee;
+
+		private final long start;
+
+		private long nestedTime;
+
+		private long pausedTime;
+
+		public Call(ExpansionVisitor visitor, WtNode node, long start)
+		{
+			this.visitor = visitor;
+			this.node = node;
+			this.callee = -1;
+			this.start = start;
+		}
+
+		public Call(int callee, long start)
+		{
+			this.visitor = null;
+			this.node = null;
+			this.callee = callee;
+			this.start = start;
+		}
+	}
+
+	private static final class Counters
+	{
+		private final LongAdder calls = new LongAdder();
+
+		private final LongAdder inclusiveTime = new LongAdder();
+
+		private final LongAdder exclusiveTime = new LongAdder();
+
+		private final LongAdder outputSize = new LongAdder();
+	}
+
+	private static final class Key
+	{
+		private final Kind kind;
+
+		private final String name;
+
+		public Key(Kind kind, String name)
+		{
+			this.kind = kind;
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + kind.hashCode();
+			result = prime * result + name.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return kind == other.kind && name.equals(other.name);
+		}
+	}
+}
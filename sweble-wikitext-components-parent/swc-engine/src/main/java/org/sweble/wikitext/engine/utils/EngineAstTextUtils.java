@@ -27,6 +27,10 @@ public interface EngineAstTextUtils
 
 	public static final int AST_TO_TEXT_LAST_OPTION = AstTextUtils.AST_TO_TEXT_LAST_OPTION + 2;
 
+	/**
+	 * Removes leading and trailing whitespace. The given AST is not modified,
+	 * if something has to be removed, a (shallow) copy is returned.
+	 */
 	public abstract WtNode trim(WtNode n);
 
 	public abstract WtNode trimLeft(WtNode n);
@@ -16,8 +16,6 @@
  */
 package org.sweble.wikitext.engine.utils;
 
-import java.util.ListIterator;
-
 import org.sweble.wikitext.engine.nodes.EngNode;
 import org.sweble.wikitext.engine.nodes.EngNowiki;
 import org.sweble.wikitext.parser.ParserConfig;
@@ -54,51 +52,45 @@ public class EngineAstTextUtilsImpl
 		if (n.isList())
 		{
 			WtNodeList l = (WtNodeList) n;
-			ListIterator<WtNode> i = l.listIterator();
-			outer: while (i.hasNext())
+			WtNodeList result = l;
+			int i = 0;
+			outer: while (i < result.size())
 			{
-				WtNode item = i.next();
+				WtNode item = result.get(i);
 				switch (item.getNodeType())
 				{
 					case WtNode.NT_TEXT:
 						WtText t = (WtText) item;
 						String text = t.getContent();
-						if (text.isEmpty())
-						{
-							i.remove();
-							continue;
-						}
-
 						String trimmed = StringTools.trimLeft(text);
-						if (trimmed.equals(text))
-							break outer;
-
 						if (trimmed.isEmpty())
 						{
-							i.remove();
+							result = copyOf(l, result);
+							result.remove(i);
 							continue;
 						}
-						else
+						else if (!trimmed.equals(text))
 						{
-							t.setContent(trimmed);
-							break outer;
+							result = copyOf(l, result);
+							result.set(i, withContent(t, trimmed));
 						}
+						break outer;
 
 					case WtNode.NT_IGNORED:
 					case WtNode.NT_XML_COMMENT:
+						++i;
 						continue;
 
 					default:
 						break outer;
 				}
 			}
-			return n;
+			return result;
 		}
 		else if (n.getNodeType() == WtNode.NT_TEXT)
 		{
 			WtText t = (WtText) n;
-			t.setContent(StringTools.trimLeft(t.getContent()));
-			return n;
+			return withContent(t, StringTools.trimLeft(t.getContent()));
 		}
 		else
 		{
@@ -112,51 +104,46 @@ public class EngineAstTextUtilsImpl
 		if (n.isList())
 		{
 			WtNodeList l = (WtNodeList) n;
-			ListIterator<WtNode> i = l.listIterator(l.size());
-			outer: while (i.hasPrevious())
+			WtNodeList result = l;
+			int i = result.size() - 1;
+			outer: while (i >= 0)
 			{
-				WtNode item = i.previous();
+				WtNode item = result.get(i);
 				switch (item.getNodeType())
 				{
 					case WtNode.NT_TEXT:
 						WtText t = (WtText) item;
 						String text = t.getContent();
-						if (text.isEmpty())
-						{
-							i.remove();
-							continue;
-						}
-
 						String trimmed = StringTools.trimRight(text);
-						if (trimmed.equals(text))
-							break outer;
-
 						if (trimmed.isEmpty())
 						{
-							i.remove();
+							result = copyOf(l, result);
+							result.remove(i);
+							--i;
 							continue;
 						}
-						else
+						else if (!trimmed.equals(text))
 						{
-							t.setContent(trimmed);
-							break outer;
+							result = copyOf(l, result);
+							result.set(i, withContent(t, trimmed));
 						}
+						break outer;
 
 					case WtNode.NT_IGNORED:
 					case WtNode.NT_XML_COMMENT:
+						--i;
 						continue;
 
 					default:
 						break outer;
 				}
 			}
-			return n;
+			return result;
 		}
 		else if (n.getNodeType() == WtNode.NT_TEXT)
 		{
 			WtText t = (WtText) n;
-			t.setContent(StringTools.trimRight(t.getContent()));
-			return n;
+			return withContent(t, StringTools.trimRight(t.getContent()));
 		}
 		else
 		{
@@ -164,6 +151,27 @@ public class EngineAstTextUtilsImpl
 		}
 	}
 
+	/**
+	 * The trim methods must not modify their argument since the argument can
+	 * be part of an AST that is shared (e.g. a cached preprocessed page).
+	 * Copies are created as soon as something has to be changed.
+	 */
+	private static WtNodeList copyOf(WtNodeList original, WtNodeList current)
+	{
+		return (current == original) ?
+				(WtNodeList) original.cloneWrapException() :
+				current;
+	}
+
+	private static WtText withContent(WtText t, String content)
+	{
+		if (content.equals(t.getContent()))
+			return t;
+		WtText copy = (WtText) t.cloneWrapException();
+		copy.setContent(content);
+		return copy;
+	}
+
 	// =========================================================================
 
 	@Override
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+
+public class BatchPrefetchTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final CountingBatchCallback pages = new CountingBatchCallback(config);
+
+	@Test
+	public void testStaticallyNamedTemplatesAreRetrievedInOneBatch() throws Exception
+	{
+		pages.put("Template:A", "a");
+		pages.put("Template:B", "b");
+
+		expand("{{A}} {{B}} {{A}} {{#if:1|x}}");
+
+		assertEquals(
+				Arrays.asList(Arrays.asList(pages.title("Template:A"), pages.title("Template:B"))),
+				pages.getBatches());
+
+		assertEquals(Collections.emptyList(), pages.getRetrieved());
+	}
+
+	@Test
+	public void testNonStaticNamesFallBackToSingleRetrieval() throws Exception
+	{
+		pages.put("Template:A", "a");
+		pages.put("Template:C", "c");
+
+		expand("{{A}} {{ {{{1|C}}} }}");
+
+		assertEquals(
+				Arrays.asList(Arrays.asList(pages.title("Template:A"))),
+				pages.getBatches());
+
+		assertEquals(Arrays.asList(pages.title("Template:C")), pages.getRetrieved());
+	}
+
+	private void expand(String wikitext) throws Exception
+	{
+		pages.expand(new WtEngineImpl(config), wikitext);
+	}
+
+	// =========================================================================
+
+	private static final class CountingBatchCallback
+			extends
+				MapExpansionCallback
+			implements
+				BatchExpansionCallback
+	{
+		private final List<List<PageTitle>> batches = new ArrayList<List<PageTitle>>();
+
+		public CountingBatchCallback(WikiConfig config)
+		{
+			super(config);
+		}
+
+		public synchronized List<List<PageTitle>> getBatches()
+		{
+			return new ArrayList<List<PageTitle>>(batches);
+		}
+
+		@Override
+		public synchronized Map<PageTitle, FullPage> retrieveWikitext(
+				ExpansionFrame expansionFrame,
+				Collection<PageTitle> pageTitles)
+		{
+			batches.add(new ArrayList<PageTitle>(pageTitles));
+
+			Map<PageTitle, FullPage> result = new HashMap<PageTitle, FullPage>();
+			for (PageTitle title : pageTitles)
+				result.put(title, get(title));
+			return result;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.cache.LruPreprocessedPageCache;
+import org.sweble.wikitext.engine.cache.PfnResultCache;
+import org.sweble.wikitext.engine.cache.TransclusionMemo;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtText;
+
+public class ExpandResultOwnershipTest
+{
+	private static final String WIKITEXT = "{{Outer}} {{#expr: 2 * 21}}";
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final MapExpansionCallback pages = new MapExpansionCallback(config);
+
+	@Test
+	public void testModifyingAnExpandedPageDoesNotAffectCachedResults() throws Exception
+	{
+		pages.put("Template:Outer", "outer {{Inner}}");
+		pages.put("Template:Inner", "inner");
+
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setPreprocessedPageCache(new LruPreprocessedPageCache());
+		engine.setTransclusionMemo(new TransclusionMemo());
+		engine.setPfnResultCache(new PfnResultCache());
+
+		String expected = expand(engine).toString();
+
+		replaceText(expand(engine));
+
+		assertEquals(expected, expand(engine).toString());
+	}
+
+	private WtNode expand(WtEngineImpl engine) throws Exception
+	{
+		return pages.expand(engine, WIKITEXT).getPage();
+	}
+
+	private static void replaceText(WtNode n)
+	{
+		if (n instanceof WtText)
+			((WtText) n).setContent("modified");
+
+		for (WtNode c : n)
+			replaceText(c);
+	}
+}
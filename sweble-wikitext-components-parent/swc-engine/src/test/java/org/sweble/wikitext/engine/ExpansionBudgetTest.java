@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.ExpansionBudget.Budget;
+import org.sweble.wikitext.engine.config.EngineConfigImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngLogBudgetExceeded;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+public class ExpansionBudgetTest
+{
+	@Test
+	public void testUnlimitedByDefault() throws Exception
+	{
+		ExpansionBudget budget = new ExpansionBudget(new EngineConfigImpl());
+
+		for (int i = 0; i < 1000; ++i)
+		{
+			budget.chargeTransclusion(i);
+			budget.chargeParserFunctionCall();
+		}
+
+		assertEquals(1000, budget.getTransclusions());
+		assertEquals(1000, budget.getParserFunctionCalls());
+	}
+
+	@Test
+	public void testDefaultConfigurationIsUnlimited() throws Exception
+	{
+		EngineConfigImpl config = DefaultConfigEnWp.generate().getEngineConfig();
+
+		assertEquals(0, config.getMaxExpansionDepth());
+		assertEquals(0, config.getMaxTransclusions());
+		assertEquals(0, config.getMaxParserFunctionCalls());
+		assertEquals(0, config.getMaxPostExpandIncludeSize());
+		assertEquals(0, config.getMaxExpansionTime());
+	}
+
+	@Test
+	public void testTransclusionLimits() throws Exception
+	{
+		EngineConfigImpl config = new EngineConfigImpl();
+		config.setMaxExpansionDepth(2);
+		config.setMaxTransclusions(3);
+
+		ExpansionBudget budget = new ExpansionBudget(config);
+
+		budget.chargeTransclusion(1);
+		budget.chargeTransclusion(2);
+		try
+		{
+			budget.chargeTransclusion(3);
+			fail();
+		}
+		catch (ExpansionBudgetExceededException e)
+		{
+			assertEquals(Budget.EXPANSION_DEPTH, e.getBudget());
+		}
+
+		budget.chargeTransclusion(1);
+		try
+		{
+			budget.chargeTransclusion(1);
+			fail();
+		}
+		catch (ExpansionBudgetExceededException e)
+		{
+			assertEquals(Budget.TRANSCLUSIONS, e.getBudget());
+			assertEquals(3, e.getLimit());
+		}
+	}
+
+	@Test
+	public void testNestedResultsAreChargedAtEveryLevel() throws Exception
+	{
+		// Inner: 3 characters, Outer: 2 + 3 characters
+		assertFalse(exceedsIncludeSize(8, "{{Outer}}"));
+		assertTrue(exceedsIncludeSize(7, "{{Outer}}"));
+	}
+
+	@Test
+	public void testParserFunctionResultsAreCharged() throws Exception
+	{
+		assertFalse(exceedsIncludeSize(4, "{{#if:1|abcd}}"));
+		assertTrue(exceedsIncludeSize(3, "{{#if:1|abcd}}"));
+	}
+
+	private static boolean exceedsIncludeSize(long limit, String wikitext) throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		config.getEngineConfig().setMaxPostExpandIncludeSize(limit);
+
+		MapExpansionCallback pages = new MapExpansionCallback(config);
+		pages.put("Template:Outer", "ab{{Inner}}");
+		pages.put("Template:Inner", "xyz");
+
+		EngProcessedPage page = pages.postprocess(new WtEngineImpl(config), wikitext);
+
+		return containsBudgetExceeded(page.getLog());
+	}
+
+	private static boolean containsBudgetExceeded(WtNode n)
+	{
+		if (n instanceof EngLogBudgetExceeded)
+			return true;
+		for (WtNode c : n)
+		{
+			if (containsBudgetExceeded(c))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.cache.TransclusionMemo;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngLogBudgetExceeded;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+public class LazyArgumentsTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final MapExpansionCallback pages = new MapExpansionCallback(config);
+
+	@Test
+	public void testArgumentsAreExpandedWhenAccessed() throws Exception
+	{
+		pages.put("Template:Show", "{{{2}}}");
+		pages.put("Template:Inner", "inner");
+
+		expand("{{Show|a|{{Inner}}}}");
+
+		// Inner is only retrieved once Show accesses its second argument
+		assertEquals(
+				Arrays.asList(pages.title("Template:Show"), pages.title("Template:Inner")),
+				pages.getRetrieved());
+	}
+
+	@Test
+	public void testUnusedArgumentsAreNeverExpanded() throws Exception
+	{
+		assertUnusedArgumentsAreNeverExpanded(new WtEngineImpl(config));
+	}
+
+	@Test
+	public void testUnusedArgumentsAreNeverExpandedWithMemo() throws Exception
+	{
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setTransclusionMemo(new TransclusionMemo());
+
+		assertUnusedArgumentsAreNeverExpanded(engine);
+	}
+
+	private void assertUnusedArgumentsAreNeverExpanded(WtEngineImpl engine) throws Exception
+	{
+		// Show and Missing would exceed the limit
+		config.getEngineConfig().setMaxTransclusions(1);
+
+		pages.put("Template:Show", "{{{1}}}");
+
+		EngProcessedPage page = pages.expand(
+				engine,
+				"{{Show|a|{{Missing}}|{{#if:1|{{Missing}}}}}}");
+
+		assertEquals(Arrays.asList(pages.title("Template:Show")), pages.getRetrieved());
+
+		// Neither a "page not found" warning nor an exceeded budget
+		assertTrue(page.getWarnings().isEmpty());
+		assertFalse(containsBudgetExceeded(page.getLog()));
+	}
+
+	private EngProcessedPage expand(String wikitext) throws Exception
+	{
+		return pages.expand(new WtEngineImpl(config), wikitext);
+	}
+
+	private static boolean containsBudgetExceeded(WtNode n)
+	{
+		if (n instanceof EngLogBudgetExceeded)
+			return true;
+		for (WtNode c : n)
+		{
+			if (containsBudgetExceeded(c))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class MinimalLoggingTest
+{
+	private static final String WIKITEXT = "{{#if: x | '''yes''' | no}}";
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	@Test
+	public void testLogTreeIsBuiltByDefault() throws Exception
+	{
+		WtEngineImpl engine = new WtEngineImpl(config);
+
+		EngProcessedPage page = engine.postprocess(pageId(), WIKITEXT, null);
+
+		assertFalse(page.getLog().isEmpty());
+		assertEquals("Test", page.getLog().getTitle());
+	}
+
+	@Test
+	public void testNoLogTreeIsBuiltIfLoggingIsDisabled() throws Exception
+	{
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setLoggingEnabled(false);
+		engine.setTimingEnabled(true);
+		engine.setCatchAll(false);
+
+		EngProcessedPage page = engine.postprocess(pageId(), WIKITEXT, null);
+
+		assertTrue(page.getLog().isEmpty());
+
+		EngProcessedPage expected = new WtEngineImpl(config)
+				.postprocess(pageId(), WIKITEXT, null);
+
+		assertEquals(expected.getPage().toString(), page.getPage().toString());
+	}
+
+	private PageId pageId() throws Exception
+	{
+		return new PageId(PageTitle.make(config, "Test"), -1);
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+
+public class PageExistenceTest
+{
+	private static final String WIKITEXT =
+			"{{#ifexist:Exists|yes|no}} {{#ifexist:Exists|yes|no}} {{#ifexist:Missing|yes|no}}";
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	@Test
+	public void testExistenceCallbackReplacesRetrieval() throws Exception
+	{
+		CountingExistenceCallback pages = new CountingExistenceCallback(config);
+		pages.put("Exists", "text");
+
+		String result = expand(pages);
+
+		// Each title is queried once per render and no wikitext is retrieved
+		assertEquals(
+				Arrays.asList(pages.title("Exists"), pages.title("Missing")),
+				pages.getQueried());
+		assertEquals(Collections.emptyList(), pages.getRetrieved());
+
+		// The next render queries again
+		assertEquals(result, expand(pages));
+		assertEquals(4, pages.getQueried().size());
+	}
+
+	@Test
+	public void testWithoutExistenceCallbackEachPageIsRetrievedOnce() throws Exception
+	{
+		MapExpansionCallback pages = new MapExpansionCallback(config);
+		pages.put("Exists", "text");
+
+		expand(pages);
+
+		assertEquals(
+				Arrays.asList(pages.title("Exists"), pages.title("Missing")),
+				pages.getRetrieved());
+	}
+
+	private String expand(MapExpansionCallback pages) throws Exception
+	{
+		return pages.expand(new WtEngineImpl(config), WIKITEXT).getPage().toString();
+	}
+
+	// =========================================================================
+
+	private static final class CountingExistenceCallback
+			extends
+				MapExpansionCallback
+			implements
+				PageExistenceCallback
+	{
+		private final List<PageTitle> queried = new ArrayList<PageTitle>();
+
+		public CountingExistenceCallback(WikiConfig config)
+		{
+			super(config);
+		}
+
+		public synchronized List<PageTitle> getQueried()
+		{
+			return new ArrayList<PageTitle>(queried);
+		}
+
+		@Override
+		public synchronized boolean existsPage(
+				ExpansionFrame expansionFrame,
+				PageTitle pageTitle)
+		{
+			queried.add(pageTitle);
+			return get(pageTitle) != null;
+		}
+	}
+}
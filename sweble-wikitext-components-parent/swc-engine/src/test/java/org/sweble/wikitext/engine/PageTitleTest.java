@@ -17,6 +17,9 @@
 package org.sweble.wikitext.engine;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import org.sweble.wikitext.engine.config.WikiConfigImpl;
@@ -47,4 +50,28 @@ public class PageTitleTest
 
 		assertEquals(title, title3);
 	}
+
+	@Test
+	public void testTitlesOfFrozenConfigurationsAreInterned() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		config.freeze();
+
+		PageTitle title = PageTitle.make(config, "Navbox", config.getTemplateNamespace());
+
+		assertSame(title, PageTitle.make(config, "Navbox", config.getTemplateNamespace()));
+		assertNotSame(title, PageTitle.make(config, "Navbox"));
+		assertEquals(1, config.getTitleCache().getHitCount());
+	}
+
+	@Test
+	public void testTitlesOfModifiableConfigurationsAreNotCached() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+		PageTitle title = PageTitle.make(config, "Navbox");
+
+		assertNull(config.getTitleCache());
+		assertNotSame(title, PageTitle.make(config, "Navbox"));
+	}
 }
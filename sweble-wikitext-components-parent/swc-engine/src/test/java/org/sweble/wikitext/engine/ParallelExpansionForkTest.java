@@ -0,0 +1,96 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+
+public class ParallelExpansionForkTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final MapExpansionCallback pages = new MapExpansionCallback(config);
+
+	@Test
+	public void testOnlyTopLevelTemplatesOfThePageAreForked() throws Exception
+	{
+		pages.put("Template:Item", "* item");
+
+		assertForks(3, "{{Item}}\n{{Item}}\n{{#if:1|{{Item}}\n{{Item}}}}\n");
+	}
+
+	@Test
+	public void testParserFunctionResultsAreNotForked() throws Exception
+	{
+		pages.put("Template:Item", "* item");
+
+		// A single top-level template is expanded sequentially
+		assertForks(0, "text\n{{#if:1|{{Item}}\n{{Item}}}}\n");
+		assertForks(0, "{{#switch:a|a={{Item}}\n{{Item}}|b=}}\n");
+	}
+
+	private void assertForks(int expected, String wikitext) throws Exception
+	{
+		String sequential = pages.expand(new WtEngineImpl(config), wikitext).getPage().toString();
+
+		CountingPool pool = new CountingPool();
+		try
+		{
+			WtEngineImpl engine = new WtEngineImpl(config);
+			engine.setParallelExpansionPool(pool);
+
+			String parallel = pages.expand(engine, wikitext).getPage().toString();
+
+			assertEquals(sequential, parallel);
+			assertEquals(expected, pool.forks.get());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	// =========================================================================
+
+	private static final class CountingPool
+			extends
+				ForkJoinPool
+	{
+		private final AtomicInteger forks = new AtomicInteger();
+
+		public CountingPool()
+		{
+			super(2);
+		}
+
+		@Override
+		public void execute(ForkJoinTask<?> task)
+		{
+			forks.incrementAndGet();
+			super.execute(task);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized.Parameters;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.EngineIntegrationTestBase;
+
+import de.fau.cs.osr.utils.FileContent;
+import de.fau.cs.osr.utils.NamedParametrized;
+import de.fau.cs.osr.utils.TestResourcesFixture;
+
+@RunWith(value = NamedParametrized.class)
+public class ParallelExpansionTest
+		extends
+			EngineIntegrationTestBase
+{
+	private static final String FILTER_RX = ".*?\\.wikitext";
+
+	private static final String INPUT_SUB_DIR = "engine/exp/wikitext";
+
+	// =========================================================================
+
+	@Parameters
+	public static List<Object[]> enumerateInputs() throws Exception
+	{
+		TestResourcesFixture resources = getTestResourcesFixture();
+		return resources.gatherAsParameters(INPUT_SUB_DIR, FILTER_RX, false);
+	}
+
+	// =========================================================================
+
+	private final File inputFile;
+
+	// =========================================================================
+
+	public ParallelExpansionTest(
+			String title,
+			TestResourcesFixture resources,
+			File inputFile)
+	{
+		super(resources);
+		this.inputFile = inputFile;
+	}
+
+	// =========================================================================
+
+	@Test
+	public void testParallelExpansionMatchesSequentialExpansion() throws Exception
+	{
+		EngProcessedPage sequential = expand(new WtEngineImpl(getConfig()));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			WtEngineImpl engine = new WtEngineImpl(getConfig());
+			engine.setParallelExpansionPool(pool);
+
+			EngProcessedPage parallel = expand(engine);
+
+			assertEquals(sequential.getPage().toString(), parallel.getPage().toString());
+			assertEquals(String.valueOf(sequential.getWarnings()), String.valueOf(parallel.getWarnings()));
+			assertEquals(sequential.getLog().toString(), parallel.getLog().toString());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private EngProcessedPage expand(WtEngineImpl engine) throws Exception
+	{
+		String fileTitle = inputFile.getName();
+		fileTitle = fileTitle.substring(0, fileTitle.lastIndexOf('.'));
+
+		PageId pageId = new PageId(PageTitle.make(getConfig(), fileTitle), -1);
+
+		return engine.expand(
+				pageId,
+				new FileContent(inputFile).getContent(),
+				newTestExpansionCallback(INPUT_SUB_DIR));
+	}
+}
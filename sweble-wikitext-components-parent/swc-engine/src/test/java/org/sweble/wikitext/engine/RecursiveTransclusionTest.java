@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+
+public class RecursiveTransclusionTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final MapExpansionCallback pages = new MapExpansionCallback(config);
+
+	@Test
+	public void testPageIsTranscludedWhileTwoOfItsFramesAreActive() throws Exception
+	{
+		pages.put("Template:Loop", "x{{Loop}}");
+
+		// Test -> Loop -> Loop -> Loop, the fourth Loop is rejected
+		assertEquals(3, countRetrievalsOfLoop());
+	}
+
+	@Test
+	public void testParserFunctionsDoNotCountTheirFrameTwice() throws Exception
+	{
+		// #if expands its condition in the frame of Loop
+		pages.put("Template:Loop", "x{{#if:{{Loop}}|y}}");
+
+		assertEquals(3, countRetrievalsOfLoop());
+	}
+
+	@Test
+	public void testTransclusionsInArgumentsCountTheFramesOfTheCaller() throws Exception
+	{
+		// The argument is expanded in the frame of Loop while Show is active
+		pages.put("Template:Loop", "x{{Show|{{Loop}}}}");
+		pages.put("Template:Show", "{{{1}}}");
+
+		assertEquals(3, countRetrievalsOfLoop());
+	}
+
+	private int countRetrievalsOfLoop() throws Exception
+	{
+		pages.postprocess(new WtEngineImpl(config), "{{Loop}}");
+
+		return Collections.frequency(pages.getRetrieved(), pages.title("Template:Loop"));
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
+
+public class LruPreprocessedPageCacheTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final WtPreproWikitextPage ppAst =
+			config.getNodeFactory().preproPage(WtNodeList.EMPTY);
+
+	@Test
+	public void testPagesAreIdentifiedByNamespaceAndTitle() throws Exception
+	{
+		LruPreprocessedPageCache cache = new LruPreprocessedPageCache();
+
+		cache.cache(pageId("Template:Foo#bar", 1), true, ppAst, 1);
+
+		assertSame(ppAst, cache.retrieve(pageId(":Template:Foo", 1), true));
+		assertNull(cache.retrieve(pageId("Template:Foo", 2), true));
+		assertNull(cache.retrieve(pageId("Template:Foo", 1), false));
+	}
+
+	@Test
+	public void testInvalidateRemovesAllRevisionsOfThePage() throws Exception
+	{
+		LruPreprocessedPageCache cache = new LruPreprocessedPageCache();
+
+		cache.cache(pageId("Template:Foo#bar", 1), true, ppAst, 1);
+		cache.cache(pageId(":Template:Foo", 2), false, ppAst, 1);
+		cache.cache(pageId("Template:Other", 1), true, ppAst, 1);
+
+		cache.invalidate(PageTitle.make(config, "Template:Foo"));
+
+		assertEquals(1, cache.size());
+		assertSame(ppAst, cache.retrieve(pageId("Template:Other", 1), true));
+	}
+
+	@Test
+	public void testEvictedPagesCanBeCachedAndInvalidatedAgain() throws Exception
+	{
+		LruPreprocessedPageCache cache = new LruPreprocessedPageCache(2, 1);
+
+		cache.cache(pageId("Template:Foo", 1), true, ppAst, 1);
+		cache.cache(pageId("Template:Bar", 1), true, ppAst, 1);
+		// Evicts Foo
+		cache.cache(pageId("Template:Baz", 1), true, ppAst, 1);
+		assertEquals(1, cache.getEvictionCount());
+
+		cache.cache(pageId("Template:Foo", 1), true, ppAst, 1);
+		cache.invalidate(PageTitle.make(config, "Template:Foo"));
+
+		assertNull(cache.retrieve(pageId("Template:Foo", 1), true));
+		assertEquals(1, cache.size());
+	}
+
+	private PageId pageId(String title, long revision) throws Exception
+	{
+		return new PageId(PageTitle.make(config, title), revision);
+	}
+}
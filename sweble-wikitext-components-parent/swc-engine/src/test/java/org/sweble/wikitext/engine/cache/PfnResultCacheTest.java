@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class PfnResultCacheTest
+{
+	private static final String WIKITEXT =
+			"{{#expr: 2 * 21}} {{padleft:7|3}} {{#expr: 2 * 21}} {{#time: Y}}";
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	@Test
+	public void testPureResultsAreReused() throws Exception
+	{
+		PfnResultCache cache = new PfnResultCache();
+
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setPfnResultCache(cache);
+		engine.setCatchAll(false);
+
+		EngProcessedPage page = engine.postprocess(pageId(), WIKITEXT, null);
+
+		// #time depends on the render clock and is not pure
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+
+		EngProcessedPage expected = new WtEngineImpl(config)
+				.postprocess(pageId(), WIKITEXT, null);
+
+		assertEquals(expected.getPage().toString(), page.getPage().toString());
+	}
+
+	@Test
+	public void testArgumentsAreExpandedBeforeLookup() throws Exception
+	{
+		PfnResultCache cache = new PfnResultCache();
+
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setPfnResultCache(cache);
+
+		engine.postprocess(pageId(), "{{#expr: {{#expr: 1 + 1}} * 21}}", null);
+		engine.postprocess(pageId(), "{{#expr: 2 * 21}}", null);
+
+		assertEquals(1, cache.getHitCount());
+	}
+
+	private PageId pageId() throws Exception
+	{
+		return new PageId(PageTitle.make(config, "Test"), -1);
+	}
+}
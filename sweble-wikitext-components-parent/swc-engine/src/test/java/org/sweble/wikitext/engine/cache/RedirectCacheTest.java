@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class RedirectCacheTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	@Test
+	public void testResolvesChainsToTheFinalTarget() throws Exception
+	{
+		RedirectCache cache = new RedirectCache();
+		cache.cache(title("Template:Cite"), true, title("Template:Cite web"));
+		cache.cache(title("Template:Cite web"), true, title("Template:Citation"));
+
+		assertEquals(title("Template:Citation"), cache.resolve(title("Template:Cite"), true));
+		assertEquals(title("Template:Citation"), cache.resolve(title("Template:Cite_web"), true));
+		assertNull(cache.resolve(title("Template:Citation"), true));
+		assertNull(cache.resolve(title("Template:Cite"), false));
+	}
+
+	@Test
+	public void testReportsTheRedirectPagesOfTheChain() throws Exception
+	{
+		RedirectCache cache = new RedirectCache();
+		cache.cache(title("Template:Cite"), true, title("Template:Cite web"));
+		cache.cache(title("Template:Cite web"), true, title("Template:Citation"));
+
+		List<PageTitle> hops = new ArrayList<PageTitle>();
+		cache.resolve(title("Template:Cite"), true, hops);
+
+		assertEquals(Arrays.asList(title("Template:Cite"), title("Template:Cite web")), hops);
+	}
+
+	@Test
+	public void testInvalidationOnlyRemovesTheHopOfTheEditedPage() throws Exception
+	{
+		RedirectCache cache = new RedirectCache();
+		cache.cache(title("A"), true, title("B"));
+		cache.cache(title("B"), true, title("C"));
+
+		cache.invalidate(title("B"));
+		assertEquals(title("B"), cache.resolve(title("A"), true));
+
+		cache.cache(title("B"), true, title("D"));
+		assertEquals(title("D"), cache.resolve(title("A"), true));
+	}
+
+	@Test
+	public void testCyclicChainsAreNotResolved() throws Exception
+	{
+		RedirectCache cache = new RedirectCache();
+		cache.cache(title("A"), true, title("B"));
+		cache.cache(title("B"), true, title("A"));
+
+		assertNull(cache.resolve(title("A"), true));
+	}
+
+	private PageTitle title(String title) throws Exception
+	{
+		return PageTitle.make(config, title);
+	}
+}
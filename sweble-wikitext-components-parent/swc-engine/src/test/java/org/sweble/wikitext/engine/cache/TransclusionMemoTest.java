@@ -0,0 +1,121 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.MapExpansionCallback;
+
+public class TransclusionMemoTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final MapExpansionCallback pages = new MapExpansionCallback(config);
+
+	@Test
+	public void testEditOfNestedPageInvalidatesDependentTransclusions() throws Exception
+	{
+		WtEngineImpl engine = newCachingEngine();
+
+		pages.put("Template:Outer", "outer {{Inner}}");
+		pages.put("Template:Inner", "one");
+
+		render(engine, "{{Outer}}");
+		render(engine, "{{Outer}}");
+		assertTrue(engine.getTransclusionMemo().getHitCount() > 0);
+
+		pages.put("Template:Inner", "two");
+		engine.invalidate(pages.title("Template:Inner"));
+
+		assertEquals(
+				render(new WtEngineImpl(config), "{{Outer}}"),
+				render(engine, "{{Outer}}"));
+	}
+
+	@Test
+	public void testEditOfSkippedRedirectInvalidatesDependentTransclusions() throws Exception
+	{
+		WtEngineImpl engine = newCachingEngine();
+
+		pages.put("Template:Outer", "outer {{Alias}}");
+		pages.put("Template:Alias", "#REDIRECT [[Template:One]]");
+		pages.put("Template:One", "one");
+		pages.put("Template:Two", "two");
+
+		// Teaches the redirect cache, Outer then skips Alias
+		render(engine, "{{Alias}}");
+		render(engine, "{{Outer}}");
+
+		pages.put("Template:Alias", "#REDIRECT [[Template:Two]]");
+		engine.invalidate(pages.title("Template:Alias"));
+
+		assertEquals(
+				render(new WtEngineImpl(config), "{{Outer}}"),
+				render(engine, "{{Outer}}"));
+	}
+
+	@Test
+	public void testEditInvalidatesTransclusionsWithFragment() throws Exception
+	{
+		WtEngineImpl engine = newCachingEngine();
+
+		pages.put("Template:Outer", "outer {{Inner#section}}");
+		pages.put("Template:Inner", "one");
+
+		render(engine, "{{Outer}}");
+		render(engine, "{{Outer}}");
+		assertTrue(engine.getTransclusionMemo().getHitCount() > 0);
+
+		pages.put("Template:Inner", "two");
+		engine.invalidate(pages.title("Template:Inner"));
+
+		assertEquals(
+				render(new WtEngineImpl(config), "{{Outer}}"),
+				render(engine, "{{Outer}}"));
+	}
+
+	@Test
+	public void testOnlyTransclusionsWithPlainTextArgumentsAreMemoized() throws Exception
+	{
+		WtEngineImpl engine = newCachingEngine();
+
+		pages.put("Template:Show", "{{{1}}}");
+
+		render(engine, "{{Show|plain}} {{Show|{{{1|param}}}}}");
+
+		assertEquals(1, engine.getTransclusionMemo().size());
+	}
+
+	private WtEngineImpl newCachingEngine()
+	{
+		WtEngineImpl engine = new WtEngineImpl(config);
+		engine.setTransclusionMemo(new TransclusionMemo());
+		engine.setRedirectCache(new RedirectCache());
+		return engine;
+	}
+
+	private String render(WtEngineImpl engine, String wikitext) throws Exception
+	{
+		return pages.postprocess(engine, wikitext).getPage().toString();
+	}
+}
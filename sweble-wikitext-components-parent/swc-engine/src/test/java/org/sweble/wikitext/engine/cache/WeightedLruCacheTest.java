@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class WeightedLruCacheTest
+{
+	@Test
+	public void testCountsHitsAndMisses() throws Exception
+	{
+		WeightedLruCache<String, String> cache =
+				new WeightedLruCache<String, String>(100, 1);
+
+		assertNull(cache.get("a"));
+		cache.put("a", "A", 1);
+		assertEquals("A", cache.get("a"));
+		assertEquals("A", cache.get("a"));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsedWhenWeightIsExceeded() throws Exception
+	{
+		WeightedLruCache<String, String> cache =
+				new WeightedLruCache<String, String>(10, 1);
+
+		cache.put("a", "A", 4);
+		cache.put("b", "B", 4);
+		// Touch "a" so that "b" becomes the eldest entry
+		cache.get("a");
+		cache.put("c", "C", 4);
+
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("C", cache.get("c"));
+		assertEquals(8, cache.getWeight());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testDoesNotCacheValuesHeavierThanTheCache() throws Exception
+	{
+		WeightedLruCache<String, String> cache =
+				new WeightedLruCache<String, String>(10, 1);
+
+		cache.put("a", "A", 4);
+		cache.put("b", "B", 11);
+
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals(4, cache.getWeight());
+	}
+
+	@Test
+	public void testEntriesMustFitIntoTheShareOfOneSegment() throws Exception
+	{
+		WeightedLruCache<String, String> segmented =
+				new WeightedLruCache<String, String>(64, 16);
+		assertEquals(4, segmented.getMaxEntryWeight());
+
+		segmented.put("a", "A", 5);
+		assertNull(segmented.get("a"));
+
+		WeightedLruCache<String, String> single =
+				new WeightedLruCache<String, String>(64, 1);
+		assertEquals(64, single.getMaxEntryWeight());
+
+		single.put("a", "A", 5);
+		assertEquals("A", single.get("a"));
+	}
+}
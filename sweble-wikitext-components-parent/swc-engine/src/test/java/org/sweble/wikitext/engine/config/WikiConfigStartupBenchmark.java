@@ -0,0 +1,159 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+/**
+ * Compares the time needed to obtain the English Wikipedia configuration by
+ * generating it in code (DefaultConfigEnWp.generate()), by loading it from
+ * XML (WikiConfigImpl.load()) and by loading a binary snapshot
+ * (WikiConfigImpl.loadSnapshot()).
+ * 
+ * The first round is reported separately since it includes class loading
+ * and (for JAXB) the creation of the JAXB context, which is what a
+ * short-lived process pays. Each invocation therefore times a single method
+ * and does nothing else with the configuration classes before the first
+ * round. Not run as part of the test suite, start the main method once per
+ * method:
+ * 
+ * <pre>
+ * create-snapshot FILE   writes the snapshot of the XML configuration
+ * generate               times DefaultConfigEnWp.generate()
+ * xml                    times WikiConfigImpl.load()
+ * snapshot FILE          times WikiConfigImpl.loadSnapshot()
+ * </pre>
+ */
+public class WikiConfigStartupBenchmark
+{
+	private static final int ROUNDS = 50;
+
+	private static final String XML_RESOURCE =
+			"/org/sweble/wikitext/engine/utils/DefaultConfigEnWp.xml";
+
+	// =========================================================================
+
+	public static void main(String[] args) throws Exception
+	{
+		String method = (args.length > 0) ? args[0] : "";
+
+		if (method.equals("create-snapshot") && args.length > 1)
+		{
+			OutputStream out = new FileOutputStream(args[1]);
+			try
+			{
+				WikiConfigImpl.load(new ByteArrayInputStream(readXml())).saveSnapshot(out);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		else if (method.equals("generate"))
+		{
+			run("DefaultConfigEnWp.generate()", new Method()
+			{
+				@Override
+				public WikiConfigImpl load(byte[] data) throws Exception
+				{
+					return DefaultConfigEnWp.generate();
+				}
+			}, null);
+		}
+		else if (method.equals("xml"))
+		{
+			byte[] xml = readXml();
+			run("WikiConfigImpl.load()", new Method()
+			{
+				@Override
+				public WikiConfigImpl load(byte[] data) throws Exception
+				{
+					return WikiConfigImpl.load(new ByteArrayInputStream(data));
+				}
+			}, xml);
+			System.out.println(String.format("Size: %d bytes", xml.length));
+		}
+		else if (method.equals("snapshot") && args.length > 1)
+		{
+			byte[] snapshot = FileUtils.readFileToByteArray(new File(args[1]));
+			run("WikiConfigImpl.loadSnapshot()", new Method()
+			{
+				@Override
+				public WikiConfigImpl load(byte[] data) throws Exception
+				{
+					return WikiConfigImpl.loadSnapshot(new ByteArrayInputStream(data));
+				}
+			}, snapshot);
+			System.out.println(String.format("Size: %d bytes", snapshot.length));
+		}
+		else
+		{
+			System.err.println("Usage: WikiConfigStartupBenchmark "
+					+ "(create-snapshot FILE | generate | xml | snapshot FILE)");
+			System.exit(1);
+		}
+	}
+
+	// =========================================================================
+
+	private static void run(String name, Method method, byte[] data) throws Exception
+	{
+		long t0 = System.nanoTime();
+		method.load(data);
+		long first = System.nanoTime() - t0;
+
+		t0 = System.nanoTime();
+		for (int i = 0; i < ROUNDS; ++i)
+			method.load(data);
+		long steady = (System.nanoTime() - t0) / ROUNDS;
+
+		System.out.println(String.format(
+				"%-32s first: %8.2f ms, then: %8.2f ms",
+				name,
+				first / 1000000.,
+				steady / 1000000.));
+	}
+
+	private static byte[] readXml() throws Exception
+	{
+		InputStream in = WikiConfigStartupBenchmark.class.getResourceAsStream(XML_RESOURCE);
+		try
+		{
+			return IOUtils.toByteArray(in);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	// =========================================================================
+
+	private interface Method
+	{
+		public WikiConfigImpl load(byte[] data) throws Exception;
+	}
+}
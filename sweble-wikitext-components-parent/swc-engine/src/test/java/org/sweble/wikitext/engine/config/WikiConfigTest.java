@@ -18,11 +18,20 @@
 package org.sweble.wikitext.engine.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.Test;
+import org.sweble.wikitext.engine.ParserFunctionBase;
+import org.sweble.wikitext.engine.TagExtensionBase;
 import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
 
 public class WikiConfigTest
@@ -74,4 +83,118 @@ public class WikiConfigTest
 		// Now check if the configurations are really identical
 		assertEquals(xconf, gconf);
 	}
+
+	@Test
+	public void testSnapshotRoundTrip() throws Exception
+	{
+		WikiConfigImpl gconf = DefaultConfigEnWp.generate();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		gconf.saveSnapshot(out);
+
+		WikiConfigImpl c = WikiConfigImpl.loadSnapshot(
+				new ByteArrayInputStream(out.toByteArray()));
+
+		StringWriter wgconf = new StringWriter();
+		gconf.save(wgconf);
+		StringWriter wc = new StringWriter();
+		c.save(wc);
+
+		// First check if saved results looks identical (easier to debug)
+		assertEquals(wgconf.toString(), wc.toString());
+
+		// Now check if the configurations are really identical
+		assertEquals(gconf, c);
+	}
+
+	@Test
+	public void testFrozenConfigAnswersLookupsLikeMutableConfig() throws Exception
+	{
+		WikiConfigImpl mutable = DefaultConfigEnWp.generate();
+		WikiConfigImpl frozen = DefaultConfigEnWp.generate();
+		frozen.freeze();
+
+		for (I18nAlias alias : mutable.getI18nAliases())
+		{
+			for (String name : alias.getAliases())
+			{
+				for (String variant : new String[] { name, name.toLowerCase(), name.toUpperCase() })
+				{
+					assertEquals(mutable.getI18nAlias(variant), frozen.getI18nAlias(variant));
+					assertEquals(mutable.getParserFunction(variant), frozen.getParserFunction(variant));
+					assertEquals(mutable.getPageSwitch(variant), frozen.getPageSwitch(variant));
+				}
+			}
+		}
+
+		for (Namespace ns : mutable.getNamespaces())
+		{
+			for (String name : new String[] { ns.getName(), ns.getCanonical().toUpperCase() })
+				assertEquals(mutable.getNamespace(name), frozen.getNamespace(name));
+		}
+
+		for (Interwiki iw : mutable.getInterwikis())
+			assertEquals(mutable.getInterwiki(iw.getPrefix()), frozen.getInterwiki(iw.getPrefix()));
+
+		for (TagExtensionBase tagExt : mutable.getTagExtensions())
+			assertEquals(mutable.getTagExtension(tagExt.getId()), frozen.getTagExtension(tagExt.getId()));
+
+		assertSame(null, frozen.getNamespace("No such namespace"));
+		assertSame(null, frozen.getParserFunction("nosuchfunction:"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFrozenConfigCannotBeModified() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		config.freeze();
+		config.addInterwiki(new InterwikiImpl("nosuchwiki", "http://example.org/$1", false, false));
+	}
+
+	@Test
+	public void testOverlayTakesPrecedenceOverBase() throws Exception
+	{
+		WikiConfigImpl base = DefaultConfigEnWp.generate();
+		base.freeze();
+
+		WikiConfigImpl overlay = new WikiConfigImpl(base);
+		NamespaceImpl vorlage = new NamespaceImpl(
+				10,
+				"Vorlage",
+				"Template",
+				true,
+				false,
+				Collections.<String> emptyList());
+		overlay.addNamespace(vorlage);
+		overlay.addI18nAlias(new I18nAliasImpl("lc", false, Arrays.asList("KLEIN:")));
+		overlay.freeze();
+
+		// Namespaces of the overlay replace those of the base with the same id
+		assertSame(vorlage, overlay.getNamespace("vorlage"));
+		assertSame(vorlage, overlay.getNamespace("Template"));
+		assertSame(vorlage, overlay.getNamespace(10));
+		assertSame(vorlage, overlay.getTemplateNamespace());
+		assertSame(base.getNamespace("Category"), overlay.getNamespace("Category"));
+		assertEquals(base.getNamespaces().size(), overlay.getNamespaces().size());
+
+		// Parser functions are bound to the overlay and found by the aliases
+		// of both the overlay and the base
+		ParserFunctionBase lc = overlay.getParserFunction("klein:");
+		assertSame(overlay, lc.getWikiConfig());
+		assertSame(lc, overlay.getParserFunction("LC:"));
+		assertNotSame(base.getParserFunction("LC:"), lc);
+		assertNull(base.getParserFunction("klein:"));
+
+		// Everything else is shared
+		assertSame(base.getInterwiki("de"), overlay.getInterwiki("de"));
+		assertEquals(
+				base.getParserConfig().resolveXmlEntity("nbsp"),
+				overlay.getParserConfig().resolveXmlEntity("nbsp"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOverlayRequiresFrozenBase() throws Exception
+	{
+		new WikiConfigImpl(DefaultConfigEnWp.generate());
+	}
 }
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.ext.parser_functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Evaluates random expressions with the compiled programs of ExprParser and
+ * with ReferenceExprParser, the parser which interpreted expressions before
+ * they were compiled. Results and error messages must be the same.
+ */
+public class ExprDifferentialTest
+{
+	private static final int EXPRESSIONS = 300000;
+
+	private static final String[] OPERANDS = {
+			"0", "1", "2", "7", "42", "100", "0.5", ".5", "5.", "1.5e3", "2e-2",
+			"1e400", "e", "pi", "3.14159", };
+
+	private static final String[] OPERATORS = {
+			"+", "-", "*", "/", "div", "mod", "^", "=", "!=", "<>", "<", "<=",
+			">", ">=", "and", "or", "e", "&lt;", "&gt;", "&amp;", };
+
+	private static final String[] UNARY = {
+			"-", "+", "not", "sin", "cos", "tan", "asin", "acos", "atan", "exp",
+			"ln", "abs", "floor", "ceil", "trunc", };
+
+	private static final String[] OTHER = {
+			"(", ")", "", "x", "#", "1,000", "&minus;", "&foo;", "−", };
+
+	// =========================================================================
+
+	@Test
+	public void testCompiledProgramsMatchTheReferenceParser() throws Exception
+	{
+		Random random = new Random(42);
+		for (int i = 0; i < EXPRESSIONS; ++i)
+		{
+			String expr = randomExpression(random);
+			assertEquals(expr, evaluateReference(expr), evaluate(expr));
+		}
+	}
+
+	// =========================================================================
+
+	static String evaluate(String expr)
+	{
+		try
+		{
+			return new ExprParser().parse(expr);
+		}
+		catch (ExprParser.ExprError e)
+		{
+			return "error: " + e.getMessage();
+		}
+		catch (RuntimeException e)
+		{
+			return e.getClass().getName();
+		}
+	}
+
+	static String evaluateReference(String expr)
+	{
+		try
+		{
+			return new ReferenceExprParser().parse(expr);
+		}
+		catch (ReferenceExprParser.ExprError e)
+		{
+			return "error: " + e.getMessage();
+		}
+		catch (RuntimeException e)
+		{
+			return e.getClass().getName();
+		}
+	}
+
+	/**
+	 * Mostly well-formed expressions with the occasional missing operand,
+	 * unbalanced parenthesis or unknown word.
+	 */
+	static String randomExpression(Random random)
+	{
+		StringBuilder b = new StringBuilder();
+
+		int depth = 0;
+		int terms = 1 + random.nextInt(6);
+		for (int i = 0; i < terms; ++i)
+		{
+			if (i > 0)
+				append(b, random, OPERATORS);
+
+			while (random.nextInt(4) == 0)
+			{
+				if (random.nextBoolean())
+				{
+					append(b, random, UNARY);
+				}
+				else
+				{
+					b.append('(');
+					++depth;
+				}
+			}
+
+			if (random.nextInt(20) == 0)
+				append(b, random, OTHER);
+			else
+				append(b, random, OPERANDS);
+
+			while (depth > 0 && random.nextInt(3) == 0)
+			{
+				b.append(')');
+				--depth;
+			}
+		}
+
+		while (depth > 0 && random.nextInt(8) != 0)
+		{
+			b.append(')');
+			--depth;
+		}
+
+		/* The precision of round is only given as a single small operand.
+		 * Rounding to millions of digits takes very long with either parser.
+		 */
+		if (random.nextInt(4) == 0)
+			b.append(" round ").append(random.nextInt(5) - 1);
+
+		return b.toString();
+	}
+
+	private static void append(StringBuilder b, Random random, String[] tokens)
+	{
+		if (random.nextBoolean())
+			b.append(' ');
+		b.append(tokens[random.nextInt(tokens.length)]);
+		if (random.nextBoolean())
+			b.append(' ');
+	}
+}
@@ -18,11 +18,14 @@
 package org.sweble.wikitext.engine.ext.parser_functions;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.sweble.wikitext.engine.ext.parser_functions.ExprParser.ExprError;
 
 public class ExprTest
 {
@@ -161,6 +164,37 @@ public class ExprTest
 				0);
 	}
 
+	@Test
+	public void testCompiledProgramsAreReused() throws Exception
+	{
+		assertSame(ExprParser.compile("(1 + 2) * 3"), ExprParser.compile("(1 + 2) * 3"));
+		assertEquals(9, Double.parseDouble(ExprParser.compile("(1 + 2) * 3").evaluate()), 0);
+	}
+
+	@Test
+	public void testErrorsAreReportedInEvaluationOrder() throws Exception
+	{
+		try
+		{
+			p.parse("1 / 0 + ");
+			fail();
+		}
+		catch (ExprError e)
+		{
+			assertEquals("Expression error: division_by_zero", e.getMessage());
+		}
+
+		try
+		{
+			p.parse("1 / 2 + ");
+			fail();
+		}
+		catch (ExprError e)
+		{
+			assertEquals("Expression error: Missing operand for +.", e.getMessage());
+		}
+	}
+
 	private static double round(double value, int digits)
 	{
 		return new BigDecimal(value)
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.ext.parser_functions;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class ParserFunctionSwitchTest
+{
+	/**
+	 * Plain text labels, evaluated using the compiled cases.
+	 */
+	private static final String COMPILED =
+			"{{#switch: %s | a | foo = Foo | #default = D | 5 = Five | bar | baz = Baz | last }}";
+
+	/**
+	 * The same labels hidden in templates, evaluated case by case.
+	 */
+	private static final String EVALUATED =
+			"{{#switch: %s | {{#if:1|a}} | {{#if:1|foo}} = Foo | {{#if:1|#default}} = D | {{#if:1|5}} = Five | {{#if:1|bar}} | {{#if:1|baz}} = Baz | last }}";
+
+	private static final String[] TESTS = {
+			"a", "foo", "5", "5.0", "bar", "baz", "last", "unknown", "" };
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final WtEngineImpl engine = new WtEngineImpl(config);
+
+	@Test
+	public void testCompiledCasesMatchCaseByCaseEvaluation() throws Exception
+	{
+		for (String test : TESTS)
+		{
+			assertEquals(
+					test,
+					expand(String.format(EVALUATED, test)),
+					expand(String.format(COMPILED, test)));
+		}
+	}
+
+	private String expand(String wikitext) throws Exception
+	{
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		return engine.postprocess(pageId, wikitext, null).getPage().toString();
+	}
+}
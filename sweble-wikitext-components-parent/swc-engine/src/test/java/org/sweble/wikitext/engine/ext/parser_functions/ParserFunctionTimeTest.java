@@ -0,0 +1,100 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.ext.parser_functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.config.WikiRuntimeInfo;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+
+public class ParserFunctionTimeTest
+{
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	private final WtEngineImpl engine = new WtEngineImpl(config);
+
+	private int clockReads;
+
+	public ParserFunctionTimeTest()
+	{
+		config.setRuntimeInfo(new WikiRuntimeInfo()
+		{
+			@Override
+			public Calendar getDateAndTime(Locale locale)
+			{
+				++clockReads;
+				Calendar timestamp = new GregorianCalendar(locale);
+				timestamp.setLenient(true);
+				timestamp.set(2012, 9, 18, 14, 25, 13);
+				return timestamp;
+			}
+
+			@Override
+			public Calendar getDateAndTime()
+			{
+				return getDateAndTime(Locale.getDefault());
+			}
+		});
+	}
+
+	@Test
+	public void testFormatCodes() throws Exception
+	{
+		ZonedDateTime timestamp = ZonedDateTime.of(2012, 3, 8, 14, 25, 13, 0, ZoneOffset.UTC);
+		assertEquals(
+				"8. March 2012 (8March2012)",
+				TimeFormat.compile("j. F Y (jFY)").format(timestamp, Locale.ENGLISH));
+
+		String page = expand("{{#time:j. F Y}}");
+		assertTrue(page, page.contains("18. October 2012"));
+	}
+
+	@Test
+	public void testClockIsReadOncePerPageAndLocale() throws Exception
+	{
+		expand("{{#time:Y}} {{#time:F}} {{CURRENTYEAR}} {{CURRENTMONTH}} {{CURRENTDAY}}");
+		assertEquals(2, clockReads);
+
+		expand("{{#time:Y}} {{CURRENTYEAR}}");
+		assertEquals(4, clockReads);
+	}
+
+	@Test
+	public void testCompiledFormatsAreReused() throws Exception
+	{
+		assertTrue(TimeFormat.compile("j F Y") == TimeFormat.compile("j F Y"));
+	}
+
+	private String expand(String wikitext) throws Exception
+	{
+		PageId pageId = new PageId(PageTitle.make(config, "Test"), -1);
+		return engine.postprocess(pageId, wikitext, null).getPage().toString();
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.UrlEncoding;
+import org.sweble.wikitext.parser.nodes.WtUrl;
+
+public class BatchHtmlRendererCallbackTest
+{
+	private static final String WIKITEXT =
+			"[[Exists]] [[Missing]] [[Exists|again]] [[File:Missing.png|thumb]]";
+
+	private final WikiConfigImpl config = DefaultConfigEnWp.generate();
+
+	@Test
+	public void testLinkTargetsAreResolvedInOneBatch() throws Exception
+	{
+		PageTitle title = PageTitle.make(config, "Test");
+		EngProcessedPage page = new WtEngineImpl(config)
+				.postprocess(new PageId(title, -1), WIKITEXT, null);
+
+		Callback callback = new Callback();
+		String html = HtmlRenderer.print(callback, config, title, page);
+
+		assertEquals(1, callback.existenceBatches.size());
+		assertEquals(2, callback.existenceBatches.get(0).size());
+		assertEquals(1, callback.mediaBatches.size());
+		assertEquals(0, callback.singleLookups);
+
+		assertTrue(html, html.contains("title=\"Missing (page does not exist)\""));
+		assertTrue(html, html.contains("title=\"Exists\""));
+	}
+
+	// =========================================================================
+
+	private static final class Callback
+			implements
+				BatchHtmlRendererCallback
+	{
+		private final List<Collection<PageTitle>> existenceBatches =
+				new ArrayList<Collection<PageTitle>>();
+
+		private final List<Collection<MediaRequest>> mediaBatches =
+				new ArrayList<Collection<MediaRequest>>();
+
+		private int singleLookups;
+
+		@Override
+		public Map<PageTitle, Boolean> resourcesExist(Collection<PageTitle> targets)
+		{
+			existenceBatches.add(new ArrayList<PageTitle>(targets));
+
+			Map<PageTitle, Boolean> result = new HashMap<PageTitle, Boolean>();
+			for (PageTitle target : targets)
+				result.put(target, target.getTitle().equals("Exists"));
+			return result;
+		}
+
+		@Override
+		public Map<MediaRequest, MediaInfo> getMediaInfo(Collection<MediaRequest> requests)
+		{
+			mediaBatches.add(new ArrayList<MediaRequest>(requests));
+
+			Map<MediaRequest, MediaInfo> result = new HashMap<MediaRequest, MediaInfo>();
+			for (MediaRequest request : requests)
+				result.put(request, null);
+			return result;
+		}
+
+		@Override
+		public boolean resourceExists(PageTitle target)
+		{
+			++singleLookups;
+			return false;
+		}
+
+		@Override
+		public MediaInfo getMediaInfo(String title, int width, int height)
+		{
+			++singleLookups;
+			return null;
+		}
+
+		@Override
+		public String makeUrl(PageTitle target)
+		{
+			return "/wiki/" + UrlEncoding.WIKI.encode(target.getNormalizedFullTitle());
+		}
+
+		@Override
+		public String makeUrl(WtUrl target)
+		{
+			return target.getProtocol() + ":" + target.getPath();
+		}
+
+		@Override
+		public String makeUrlMissingTarget(String path)
+		{
+			return "/w/index.php?title=" + path + "&amp;action=edit&amp;redlink=1";
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.UrlEncoding;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtUrl;
+
+/**
+ * Measures the time needed to render large articles with HtmlRenderer, once
+ * with precompiled pt() templates and once with a renderer which interprets
+ * the format strings on every call like pt() did before templates were
+ * compiled.
+ * 
+ * Not run as part of the test suite, start the main method from the module
+ * directory to run the benchmark. The articles are taken from
+ * src/test/resources/engine/output/wikitext, another directory can be passed
+ * as argument.
+ * 
+ * TreeTemplateBenchmark measures the execution of the templates alone,
+ * without rendering a page.
+ */
+public class HtmlRendererBenchmark
+{
+	private static final int WARMUP_ROUNDS = 50;
+
+	private static final int ROUNDS = 200;
+
+	private static final String DEFAULT_DIR = "src/test/resources/engine/output/wikitext";
+
+	// =========================================================================
+
+	public static void main(String[] args) throws Exception
+	{
+		File dir = new File((args.length > 0) ? args[0] : DEFAULT_DIR);
+
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		WtEngineImpl engine = new WtEngineImpl(config);
+
+		ArrayList<PageTitle> titles = new ArrayList<PageTitle>();
+		ArrayList<EngProcessedPage> pages = new ArrayList<EngProcessedPage>();
+		for (File file : dir.listFiles())
+		{
+			if (!file.getName().endsWith(".wikitext"))
+				continue;
+
+			PageTitle title = PageTitle.make(config, file.getName());
+			String wikitext = FileUtils.readFileToString(file, "UTF-8");
+			titles.add(title);
+			pages.add(engine.postprocess(new PageId(title, -1), wikitext, null));
+		}
+
+		for (int i = 0; i < pages.size(); ++i)
+		{
+			PageTitle title = titles.get(i);
+			EngProcessedPage page = pages.get(i);
+
+			String compiled = render(false, config, title, page);
+			String interpreted = render(true, config, title, page);
+			if (!compiled.equals(interpreted))
+				throw new AssertionError("Output differs for " + title);
+
+			long tInterpreted = time(true, config, title, page);
+			long tCompiled = time(false, config, title, page);
+
+			System.out.println(String.format(
+					"%-40s %8d chars, interpreted: %8.3f ms, compiled: %8.3f ms, speedup: %5.2fx",
+					title.getTitle(),
+					compiled.length(),
+					tInterpreted / 1000000.,
+					tCompiled / 1000000.,
+					(double) tInterpreted / tCompiled));
+		}
+	}
+
+	// =========================================================================
+
+	private static long time(
+			boolean interpreted,
+			WikiConfig config,
+			PageTitle title,
+			EngProcessedPage page)
+	{
+		for (int i = 0; i < WARMUP_ROUNDS; ++i)
+			render(interpreted, config, title, page);
+
+		long t0 = System.nanoTime();
+		for (int i = 0; i < ROUNDS; ++i)
+			render(interpreted, config, title, page);
+		return (System.nanoTime() - t0) / ROUNDS;
+	}
+
+	private static String render(
+			boolean interpreted,
+			WikiConfig config,
+			PageTitle title,
+			EngProcessedPage page)
+	{
+		StringWriter w = new StringWriter();
+		HtmlRenderer renderer = interpreted ?
+				new InterpretingRenderer(config, title, w) :
+				new CompiledRenderer(config, title, w);
+		renderer.go(page);
+		return w.toString();
+	}
+
+	// =========================================================================
+
+	private static final class CompiledRenderer
+			extends
+				HtmlRenderer
+	{
+		public CompiledRenderer(WikiConfig config, PageTitle title, Writer w)
+		{
+			super(new Callback(), config, title, w);
+		}
+	}
+
+	/**
+	 * Interprets the format string of a template on every call, collecting
+	 * the arguments of literal parts and printing them with String.format().
+	 */
+	private static final class InterpretingRenderer
+			extends
+				HtmlRenderer
+	{
+		public InterpretingRenderer(WikiConfig config, PageTitle title, Writer w)
+		{
+			super(new Callback(), config, title, w);
+		}
+
+		@Override
+		protected void pt(TreeTemplate template, Object... args)
+		{
+			String format = template.getFormat();
+
+			ArrayList<Object> a = new ArrayList<Object>(args.length);
+
+			int arg = 0;
+			int last = 0;
+			for (int i = 0; i < format.length(); ++i)
+			{
+				char ch = format.charAt(i);
+				if (ch == '%' && format.length() > i + 1)
+				{
+					char ch2 = format.charAt(i + 1);
+					switch (ch2)
+					{
+						case '!':
+						{
+							printPart(format, a, last, i);
+							last = i + 2;
+
+							WtNode n = (WtNode) args[arg++];
+							if (n.isList())
+							{
+								iterate(n);
+							}
+							else
+							{
+								dispatch(n);
+							}
+							break;
+						}
+
+						case '=':
+						case '~':
+						{
+							printPart(format, a, last, i);
+							last = i + 2;
+
+							String s = (String) args[arg++];
+							p.print(esc(s, ch2 == '~'));
+							break;
+						}
+
+						case '%':
+							break;
+
+						default:
+							a.add(args[arg++]);
+							break;
+					}
+
+					++i;
+				}
+			}
+
+			printPart(format, a, last, format.length());
+		}
+
+		private void printPart(String format, ArrayList<Object> a, int last, int i)
+		{
+			if (i - last > 0)
+			{
+				String f = format.substring(last, i);
+				if (a.isEmpty())
+				{
+					p.print(f);
+				}
+				else
+				{
+					p.print(String.format(f, a.toArray()));
+					a.clear();
+				}
+			}
+		}
+	}
+
+	// =========================================================================
+
+	private static final class Callback
+			implements
+				HtmlRendererCallback
+	{
+		private static final String LOCAL_URL = "/mediawiki/index.php/";
+
+		@Override
+		public boolean resourceExists(PageTitle target)
+		{
+			return false;
+		}
+
+		@Override
+		public MediaInfo getMediaInfo(String title, int width, int height)
+		{
+			return null;
+		}
+
+		@Override
+		public String makeUrl(PageTitle target)
+		{
+			return LOCAL_URL + UrlEncoding.WIKI.encode(target.getNormalizedFullTitle());
+		}
+
+		@Override
+		public String makeUrl(WtUrl target)
+		{
+			if (target.getProtocol().isEmpty())
+				return target.getPath();
+			return target.getProtocol() + ":" + target.getPath();
+		}
+
+		@Override
+		public String makeUrlMissingTarget(String path)
+		{
+			return LOCAL_URL + "?title=" + path + "&amp;action=edit&amp;redlink=1";
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Measures the time needed to execute the pt() templates of HtmlRenderer
+ * alone, once compiled and once interpreted like pt() did before templates
+ * were compiled. Unlike HtmlRendererBenchmark no page is rendered: nodes
+ * passed for "%!" print nothing and both variants print into the same
+ * StringBuilder using the same escaping. The numbers only cover the overhead
+ * of executing the format strings.
+ *
+ * Not run as part of the test suite, start the main method to run the
+ * benchmark. It only depends on TreeTemplate and WeightedLruCache.
+ */
+public class TreeTemplateBenchmark
+{
+	private static final int ROUNDS = 8;
+
+	private static final int PASSES = 20000;
+
+	private static final Object NODE = new Object();
+
+	/**
+	 * The format strings of the templates in HtmlRenderer with typical
+	 * arguments.
+	 */
+	private static final Object[][] CALLS = {
+			{ "<a rel=\"nofollow\" class=\"external text\" href=\"%s\">%!</a>", "http://example.org/a?b=c", NODE },
+			{ "&amp;#%d;", 65533 },
+			{ "<div class=\"%s\">", "thumb tright" },
+			{ "<div class=\"%s\"%s>", "thumbinner", " style=\"width:222px;\"" },
+			{ "<a href=\"%s\"%s%s>", "/wiki/File:Foo.png", " class=\"image\"", "" },
+			{ "<img alt=\"%s\" src=\"%s\" width=\"%d\" height=\"%d\"%s />", "Foo", "/images/Foo.png", 220, 165, " class=\"thumbimage\"" },
+			{ "<div class=\"thumbcaption\">%!</div>", NODE },
+			{ "<a href=\"%s\" class=\"new\" title=\"%s (page does not exist)\">%=%!%=</a>", "/w/index.php?title=Foo&amp;action=edit", "Foo", "", NODE, "s" },
+			{ "<a href=\"%s\" title=\"%s\">%=%!%=</a>", "/wiki/Some_article", "Some article", "", NODE, "" },
+			{ "<a href=\"%s\" title=\"%s\">%=%=%=</a>", "/wiki/Some_article", "Some article", "", "Some article", "s" },
+			{ "<strong class=\"selflink\">%=%=%=</strong>", "", "Test", "" },
+			{ "<h%d><span class=\"mw-headline\" id=\"%s\">%!</span></h%d>", 2, "Early_life", NODE, 2 },
+			{ "<pre>%!</pre>", NODE },
+			{ "<table%!>", NODE },
+			{ "<td%!>", NODE },
+			{ "<tr%!>", NODE },
+			{ "<a href=\"%s\">%s</a>", "http://example.org/", "http://example.org/" },
+			{ " %s=\"%~\"", "class", "wikitable \"sortable\"" },
+			{ "&#%d;", 8212 },
+			{ "<%s%!>", "span", NODE },
+			{ "</%s>", "span" },
+			{ "<%s%! />", "br", NODE },
+			{ "&%s;", "nbsp" },
+	};
+
+	private static final StringBuilder p = new StringBuilder(1 << 16);
+
+	// =========================================================================
+
+	public static void main(String[] args)
+	{
+		int n = CALLS.length;
+		String[] formats = new String[n];
+		TreeTemplate[] templates = new TreeTemplate[n];
+		Object[][] templateArgs = new Object[n][];
+		for (int i = 0; i < n; ++i)
+		{
+			formats[i] = (String) CALLS[i][0];
+			templates[i] = TreeTemplate.compile(formats[i]);
+			templateArgs[i] = Arrays.copyOfRange(CALLS[i], 1, CALLS[i].length);
+		}
+
+		for (int i = 0; i < n; ++i)
+		{
+			p.setLength(0);
+			compiled(templates[i], templateArgs[i]);
+			String compiled = p.toString();
+
+			p.setLength(0);
+			interpreted(formats[i], templateArgs[i]);
+			String interpreted = p.toString();
+
+			if (!compiled.equals(interpreted))
+				throw new AssertionError("Output differs for " + formats[i]);
+		}
+
+		System.out.println(System.getProperty("java.version"));
+
+		for (int round = 0; round < ROUNDS; ++round)
+		{
+			long t0 = System.nanoTime();
+			for (int k = 0; k < PASSES; ++k)
+			{
+				p.setLength(0);
+				for (int i = 0; i < n; ++i)
+					interpreted(formats[i], templateArgs[i]);
+			}
+
+			long t1 = System.nanoTime();
+			for (int k = 0; k < PASSES; ++k)
+			{
+				p.setLength(0);
+				for (int i = 0; i < n; ++i)
+					compiled(templates[i], templateArgs[i]);
+			}
+
+			long t2 = System.nanoTime();
+
+			double tInterpreted = (t1 - t0) / (double) (PASSES * n);
+			double tCompiled = (t2 - t1) / (double) (PASSES * n);
+
+			System.out.println(String.format(
+					"round %d: interpreted: %7.1f ns/call, compiled: %6.1f ns/call, speedup: %5.2fx",
+					round,
+					tInterpreted,
+					tCompiled,
+					tInterpreted / tCompiled));
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * The loop of HtmlRendererBase.pt(TreeTemplate, ...).
+	 */
+	private static void compiled(TreeTemplate template, Object... args)
+	{
+		final byte[] ops = template.ops;
+
+		int arg = 0;
+		for (int i = 0; i < ops.length; ++i)
+		{
+			switch (ops[i])
+			{
+				case TreeTemplate.LITERAL:
+					p.append(template.texts[i]);
+					break;
+
+				case TreeTemplate.NODE:
+					++arg;
+					break;
+
+				case TreeTemplate.ESC:
+					p.append(esc((String) args[arg++], false));
+					break;
+
+				case TreeTemplate.ESC_ATTR:
+					p.append(esc((String) args[arg++], true));
+					break;
+
+				case TreeTemplate.STRING:
+					p.append(String.valueOf(args[arg++]));
+					break;
+
+				case TreeTemplate.DECIMAL:
+					p.append(decimal(args[arg++]));
+					break;
+
+				case TreeTemplate.FORMAT:
+				{
+					int count = template.argCounts[i];
+					Object[] a = Arrays.copyOfRange(args, arg, arg + count);
+					arg += count;
+					p.append(String.format(template.texts[i], a));
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The loop of HtmlRendererBenchmark.InterpretingRenderer.pt().
+	 */
+	private static void interpreted(String format, Object... args)
+	{
+		ArrayList<Object> a = new ArrayList<Object>(args.length);
+
+		int arg = 0;
+		int last = 0;
+		for (int i = 0; i < format.length(); ++i)
+		{
+			char ch = format.charAt(i);
+			if (ch == '%' && format.length() > i + 1)
+			{
+				char ch2 = format.charAt(i + 1);
+				switch (ch2)
+				{
+					case '!':
+						printPart(format, a, last, i);
+						last = i + 2;
+						++arg;
+						break;
+
+					case '=':
+					case '~':
+						printPart(format, a, last, i);
+						last = i + 2;
+						p.append(esc((String) args[arg++], ch2 == '~'));
+						break;
+
+					case '%':
+						break;
+
+					default:
+						a.add(args[arg++]);
+						break;
+				}
+
+				++i;
+			}
+		}
+
+		printPart(format, a, last, format.length());
+	}
+
+	private static void printPart(String format, ArrayList<Object> a, int last, int i)
+	{
+		if (i - last > 0)
+		{
+			String f = format.substring(last, i);
+			if (a.isEmpty())
+			{
+				p.append(f);
+			}
+			else
+			{
+				p.append(String.format(f, a.toArray()));
+				a.clear();
+			}
+		}
+	}
+
+	private static String decimal(Object value)
+	{
+		if (value instanceof Integer || value instanceof Long)
+			return value.toString();
+
+		return String.format("%d", value);
+	}
+
+	private static String esc(String s, boolean forAttribute)
+	{
+		StringBuilder b = null;
+		for (int i = 0; i < s.length(); ++i)
+		{
+			char c = s.charAt(i);
+
+			String replacement = null;
+			if (c == '<')
+				replacement = "&lt;";
+			else if (c == '>')
+				replacement = "&gt;";
+			else if (c == '&')
+				replacement = "&amp;";
+			else if (forAttribute && c == '"')
+				replacement = "&quot;";
+
+			if (replacement != null && b == null)
+			{
+				b = new StringBuilder(s.length() + 8);
+				b.append(s, 0, i);
+			}
+
+			if (b != null)
+			{
+				if (replacement != null)
+					b.append(replacement);
+				else
+					b.append(c);
+			}
+		}
+		return (b == null) ? s : b.toString();
+	}
+}
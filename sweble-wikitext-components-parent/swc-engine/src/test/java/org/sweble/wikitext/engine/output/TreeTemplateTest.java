@@ -0,0 +1,92 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.utils.StringTools;
+
+public class TreeTemplateTest
+{
+	@Test
+	public void testSimpleConversionsMatchStringFormat() throws Exception
+	{
+		assertEquals(
+				String.format("<h%d id=\"%s\"></h%d>", 2, "x", 2),
+				print("<h%d id=\"%s\"></h%d>", 2, "x", 2));
+	}
+
+	@Test
+	public void testEscapedStrings() throws Exception
+	{
+		assertEquals(
+				"<a title=\"" + StringTools.escHtml("<\">", true) + "\">"
+						+ StringTools.escHtml("<b>", false) + "</a>",
+				print("<a title=\"%~\">%=</a>", "<\">", "<b>"));
+	}
+
+	@Test
+	public void testOtherConversionsAreLeftToStringFormat() throws Exception
+	{
+		assertEquals("0A-x", print("%02X-%s", 10, "x"));
+		assertEquals("5% x", print("%d%% %=", 5, "x"));
+	}
+
+	@Test
+	public void testPercentWithoutArgumentsIsPrintedAsIs() throws Exception
+	{
+		assertEquals("100%% ok", print("100%% %=", "ok"));
+	}
+
+	@Test
+	public void testFormatsPassedAsStringsAreCached() throws Exception
+	{
+		assertSame(TreeTemplate.get("<p>%s</p>"), TreeTemplate.get("<p>%s</p>"));
+	}
+
+	// =========================================================================
+
+	private static String print(String format, Object... args)
+	{
+		StringWriter w = new StringWriter();
+		Printer printer = new Printer(w);
+		printer.print(TreeTemplate.compile(format), args);
+		return w.toString();
+	}
+
+	private static final class Printer
+			extends
+				HtmlRendererBase
+	{
+		public Printer(StringWriter w)
+		{
+			super(w);
+		}
+
+		public void print(TreeTemplate template, Object... args)
+		{
+			pt(template, args);
+			p.flush();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngineImpl;
+import org.sweble.wikitext.engine.config.WikiConfigImpl;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.engine.utils.UrlEncoding;
+import org.sweble.wikitext.parser.nodes.WtUrl;
+
+public class Utf8ByteWriterTest
+{
+	private static final char[] CHARS = {
+			'a', '<', 'ä', '߿', 'ࠀ', '€', '￿',
+			'\uD83D', '\uDE00', '\uD800', '\uDC00' };
+
+	@Test
+	public void testEncodingMatchesStringGetBytes() throws Exception
+	{
+		Random random = new Random(42);
+		Utf8ByteWriter w = new Utf8ByteWriter(1);
+		for (int round = 0; round < 10000; ++round)
+		{
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int i = 0; i < length; ++i)
+				sb.append(CHARS[random.nextInt(CHARS.length)]);
+			String s = sb.toString();
+
+			// Write in random chunks, so that surrogate pairs get split
+			w.reset();
+			int i = 0;
+			while (i < s.length())
+			{
+				int chunk = Math.min(s.length() - i, 1 + random.nextInt(3));
+				if (random.nextBoolean())
+					w.write(s, i, chunk);
+				else
+					w.write(s.toCharArray(), i, chunk);
+				i += chunk;
+			}
+
+			assertArrayEquals(s, s.getBytes("UTF-8"), w.toByteArray());
+		}
+	}
+
+	@Test
+	public void testSizeDoesNotBreakSurrogatePairs() throws Exception
+	{
+		Utf8ByteWriter w = new Utf8ByteWriter();
+		w.write("a\uD83D");
+		assertEquals(1, w.size());
+		w.write('\uDE00');
+		assertEquals(5, w.size());
+
+		assertArrayEquals("a\uD83D\uDE00".getBytes("UTF-8"), w.toByteArray());
+	}
+
+	@Test
+	public void testRenderedBytesMatchRenderedString() throws Exception
+	{
+		WikiConfigImpl config = DefaultConfigEnWp.generate();
+		PageTitle title = PageTitle.make(config, "Test");
+		EngProcessedPage page = new WtEngineImpl(config).postprocess(
+				new PageId(title, -1),
+				"== Grüße ==\n'''€''' & [[Link|<b>x</b>]] 😀\n",
+				null);
+
+		Callback callback = new Callback();
+		String html = HtmlRenderer.print(callback, config, title, page);
+
+		assertArrayEquals(
+				html.getBytes("UTF-8"),
+				HtmlRenderer.printUtf8(callback, config, title, page));
+
+		Utf8ByteWriter out = new Utf8ByteWriter();
+		out.write("garbage");
+		out.reset();
+		HtmlRenderer.print(callback, config, out, title, page);
+		assertEquals(html, out.toString());
+	}
+
+	// =========================================================================
+
+	private static final class Callback
+			implements
+				HtmlRendererCallback
+	{
+		@Override
+		public boolean resourceExists(PageTitle target)
+		{
+			return true;
+		}
+
+		@Override
+		public MediaInfo getMediaInfo(String title, int width, int height)
+		{
+			return null;
+		}
+
+		@Override
+		public String makeUrl(PageTitle target)
+		{
+			return "/wiki/" + UrlEncoding.WIKI.encode(target.getNormalizedFullTitle());
+		}
+
+		@Override
+		public String makeUrl(WtUrl target)
+		{
+			return target.getProtocol() + ":" + target.getPath();
+		}
+
+		@Override
+		public String makeUrlMissingTarget(String path)
+		{
+			return "/w/index.php?title=" + path;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
+import org.sweble.wikitext.engine.profiling.TemplateProfiler.Kind;
+import org.sweble.wikitext.engine.utils.DefaultConfigEnWp;
+import org.sweble.wikitext.parser.nodes.WtNodeList;
+import org.sweble.wikitext.parser.nodes.WtTemplate;
+import org.sweble.wikitext.parser.nodes.WtTemplateArgument;
+
+public class TemplateProfilerTest
+{
+	private final EngineNodeFactory nf = DefaultConfigEnWp.generate().getNodeFactory();
+
+	private final List<WtTemplateArgument> noArgs = Collections.emptyList();
+
+	@Test
+	public void testNestedCallsAreAggregated() throws Exception
+	{
+		TemplateProfiler profiler = new TemplateProfiler();
+
+		for (int i = 0; i < 2; ++i)
+		{
+			WtTemplate outer = template("Outer");
+			WtTemplate inner = template("Inner");
+
+			profiler.beforeResolveTransclusion(null, outer, "outer", noArgs);
+			profiler.beforeResolveTransclusion(null, inner, "Inner", noArgs);
+			Thread.sleep(2);
+			profiler.afterResolveTransclusion(null, inner, "Inner", noArgs, nf.text("abc"), null);
+			profiler.afterResolveTransclusion(null, outer, "outer", noArgs, nf.list(nf.text("abc"), nf.text("de")), null);
+		}
+
+		List<TemplateProfile> report = profiler.getReport(TemplateProfiler.BY_INCLUSIVE_TIME);
+		assertEquals(2, report.size());
+
+		TemplateProfile outer = report.get(0);
+		assertEquals(Kind.TRANSCLUSION, outer.getKind());
+		assertEquals("Outer", outer.getName());
+		assertEquals(2, outer.getCalls());
+		assertEquals(10, outer.getOutputSize());
+
+		TemplateProfile inner = report.get(1);
+		assertEquals("Inner", inner.getName());
+		assertEquals(2, inner.getCalls());
+		assertEquals(6, inner.getOutputSize());
+
+		assertTrue(inner.getInclusiveTime() >= 4000000);
+		assertEquals(inner.getInclusiveTime(), inner.getExclusiveTime());
+		assertEquals(
+				outer.getInclusiveTime() - inner.getInclusiveTime(),
+				outer.getExclusiveTime());
+	}
+
+	@Test
+	public void testMissingAfterHookIsDropped() throws Exception
+	{
+		TemplateProfiler profiler = new TemplateProfiler();
+
+		WtTemplate outer = template("Outer");
+		WtTemplate failed = template("Failed");
+
+		profiler.beforeResolveTransclusion(null, outer, "Outer", noArgs);
+		profiler.beforeResolveTransclusion(null, failed, "Failed", noArgs);
+		profiler.afterResolveTransclusion(null, outer, "Outer", noArgs, outer, null);
+
+		List<TemplateProfile> report = profiler.getReport();
+		assertEquals(1, report.size());
+		assertEquals("Outer", report.get(0).getName());
+	}
+
+	@Test
+	public void testArgumentExpansionIsChargedToTheCaller() throws Exception
+	{
+		TemplateProfiler profiler = new TemplateProfiler();
+
+		WtTemplate caller = template("Caller");
+		WtTemplate callee = template("Callee");
+		WtTemplate inArgument = template("InArgument");
+
+		profiler.beforeResolveTransclusion(null, caller, "Caller", noArgs);
+		profiler.beforeResolveTransclusion(null, callee, "Callee", noArgs);
+
+		profiler.beforeExpandArgument(null, nf.value(nf.list()));
+		profiler.beforeResolveTransclusion(null, inArgument, "InArgument", noArgs);
+		Thread.sleep(2);
+		profiler.afterResolveTransclusion(null, inArgument, "InArgument", noArgs, nf.text("x"), null);
+		Thread.sleep(2);
+		profiler.afterExpandArgument(null, nf.value(nf.list()));
+
+		profiler.afterResolveTransclusion(null, callee, "Callee", noArgs, nf.text("x"), null);
+		profiler.afterResolveTransclusion(null, caller, "Caller", noArgs, nf.text("x"), null);
+
+		TemplateProfile callerProfile = find(profiler, "Caller");
+		TemplateProfile calleeProfile = find(profiler, "Callee");
+		TemplateProfile argProfile = find(profiler, "InArgument");
+
+		assertTrue(calleeProfile.getInclusiveTime() < 2000000);
+		assertTrue(argProfile.getInclusiveTime() >= 2000000);
+		assertTrue(callerProfile.getExclusiveTime() >= 2000000);
+		assertEquals(
+				callerProfile.getInclusiveTime()
+						- calleeProfile.getInclusiveTime()
+						- argProfile.getInclusiveTime(),
+				callerProfile.getExclusiveTime());
+	}
+
+	@Test
+	public void testNestedResultsAreCountedAtEveryLevel() throws Exception
+	{
+		TemplateProfiler profiler = new TemplateProfiler();
+
+		WtTemplate outer = template("Outer");
+		WtTemplate inner = template("Inner");
+
+		WtNodeList innerResult = nf.list(nf.text("abc"), nf.text("d"));
+
+		profiler.beforeResolveTransclusion(null, outer, "Outer", noArgs);
+		profiler.beforeResolveTransclusion(null, inner, "Inner", noArgs);
+		profiler.afterResolveTransclusion(null, inner, "Inner", noArgs, innerResult, null);
+		profiler.afterResolveTransclusion(null, outer, "Outer", noArgs, nf.list(nf.p(innerResult), nf.text("ef")), null);
+
+		assertEquals(4, find(profiler, "Inner").getOutputSize());
+		assertEquals(6, find(profiler, "Outer").getOutputSize());
+	}
+
+	private static TemplateProfile find(TemplateProfiler profiler, String name)
+	{
+		for (TemplateProfile p : profiler.getReport())
+		{
+			if (p.getName().equals(name))
+				return p;
+		}
+		throw new AssertionError(name);
+	}
+
+	private WtTemplate template(String name)
+	{
+		return nf.tmpl(nf.name(nf.list(nf.text(name))), nf.emptyTmplArgs());
+	}
+}
@@ -227,6 +227,15 @@ public class EngineIntegrationTestBase
 				printer);
 	}
 
+	/**
+	 * Returns a callback which retrieves pages from the files in the given
+	 * directory of the test resources.
+	 */
+	public ExpansionCallback newTestExpansionCallback(String searchDir)
+	{
+		return new TestExpansionCallback(searchDir);
+	}
+
 	// =========================================================================
 
 	public String printToString(Object ast, PrinterInterface printer) throws IOException
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 import org.sweble.wikitext.engine.config.WikiConfig;
 import org.sweble.wikitext.engine.nodes.EngineNodeFactory;
+import org.sweble.wikitext.parser.nodes.WtNode;
 
 public class EngineTextUtilsTest
 {
@@ -96,4 +97,19 @@ public class EngineTextUtilsTest
 				nf.list(nf.text("Hello World"), nf.comment("Comment"), nf.ignored("")),
 				tu.trimRight(nf.list(nf.text("Hello World  "), nf.comment("Comment"), nf.ignored(""), nf.text("  "))));
 	}
+
+	// -------
+
+	@Test
+	public void testTrimDoesNotModifyItsArgument() throws Exception
+	{
+		WtNode n = nf.list(nf.text("  "), nf.comment("Comment"), nf.text(" Hello World "), nf.text("  "));
+		WtNode copy = (WtNode) n.deepCloneWrapException();
+
+		assertEquals(
+				nf.list(nf.comment("Comment"), nf.text("Hello World")),
+				tu.trim(n));
+
+		assertEquals(copy, n);
+	}
 }
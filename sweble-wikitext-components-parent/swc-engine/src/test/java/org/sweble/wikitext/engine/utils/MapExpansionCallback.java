@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.engine.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sweble.wikitext.engine.EngineException;
+import org.sweble.wikitext.engine.ExpansionCallback;
+import org.sweble.wikitext.engine.ExpansionFrame;
+import org.sweble.wikitext.engine.FullPage;
+import org.sweble.wikitext.engine.PageId;
+import org.sweble.wikitext.engine.PageTitle;
+import org.sweble.wikitext.engine.WtEngine;
+import org.sweble.wikitext.engine.config.WikiConfig;
+import org.sweble.wikitext.engine.nodes.EngProcessedPage;
+import org.sweble.wikitext.parser.parser.LinkTargetException;
+
+/**
+ * An expansion callback which serves pages from memory and records which
+ * pages the engine retrieved. Every call to put() creates a new revision of
+ * the page. Like a real wiki, pages are looked up by their full title, the
+ * fragment of a title is ignored. The wikitext passed to expand() and postprocess() is rendered as
+ * the page "Test".
+ */
+public class MapExpansionCallback
+		implements
+			ExpansionCallback
+{
+	private final WikiConfig config;
+
+	private final Map<String, FullPage> pages = new HashMap<String, FullPage>();
+
+	private final List<PageTitle> retrieved = new ArrayList<PageTitle>();
+
+	private long revision;
+
+	// =========================================================================
+
+	public MapExpansionCallback(WikiConfig config)
+	{
+		this.config = config;
+	}
+
+	// =========================================================================
+
+	public WikiConfig getConfig()
+	{
+		return config;
+	}
+
+	public PageTitle title(String title) throws LinkTargetException
+	{
+		return PageTitle.make(config, title);
+	}
+
+	public PageId testPageId() throws LinkTargetException
+	{
+		return new PageId(title("Test"), -1);
+	}
+
+	public EngProcessedPage expand(WtEngine engine, String wikitext) throws LinkTargetException, EngineException
+	{
+		return engine.expand(testPageId(), wikitext, this);
+	}
+
+	public EngProcessedPage postprocess(WtEngine engine, String wikitext) throws LinkTargetException, EngineException
+	{
+		return engine.postprocess(testPageId(), wikitext, this);
+	}
+
+	public synchronized void put(String title, String text) throws LinkTargetException
+	{
+		PageTitle pageTitle = title(title);
+		pages.put(
+				pageTitle.getNormalizedFullTitle(),
+				new FullPage(new PageId(pageTitle, ++revision), text));
+	}
+
+	public synchronized FullPage get(PageTitle pageTitle)
+	{
+		return pages.get(pageTitle.getNormalizedFullTitle());
+	}
+
+	/**
+	 * @return The titles passed to retrieveWikitext() in the order of the
+	 *         calls.
+	 */
+	public synchronized List<PageTitle> getRetrieved()
+	{
+		return new ArrayList<PageTitle>(retrieved);
+	}
+
+	public synchronized void clearRetrieved()
+	{
+		retrieved.clear();
+	}
+
+	// =========================================================================
+
+	@Override
+	public synchronized FullPage retrieveWikitext(
+			ExpansionFrame expansionFrame,
+			PageTitle pageTitle)
+	{
+		retrieved.add(pageTitle);
+		return get(pageTitle);
+	}
+
+	@Override
+	public String fileUrl(PageTitle pageTitle, int width, int height)
+	{
+		return null;
+	}
+}
@@ -26,6 +26,31 @@ import org.sweble.wikitext.parser.encval.ValidatedWikitext;
 
 public class WikitextEncodingValidator
 {
+	private final boolean reuseLexer;
+
+	private EncodingValidatorLexer lexer;
+
+	// =========================================================================
+
+	public WikitextEncodingValidator()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param reuseLexer
+	 *            If true, the lexer and its buffers are reused for each call
+	 *            to validate(). The lexer is reset to its default settings
+	 *            before each call. Such a validator must not be used by more
+	 *            than one thread at a time.
+	 */
+	public WikitextEncodingValidator(boolean reuseLexer)
+	{
+		this.reuseLexer = reuseLexer;
+	}
+
+	// =========================================================================
+
 	public ValidatedWikitext validate(
 			ParserConfig parserConfig,
 			WtEntityMap entityMap,
@@ -34,7 +59,7 @@ public class WikitextEncodingValidator
 			throws IOException
 	{
 		StringReader in = new StringReader(source);
-		EncodingValidatorLexer lexer = new EncodingValidatorLexer(in);
+		EncodingValidatorLexer lexer = getLexer(in);
 
 		lexer.setFile(title);
 		lexer.setEntityMap(entityMap);
@@ -56,7 +81,7 @@ public class WikitextEncodingValidator
 			Reader source)
 			throws IOException
 	{
-		EncodingValidatorLexer lexer = new EncodingValidatorLexer(source);
+		EncodingValidatorLexer lexer = getLexer(source);
 
 		lexer.setFile(title);
 		lexer.setEntityMap(entityMap);
@@ -68,6 +93,19 @@ public class WikitextEncodingValidator
 		return new ValidatedWikitext(lexer.getWikitext(), entityMap, lexer.containsIllegalCodePoints());
 	}
 
+	private EncodingValidatorLexer getLexer(Reader in)
+	{
+		if (!reuseLexer)
+			return new EncodingValidatorLexer(in);
+
+		if (lexer == null)
+			lexer = new EncodingValidatorLexer(in);
+		else
+			lexer.reset(in);
+
+		return lexer;
+	}
+
 	public ValidatedWikitext validate(
 			ParserConfig parserConfig,
 			String source,
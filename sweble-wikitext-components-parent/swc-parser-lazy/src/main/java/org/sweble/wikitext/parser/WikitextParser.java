@@ -38,8 +38,6 @@ public class WikitextParser
 {
 	private final ParserConfig config;
 
-	private RatsWikitextParser parser;
-
 	// =========================================================================
 
 	public WikitextParser(ParserConfig config)
@@ -70,9 +68,11 @@ public class WikitextParser
 	{
 		Reader in = new StringReader(wikitext.getWikitext());
 
-		int inputSize = wikitext.getWikitext().getBytes().length;
+		// Only used to size the parser's buffers, which hold characters
+		int inputSize = wikitext.getWikitext().length();
 
-		parser = new RatsWikitextParser(in, title, inputSize);
+		// Don't keep the parser and its memo tables alive after parsing.
+		RatsWikitextParser parser = new RatsWikitextParser(in, title, inputSize);
 
 		parser.getState().init(config, wikitext.getEntityMap());
 
@@ -82,7 +82,7 @@ public class WikitextParser
 
 		//RatsWikitextParser.enableStats();
 		{
-			r = this.parser.pArticle(0);
+			r = parser.pArticle(0);
 		}
 		if (RatsWikitextParser.isStatsEnabled())
 			RatsWikitextParser.getStats().dump(System.err);
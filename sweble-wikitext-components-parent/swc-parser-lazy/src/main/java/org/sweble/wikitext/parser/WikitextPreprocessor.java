@@ -36,8 +36,6 @@ public class WikitextPreprocessor
 		extends
 			ParserCommon<WtNode>
 {
-	private RatsWikitextPreprocessor preprocessor = null;
-
 	private final ParserConfig config;
 
 	// =========================================================================
@@ -84,15 +82,17 @@ public class WikitextPreprocessor
 		
 		Reader in = new StringReader(wikitext.getWikitext());
 
-		int inputSize = wikitext.getWikitext().getBytes().length;
+		// Only used to size the parser's buffers, which hold characters
+		int inputSize = wikitext.getWikitext().length();
 
-		preprocessor = new RatsWikitextPreprocessor(in, title, inputSize);
+		// Don't keep the parser and its memo tables alive after parsing.
+		RatsWikitextPreprocessor preprocessor = new RatsWikitextPreprocessor(in, title, inputSize);
 
 		preprocessor.getState().init(config, wikitext.getEntityMap(), forInclusion);
 
 		preprocessor.setNodeFactory(config.getNodeFactory());
 
-		Result r = this.preprocessor.pArticle(0);
+		Result r = preprocessor.pArticle(0);
 
 		if (r.hasValue())
 		{
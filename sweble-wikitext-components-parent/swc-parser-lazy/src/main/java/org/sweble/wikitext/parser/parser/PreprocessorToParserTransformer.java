@@ -26,6 +26,7 @@ import org.sweble.wikitext.parser.nodes.WtPreproWikitextPage;
 import org.sweble.wikitext.parser.nodes.WtText;
 import org.sweble.wikitext.parser.nodes.WtXmlComment;
 import org.sweble.wikitext.parser.preprocessor.PreprocessedWikitext;
+import org.sweble.wikitext.parser.utils.WtAstCloner;
 
 import de.fau.cs.osr.ptk.common.AstVisitor;
 
@@ -41,7 +42,22 @@ public class PreprocessorToParserTransformer
 			WtPreproWikitextPage preprocessedArticle,
 			boolean trim)
 	{
-		TransformVisitor tv = new TransformVisitor(trim);
+		return transform(preprocessedArticle, trim, false);
+	}
+
+	/**
+	 * @param cloneEntities
+	 *            Register copies of the nodes that become entities. Needed if
+	 *            the preprocessed AST shares nodes with other ASTs, since the
+	 *            entities end up in the parsed AST which is modified by
+	 *            postprocessing.
+	 */
+	public static PreprocessedWikitext transform(
+			WtPreproWikitextPage preprocessedArticle,
+			boolean trim,
+			boolean cloneEntities)
+	{
+		TransformVisitor tv = new TransformVisitor(trim, cloneEntities);
 		return (PreprocessedWikitext) tv.go(preprocessedArticle);
 	}
 
@@ -57,11 +73,14 @@ public class PreprocessorToParserTransformer
 
 		private final boolean trim;
 
+		private final boolean cloneEntities;
+
 		// =====================================================================
 
-		public TransformVisitor(boolean trim)
+		public TransformVisitor(boolean trim, boolean cloneEntities)
 		{
 			this.trim = trim;
+			this.cloneEntities = cloneEntities;
 		}
 
 		// =====================================================================
@@ -125,6 +144,9 @@ public class PreprocessorToParserTransformer
 
 		private void makeParserEntity(WtNode n)
 		{
+			if (cloneEntities)
+				n = WtAstCloner.deepClone(n);
+
 			int id = entityMap.registerEntity(n);
 			builder.append('\uE000');
 			builder.append(id);
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.sweble.wikitext.parser.WtRtData;
+import org.sweble.wikitext.parser.nodes.WtEmptyImmutableNode;
+import org.sweble.wikitext.parser.nodes.WtInnerImmutableNode1;
+import org.sweble.wikitext.parser.nodes.WtLctFlags;
+import org.sweble.wikitext.parser.nodes.WtNode;
+import org.sweble.wikitext.parser.nodes.WtPage;
+
+import de.fau.cs.osr.ptk.common.Warning;
+
+/**
+ * Creates deep copies of Wikitext ASTs. Unlike AstNode.deepClone(), which
+ * handles arbitrary properties generically, the cloner knows which properties
+ * of the Wt* nodes are mutable and only copies those. All other properties
+ * (strings, enums, boxed primitives) are immutable and taken over by the
+ * shallow clone of each node.
+ * 
+ * Immutable nodes (WtEmptyImmutableNode, WtInnerImmutableNode1) are shared
+ * between the original and the copy. The entity map of a page is shared as
+ * well since it belongs to the page that is being processed and not to a
+ * single AST.
+ * 
+ * The cloner is stateless and can be used by multiple threads.
+ */
+public class WtAstCloner
+{
+	private static final WtAstCloner DEFAULT = new WtAstCloner(true, true);
+
+	// =========================================================================
+
+	private final boolean copyRtd;
+
+	private final boolean copyWarnings;
+
+	// =========================================================================
+
+	/**
+	 * @param copyRtd
+	 *            If false, the copies carry no round-trip data. Useful if the
+	 *            copy will never be printed as wikitext again.
+	 * @param copyWarnings
+	 *            If false, copied pages carry no warnings.
+	 */
+	public WtAstCloner(boolean copyRtd, boolean copyWarnings)
+	{
+		this.copyRtd = copyRtd;
+		this.copyWarnings = copyWarnings;
+	}
+
+	/**
+	 * Creates a full deep copy including round-trip data and warnings.
+	 */
+	public static <T extends WtNode> T deepClone(T n)
+	{
+		return DEFAULT.copy(n);
+	}
+
+	// =========================================================================
+
+	@SuppressWarnings("unchecked")
+	public <T extends WtNode> T copy(T n)
+	{
+		return (T) copyNode(n);
+	}
+
+	private WtNode copyNode(WtNode n)
+	{
+		if (n == null)
+			return null;
+
+		if (n instanceof WtEmptyImmutableNode || n instanceof WtInnerImmutableNode1)
+			return n;
+
+		WtNode copy = (WtNode) n.cloneWrapException();
+
+		if (!n.getAttributes().isEmpty())
+			copy.setAttributes(new HashMap<String, Object>(n.getAttributes()));
+
+		copyProperties(n, copy);
+
+		for (int i = 0; i < copy.size(); ++i)
+		{
+			WtNode child = copy.get(i);
+			WtNode childCopy = copyNode(child);
+			if (childCopy != child)
+				copy.set(i, childCopy);
+		}
+
+		return copy;
+	}
+
+	private void copyProperties(WtNode n, WtNode copy)
+	{
+		WtRtData rtd = n.getRtd();
+		if (rtd != null)
+		{
+			if (!copyRtd)
+				copy.clearRtd();
+			else if (rtd != WtRtData.SUPPRESS)
+				copy.setRtd(new WtRtData(rtd));
+		}
+
+		if (copy instanceof WtPage)
+		{
+			WtPage page = (WtPage) copy;
+			if (!copyWarnings)
+				page.setWarnings(WtPage.NO_WARNINGS);
+			else if (page.getWarnings() != WtPage.NO_WARNINGS)
+				page.setWarnings(new ArrayList<Warning>(page.getWarnings()));
+		}
+		else if (copy instanceof WtLctFlags)
+		{
+			WtLctFlags flags = (WtLctFlags) copy;
+			if (flags.getFlags() != null)
+				flags.setFlags(new HashSet<String>(flags.getFlags()));
+			if (flags.getVariants() != null)
+				flags.setVariants(new HashSet<String>(flags.getVariants()));
+			if (flags.getGarbage() != null)
+				flags.setGarbage(new ArrayList<String>(flags.getGarbage()));
+		}
+	}
+}
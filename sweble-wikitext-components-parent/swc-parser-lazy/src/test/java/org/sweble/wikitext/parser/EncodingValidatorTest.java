@@ -20,6 +20,7 @@ package org.sweble.wikitext.parser;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.io.StringReader;
 
 import org.junit.Test;
 import org.sweble.wikitext.parser.encval.ValidatedWikitext;
@@ -104,4 +105,24 @@ public class EncodingValidatorTest
 
 		assertEquals(ref.toString(), validatedWikitext);
 	}
+
+	@Test
+	public void testReusedLexerStartsWithDefaultSettings() throws IOException
+	{
+		SimpleParserConfig converting = new SimpleParserConfig(
+				true /*convertIllegalCodePoints*/,
+				true /*warningsEnabled*/,
+				true /*gatherRtd*/,
+				false /*autoCorrect*/,
+				true /*langConvTagsEnabled*/);
+
+		String source = "a \u0007 b";
+
+		WikitextEncodingValidator fresh = new WikitextEncodingValidator();
+		String expected = fresh.validate(converting, new StringReader(source), "dummy").getWikitext();
+
+		WikitextEncodingValidator reused = new WikitextEncodingValidator(true);
+		assertEquals("a \uFFFD b", reused.validate(converting, source, "dummy").getWikitext());
+		assertEquals(expected, reused.validate(converting, new StringReader(source), "dummy").getWikitext());
+	}
 }
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+/**
+ * Compares the time needed by WtAstCloner and by the generic
+ * AstNode.deepClone() to copy large preprocessed pages. Not run as part of
+ * the test suite, start the main method to run the benchmark.
+ */
+public class WtAstClonerBenchmark
+{
+	private static final int WARMUP_ROUNDS = 200;
+
+	private static final int MEASURED_ROUNDS = 1000;
+
+	// =========================================================================
+
+	public static void main(String[] args) throws Exception
+	{
+		List<WtNode> asts = new ArrayList<WtNode>();
+		for (String page : WtAstClonerTest.PAGES)
+			asts.add(WtAstClonerTest.preprocess(page));
+
+		WtAstCloner cloner = new WtAstCloner(true, true);
+		WtAstCloner noRtdCloner = new WtAstCloner(false, false);
+
+		for (int round = 0; round < 2; ++round)
+		{
+			boolean report = (round == 1);
+			int rounds = report ? MEASURED_ROUNDS : WARMUP_ROUNDS;
+
+			long generic = 0;
+			long fast = 0;
+			long fastNoRtd = 0;
+			for (int i = 0; i < rounds; ++i)
+			{
+				for (WtNode ast : asts)
+				{
+					long t0 = System.nanoTime();
+					ast.deepCloneWrapException();
+					long t1 = System.nanoTime();
+					cloner.copy(ast);
+					long t2 = System.nanoTime();
+					noRtdCloner.copy(ast);
+					long t3 = System.nanoTime();
+
+					generic += t1 - t0;
+					fast += t2 - t1;
+					fastNoRtd += t3 - t2;
+				}
+			}
+
+			if (report)
+			{
+				print("AstNode.deepClone()", generic, rounds);
+				print("WtAstCloner", fast, rounds);
+				print("WtAstCloner (no RtData)", fastNoRtd, rounds);
+			}
+		}
+	}
+
+	private static void print(String what, long nanos, int rounds)
+	{
+		System.out.println(String.format(
+				"%-28s %10.3f ms per round",
+				what,
+				nanos / 1000000. / rounds));
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sweble.wikitext.parser.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.sweble.wikitext.parser.WikitextPreprocessor;
+import org.sweble.wikitext.parser.nodes.WtEmptyImmutableNode;
+import org.sweble.wikitext.parser.nodes.WtInnerImmutableNode1;
+import org.sweble.wikitext.parser.nodes.WtNode;
+
+import de.fau.cs.osr.utils.FileTools;
+
+public class WtAstClonerTest
+{
+	static final String[] PAGES = {
+			"raw-Germany",
+			"raw-ASDF",
+			"exp-Help%3ATable",
+	};
+
+	// =========================================================================
+
+	@Test
+	public void testCopyEqualsOriginal() throws Exception
+	{
+		for (String page : PAGES)
+		{
+			WtNode ast = preprocess(page);
+			assertEquals(ast, WtAstCloner.deepClone(ast));
+		}
+	}
+
+	@Test
+	public void testOnlyImmutableNodesAreShared() throws Exception
+	{
+		for (String page : PAGES)
+		{
+			WtNode ast = preprocess(page);
+			assertNoMutableNodeShared(ast, WtAstCloner.deepClone(ast));
+		}
+	}
+
+	@Test
+	public void testRtdCanBeSkipped() throws Exception
+	{
+		WtNode ast = preprocess(PAGES[0]);
+		assertNoRtd(new WtAstCloner(false, true).copy(ast));
+	}
+
+	// =========================================================================
+
+	static WtNode preprocess(String page) throws Exception
+	{
+		InputStream in = WtAstClonerTest.class.getResourceAsStream(
+				"/nopkg-complex/input.wikitext/" + page + ".wikitext");
+		try
+		{
+			String wikitext = FileTools.lineEndToUnix(IOUtils.toString(in, "UTF-8"));
+			return new WikitextPreprocessor(new SimpleParserConfig()).parseArticle(wikitext, page);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void assertNoMutableNodeShared(WtNode original, WtNode copy)
+	{
+		if (original instanceof WtEmptyImmutableNode || original instanceof WtInnerImmutableNode1)
+		{
+			assertSame(original, copy);
+			return;
+		}
+
+		assertNotSame(original, copy);
+		assertEquals(original.size(), copy.size());
+		for (int i = 0; i < original.size(); ++i)
+			assertNoMutableNodeShared(original.get(i), copy.get(i));
+	}
+
+	private static void assertNoRtd(WtNode n)
+	{
+		if (n instanceof WtEmptyImmutableNode || n instanceof WtInnerImmutableNode1)
+			return;
+
+		assertNull(n.getRtd());
+		for (WtNode c : n)
+			assertNoRtd(c);
+	}
+}